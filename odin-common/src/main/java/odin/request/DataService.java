@@ -3,6 +3,8 @@ package odin.request;
 import com.google.gwt.user.client.rpc.RemoteService;
 import com.google.gwt.user.client.rpc.RemoteServiceRelativePath;
 
+import odin.stats.DomainStatsChart;
+import odin.stats.DomainStatsColumns;
 import odin.stats.DomainStatsSeries;
 
 /**
@@ -22,4 +24,59 @@ public interface DataService extends RemoteService
     */
     
 	public DomainStatsSeries getDomainStatsSeries(String category, long earliest, long latest) throws Exception;
+    
+    /**
+    * Retrieves a series of statistics for the category provided and over the time frame specified, in columns. 
+    * The columns are much smaller to send and faster to read than the equivalent {@link DomainStatsSeries}.
+    * 
+    * @param category   The category of statistics to retrieve. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param resolution The resolution of the series. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param earliest   The start of the time period from which to retrieve statistics.
+    * @param latest     The end of the time period from which to retrieve statistics.
+    * @return           The columns of statistics for the category provided and over the time frame specified.
+    */
+    
+	public DomainStatsColumns getDomainStatsColumns(String category, String resolution, long earliest, long latest) throws Exception;
+    
+    /**
+    * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified. 
+    * Categories are ranked and grouped on the server, so only the values that are drawn are sent.
+    * 
+    * @param category           The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param countType          The count type to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param categoryStructure  How to group categories. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param hiddenCategories   The categories whose values are not needed, as they are hidden.
+    * @param resolution         The resolution of the series to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param earliest           The start of the time period from which to chart statistics.
+    * @param latest             The end of the time period from which to chart statistics.
+    * @return                   The datasets of the chart.
+    */
+    
+	public DomainStatsChart getDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution, long earliest, long latest) throws Exception;
+    
+    /**
+    * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified, without waiting for 
+    * every time to be parsed. If any times are still being parsed, the chart holds a token to request the chart again with, 
+    * which returns once more of those times have been parsed.
+    * 
+    * @param category           The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param countType          The count type to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param categoryStructure  How to group categories. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param hiddenCategories   The categories whose values are not needed, as they are hidden.
+    * @param resolution         The resolution of the series to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+    * @param earliest           The start of the time period from which to chart statistics.
+    * @param latest             The end of the time period from which to chart statistics.
+    * @param pendingToken       The token of the previous chart of the same request, or null to request the chart for the first time.
+    * @return                   The datasets of the chart.
+    */
+    
+	public DomainStatsChart getProgressiveDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution, long earliest, long latest, String pendingToken) throws Exception;
+    
+    /**
+    * Retrieves the readiness of the server, such as whether it is still warming up after a restart.
+    * 
+    * @return           The readiness of the server.
+    */
+    
+	public ServerStatus getServerStatus() throws Exception;
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package odin.request;
 
 import com.google.gwt.user.client.rpc.AsyncCallback;
+import odin.stats.DomainStatsChart;
+import odin.stats.DomainStatsColumns;
 import odin.stats.DomainStatsSeries;
 
 /**
@@ -21,4 +23,56 @@ public interface DataServiceAsync
      */
     
 	public void getDomainStatsSeries(String category, long earliest, long latest, AsyncCallback<DomainStatsSeries> callback);
-}
+    
+    /**
+     * Retrieves a series of statistics for the category provided and over the time frame specified, in columns. 
+     * 
+     * @param category   The category of statistics to retrieve. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param resolution The resolution of the series. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest   The start of the time period from which to retrieve statistics.
+     * @param latest     The end of the time period from which to retrieve statistics.
+     * @param callback   The callback to retrieve the statistics.
+     */
+    
+	public void getDomainStatsColumns(String category, String resolution, long earliest, long latest, AsyncCallback<DomainStatsColumns> callback);
+    
+    /**
+     * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified. 
+     * 
+     * @param category           The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param countType          The count type to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param categoryStructure  How to group categories. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param hiddenCategories   The categories whose values are not needed, as they are hidden.
+     * @param resolution         The resolution of the series to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest           The start of the time period from which to chart statistics.
+     * @param latest             The end of the time period from which to chart statistics.
+     * @param callback           The callback to retrieve the datasets.
+     */
+    
+	public void getDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution, long earliest, long latest, AsyncCallback<DomainStatsChart> callback);
+    
+    /**
+     * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified, without waiting for 
+     * every time to be parsed. 
+     * 
+     * @param category           The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param countType          The count type to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param categoryStructure  How to group categories. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param hiddenCategories   The categories whose values are not needed, as they are hidden.
+     * @param resolution         The resolution of the series to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest           The start of the time period from which to chart statistics.
+     * @param latest             The end of the time period from which to chart statistics.
+     * @param pendingToken       The token of the previous chart of the same request, or null to request the chart for the first time.
+     * @param callback           The callback to retrieve the datasets.
+     */
+    
+	public void getProgressiveDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution, long earliest, long latest, String pendingToken, AsyncCallback<DomainStatsChart> callback);
+    
+    /**
+     * Retrieves the readiness of the server, such as whether it is still warming up after a restart.
+     * 
+     * @param callback           The callback to retrieve the readiness of the server.
+     */
+    
+	public void getServerStatus(AsyncCallback<ServerStatus> callback);
+}
\ No newline at end of file
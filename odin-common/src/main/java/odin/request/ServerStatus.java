@@ -0,0 +1,70 @@
+package odin.request;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+* Holds the readiness of the server, and the progress of its warm-up after a restart.
+*/
+
+public class ServerStatus implements IsSerializable
+{
+    public static final String STATE__WARMING_UP = "warming_up";
+    public static final String STATE__READY = "ready";
+    
+    private String state;
+    private int warmedCount;
+    private int warmUpCount;
+    
+    public ServerStatus()
+    {
+    }
+    
+    /**
+     * @param state         The state of the server, one of the states specified in this class.
+     * @param warmedCount   The number of series that have been loaded by the warm-up.
+     * @param warmUpCount   The number of series the warm-up loads.
+     */
+    
+    public ServerStatus(String state, int warmedCount, int warmUpCount)
+    {
+        this.state = state;
+        this.warmedCount = warmedCount;
+        this.warmUpCount = warmUpCount;
+    }
+    
+    /**
+     * @return  the state of the server, one of the states specified in this class.
+     */
+    
+    public String getState()
+    {
+        return state;
+    }
+    
+    /**
+     * @return  whether the server has finished warming up.
+     */
+    
+    public boolean isReady()
+    {
+        return STATE__READY.equals(state);
+    }
+    
+    /**
+     * @return  the number of series that have been loaded by the warm-up.
+     */
+    
+    public int getWarmedCount()
+    {
+        return warmedCount;
+    }
+    
+    /**
+     * @return  the number of series the warm-up loads.
+     */
+    
+    public int getWarmUpCount()
+    {
+        return warmUpCount;
+    }
+}
\ No newline at end of file
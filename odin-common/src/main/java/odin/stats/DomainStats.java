@@ -1,6 +1,7 @@
 package odin.stats;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import com.google.gwt.user.client.rpc.IsSerializable;
 
@@ -30,4 +31,54 @@ public class DomainStats implements Storable, IsSerializable
     {
         return categoryToCountsMap;
     }
+    
+    /**
+     * Adds the statistics values of every category of the specified statistics to this instance.
+     * 
+     * @param stats     The statistics to add.
+     */
+    
+    public void add(DomainStats stats)
+    {
+        for(Map.Entry<String, DomainStatsCounts> entry: stats.getCategoryToCountsMap().entrySet())
+        {
+            DomainStatsCounts counts = categoryToCountsMap.get(entry.getKey());
+            
+            if(counts==null)
+            {
+                counts = new DomainStatsCounts();
+                categoryToCountsMap.put(entry.getKey(), counts);
+            }
+            
+            counts.add(entry.getValue());
+        }
+    }
+    
+    /**
+     * Subtracts the statistics values of every category of the specified statistics from this instance, such as to remove a month from a sum of months.
+     * Categories that are left with no statistics values are removed.
+     * 
+     * @param stats     The statistics to subtract.
+     */
+    
+    public void subtract(DomainStats stats)
+    {
+        for(Map.Entry<String, DomainStatsCounts> entry: stats.getCategoryToCountsMap().entrySet())
+        {
+            DomainStatsCounts counts = categoryToCountsMap.get(entry.getKey());
+            
+            if(counts==null)
+            {
+                counts = new DomainStatsCounts();
+                categoryToCountsMap.put(entry.getKey(), counts);
+            }
+            
+            counts.subtract(entry.getValue());
+            
+            if(counts.isZero())
+            {
+                categoryToCountsMap.remove(entry.getKey());
+            }
+        }
+    }
 }
\ No newline at end of file
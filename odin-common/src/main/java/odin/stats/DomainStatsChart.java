@@ -0,0 +1,94 @@
+package odin.stats;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+* Holds the finished datasets of a statistics chart: the categories shown, in the order they are shown (including any Other category 
+* that smaller categories were grouped into), the time values, and the value of each shown category at each time.
+* The values of hidden categories are not included.
+*/
+
+public class DomainStatsChart implements IsSerializable
+{
+    private String[] categories;
+    private long[] times;
+    private long[][] values;
+    private int pendingCount;
+    private String pendingToken;
+    
+    public DomainStatsChart()
+    {
+    }
+    
+    /**
+     * Creates a new instance with the specified datasets.
+     * 
+     * @param categories    The categories shown.
+     * @param times         The time values, in ascending order.
+     * @param values        The values of each category at each time, or null for a hidden category.
+     * @param pendingCount  The number of times missing from the chart because their statistics were still being parsed.
+     */
+    
+    public DomainStatsChart(String[] categories, long[] times, long[][] values, int pendingCount)
+    {
+        this.categories = categories;
+        this.times = times;
+        this.values = values;
+        this.pendingCount = pendingCount;
+    }
+    
+    /**
+     * @return      the categories shown, in the order they are shown.
+     */
+    
+    public String[] getCategories()
+    {
+        return categories;
+    }
+    
+    /**
+     * @return      the time values, in ascending order.
+     */
+    
+    public long[] getTimes()
+    {
+        return times;
+    }
+    
+    /**
+     * @param categoryIndex     The index of the category in {@link #getCategories()}.
+     * @return                  the value of the category at each time, or null if the category was hidden.
+     */
+    
+    public long[] getValues(int categoryIndex)
+    {
+        return values[categoryIndex];
+    }
+    
+    /**
+     * @return      the number of times missing from the chart because their statistics were still being parsed, or 0 if the chart is complete.
+     */
+    
+    public int getPendingCount()
+    {
+        return pendingCount;
+    }
+    
+    /**
+     * @return      the token to request the chart again with once more of its missing times have been parsed, or null if the chart is complete.
+     */
+    
+    public String getPendingToken()
+    {
+        return pendingToken;
+    }
+    
+    /**
+     * @param pendingToken      The token to request the chart again with once more of its missing times have been parsed.
+     */
+    
+    public void setPendingToken(String pendingToken)
+    {
+        this.pendingToken = pendingToken;
+    }
+}
@@ -0,0 +1,149 @@
+package odin.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.user.client.rpc.IsSerializable;
+
+/**
+* Holds a series of domain statistics in columns: a dictionary of category keys, a sorted axis of time values, and for each statistics type 
+* a single array holding the value of every category at every time. Each category key is sent once, however long the series, 
+* and the values are sent and read as plain arrays.
+*/
+
+public class DomainStatsColumns implements IsSerializable
+{
+    private String[] categories;
+    private long[] times;
+    private long[][] counts;
+    private int pendingCount;
+    private transient long[][] totals;
+    
+    public DomainStatsColumns()
+    {
+    }
+    
+    /**
+     * Creates the columns holding the same statistics as a series.
+     * 
+     * @param series    The series.
+     */
+    
+    public DomainStatsColumns(DomainStatsSeries series)
+    {
+        List<Long> timeList = new ArrayList<Long>(series.getStatsMap().keySet());
+        List<String> categoryList = new ArrayList<String>();
+        Map<String, Integer> categoryIndexes = new HashMap<String, Integer>();
+        
+        Collections.sort(timeList);
+        
+        for(DomainStats stats: series.getStatsMap().values())
+        {
+            for(String category: stats.getCategoryToCountsMap().keySet())
+            {
+                if(!categoryIndexes.containsKey(category))
+                {
+                    categoryIndexes.put(category, categoryIndexes.size());
+                    categoryList.add(category);
+                }
+            }
+        }
+        
+        this.categories = categoryList.toArray(new String[categoryList.size()]);
+        this.times = new long[timeList.size()];
+        this.counts = new long[DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length][times.length*categories.length];
+        this.pendingCount = series.getPendingCount();
+        
+        for(int t=0; t<times.length; t++)
+        {
+            times[t] = timeList.get(t);
+            
+            for(Map.Entry<String, DomainStatsCounts> entry: series.getStatsMap().get(timeList.get(t)).getCategoryToCountsMap().entrySet())
+            {
+                int c = categoryIndexes.get(entry.getKey());
+                
+                for(int type=0; type<counts.length; type++)
+                {
+                    counts[type][t*categories.length+c] = entry.getValue().getCount(type);
+                }
+            }
+        }
+    }
+    
+    /**
+     * @return      the category keys, in the order of their columns.
+     */
+    
+    public String[] getCategories()
+    {
+        return categories;
+    }
+    
+    /**
+     * @return      the time values, in ascending order.
+     */
+    
+    public long[] getTimes()
+    {
+        return times;
+    }
+    
+    /**
+     * @return      the number of times missing from the columns because their statistics were still being parsed, or 0 if the columns are complete.
+     */
+    
+    public int getPendingCount()
+    {
+        return pendingCount;
+    }
+    
+    /**
+     * Gets the value of a statistics type for a category at a time.
+     * 
+     * @param typeIndex         The index of the statistics type, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT.
+     * @param timeIndex         The index of the time in {@link #getTimes()}.
+     * @param categoryIndex     The index of the category in {@link #getCategories()}.
+     * @return                  the value, or 0 if there are no statistics for the category at the time.
+     */
+    
+    public long getCount(int typeIndex, int timeIndex, int categoryIndex)
+    {
+        return counts[typeIndex][timeIndex*categories.length+categoryIndex];
+    }
+    
+    /**
+     * Gets the total value of a statistics type for a category over every time.
+     * 
+     * @param typeIndex         The index of the statistics type, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT.
+     * @param categoryIndex     The index of the category in {@link #getCategories()}.
+     * @return                  the total.
+     */
+    
+    public long getTotal(int typeIndex, int categoryIndex)
+    {
+        // Totals are computed once, when first needed, rather than sent
+        
+        if(totals==null)
+        {
+            long[][] totals = new long[counts.length][categories.length];
+            
+            for(int type=0; type<counts.length; type++)
+            {
+                for(int t=0; t<times.length; t++)
+                {
+                    for(int c=0; c<categories.length; c++)
+                    {
+                        totals[type][c] = totals[type][c]+counts[type][t*categories.length+c];
+                    }
+                }
+            }
+            
+            this.totals = totals;
+        }
+        
+        return totals[typeIndex][categoryIndex];
+    }
+}
\ No newline at end of file
@@ -31,6 +31,40 @@ public class DomainStatsConstants
             new StringPair(STATS_VIEW_COUNT_TYPE__MB_SIZE, "MB DATA"),
     };
     
+    // The index of each count type in STATS_VIEW_COUNT_TYPES, used to store counts in arrays
+    
+    public static final int STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT = 0;
+    public static final int STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT = 1;
+    public static final int STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE = 2;
+    
+    public static final String STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20 = "show-top-20";
+    public static final String STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_1P = "occlude-lowest-1p";
+    public static final String STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_10P = "occlude-lowest-10p";
+    public static final String STATS_VIEW_CATEGORY_STRUCTURE__ALL = "all";
+    
+    public static final StringPair[] STATS_VIEW_CATEGORY_STRUCTURES = new StringPair[]{
+            new StringPair(STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20, "LIST TOP 20"),
+            new StringPair(STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_1P, "GROUP LOWEST 1%"),
+            new StringPair(STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_10P, "GROUP LOWEST 10%"),
+            new StringPair(STATS_VIEW_CATEGORY_STRUCTURE__ALL, "LIST ALL"),
+    };
+    
+    public static final String STATS_VIEW_RESOLUTION__MONTH = "month";
+    public static final String STATS_VIEW_RESOLUTION__QUARTER = "quarter";
+    public static final String STATS_VIEW_RESOLUTION__YEAR = "year";
+    public static final String STATS_VIEW_RESOLUTION__ALL = "all";
+    
+    public static final StringPair[] STATS_VIEW_RESOLUTIONS = new StringPair[]{
+            new StringPair(STATS_VIEW_RESOLUTION__MONTH, "MONTHLY"),
+            new StringPair(STATS_VIEW_RESOLUTION__QUARTER, "QUARTERLY"),
+            new StringPair(STATS_VIEW_RESOLUTION__YEAR, "YEARLY"),
+            new StringPair(STATS_VIEW_RESOLUTION__ALL, "ALL TIME"),
+    };
+    
+    // The category that categories grouped by a category structure are shown as
+    
+    public static final String STATS_VIEW_CATEGORY__OTHER = "Other";
+    
     public static final HashMap<String, List<String>> STATS_VIEWS_BY_CATEGORY = new HashMap<String, List<String>>();
     
     static
@@ -52,4 +86,22 @@ public class DomainStatsConstants
                 STATS_VIEW_COUNT_TYPE__MB_SIZE
         ));
     }
+    
+    /**
+     * @param countType     A count type, such as STATS_VIEW_COUNT_TYPE__URL_COUNT.
+     * @return              the index of the count type in STATS_VIEW_COUNT_TYPES, or -1 if it is not a count type.
+     */
+    
+    public static int getCountTypeIndex(String countType)
+    {
+        for(int i=0; i<STATS_VIEW_COUNT_TYPES.length; i++)
+        {
+            if(STATS_VIEW_COUNT_TYPES[i].getKey().equals(countType))
+            {
+                return i;
+            }
+        }
+        
+        return -1;
+    }
 }
\ No newline at end of file
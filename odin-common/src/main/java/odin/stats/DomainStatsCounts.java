@@ -1,37 +1,85 @@
 package odin.stats;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.HashMap;
+import java.util.Map;
 
+import com.google.gwt.core.shared.GwtIncompatible;
 import com.google.gwt.user.client.rpc.IsSerializable;
 
 import thor.Storable;
 
 /**
-* Holds a map of statistic types to statistics values
+* Holds the value of each statistic type. Values are kept in an array indexed by the position of the type in DomainStatsConstants.STATS_VIEW_COUNT_TYPES.
 */
 
 public class DomainStatsCounts implements Storable, IsSerializable
 {
     private static final long serialVersionUID = 1L;
     
-    private HashMap<String, Long> countsMap;
+    private long[] counts;
     
     public DomainStatsCounts()
     {
-        this.countsMap = new HashMap<String, Long>();
+        this.counts = new long[DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length];
     }
     
     /**
-    * Get the map of statistic types to statistics values.
+    * Get a map of statistic types to statistics values. The map is a copy, so changing it does not change the values of this instance.
     * 
-    * @return the map of statistic types to statistics values.
+    * @return a map of statistic types to statistics values.
     */
 
     public HashMap<String, Long> getCountsMap()
     {
+        HashMap<String, Long> countsMap = new HashMap<String, Long>();
+        
+        for(int i=0; i<counts.length; i++)
+        {
+            countsMap.put(DomainStatsConstants.STATS_VIEW_COUNT_TYPES[i].getKey(), counts[i]);
+        }
+        
         return countsMap;
     }
     
+    /**
+     * Gets the value of the specified statistics type.
+     * 
+     * @param typeIndex     The index of the statistics type, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT.
+     * @return              the value.
+     */
+    
+    public long getCount(int typeIndex)
+    {
+        return counts[typeIndex];
+    }
+    
+    /**
+     * Gets the value of the specified statistics type.
+     * 
+     * @param type      The statistics type.
+     * @return          the value, or 0 if the type is not a statistics type.
+     */
+    
+    public long getCount(String type)
+    {
+        int typeIndex = DomainStatsConstants.getCountTypeIndex(type);
+        return typeIndex<0?0:counts[typeIndex];
+    }
+    
+    /**
+     * Increments the value of the specified statistics type by the amount specified
+     * 
+     * @param typeIndex     The index of the statistics type to increment, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT.
+     * @param amount        The amount it is to be incremented by.
+     */
+    
+    public void increment(int typeIndex, long amount)
+    {
+        counts[typeIndex] = counts[typeIndex]+amount;
+    }
+    
     /**
      * Increments the value of the specified statistics type by the amount specified
      * 
@@ -41,15 +89,88 @@ public class DomainStatsCounts implements Storable, IsSerializable
     
     public void increment(String type, long amount)
     {
-        Long count = countsMap.get(type);
+        int typeIndex = DomainStatsConstants.getCountTypeIndex(type);
         
-        if(count==null)
+        if(typeIndex<0)
         {
-            countsMap.put(type, amount);
+            throw new IllegalArgumentException("Unknown statistics type: "+type);
         }
-        else
+        
+        increment(typeIndex, amount);
+    }
+    
+    /**
+     * Adds every statistics value of the specified counts to this instance.
+     * 
+     * @param counts    The counts to add.
+     */
+    
+    public void add(DomainStatsCounts counts)
+    {
+        for(int i=0; i<this.counts.length; i++)
+        {
+            this.counts[i] = this.counts[i]+counts.counts[i];
+        }
+    }
+    
+    /**
+     * Subtracts every statistics value of the specified counts from this instance.
+     * 
+     * @param counts    The counts to subtract.
+     */
+    
+    public void subtract(DomainStatsCounts counts)
+    {
+        for(int i=0; i<this.counts.length; i++)
+        {
+            this.counts[i] = this.counts[i]-counts.counts[i];
+        }
+    }
+    
+    /**
+     * @return      true if every statistics value is 0.
+     */
+    
+    public boolean isZero()
+    {
+        for(int i=0; i<counts.length; i++)
+        {
+            if(counts[i]!=0)
+            {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    @GwtIncompatible
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+    {
+        // Statistics stored by previous versions hold a map of statistic types to values instead of an array
+        
+        ObjectInputStream.GetField fields = in.readFields();
+        counts = (long[])fields.get("counts", null);
+        
+        if(counts==null)
         {
-            countsMap.put(type, count+amount);
+            counts = new long[DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length];
+            
+            @SuppressWarnings("unchecked")
+            Map<String, Long> countsMap = (Map<String, Long>)fields.get("countsMap", null);
+            
+            if(countsMap!=null)
+            {
+                for(Map.Entry<String, Long> entry: countsMap.entrySet())
+                {
+                    int typeIndex = DomainStatsConstants.getCountTypeIndex(entry.getKey());
+                    
+                    if(typeIndex>=0 && entry.getValue()!=null)
+                    {
+                        counts[typeIndex] = entry.getValue();
+                    }
+                }
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -14,6 +14,7 @@ public class DomainStatsSeries implements Storable, IsSerializable
 {
     private static final long serialVersionUID = 1L;
     private HashMap<Long, DomainStats> statsMap;
+    private int pendingCount;
     
     public DomainStatsSeries()
     {
@@ -30,4 +31,26 @@ public class DomainStatsSeries implements Storable, IsSerializable
     {
         return statsMap;
     }
+    
+    /**
+    * Gets the number of times that are missing from the series because their statistics were still being parsed when the series was retrieved.
+    * 
+    * @return the number of missing times, or 0 if the series is complete.
+    */
+
+    public int getPendingCount()
+    {
+        return pendingCount;
+    }
+    
+    /**
+    * Sets the number of times that are missing from the series because their statistics were still being parsed when the series was retrieved.
+    * 
+    * @param pendingCount the number of missing times.
+    */
+
+    public void setPendingCount(int pendingCount)
+    {
+        this.pendingCount = pendingCount;
+    }
 }
@@ -1,20 +1,40 @@
 package odin.server;
 
+import java.util.Arrays;
+
+import loki.Attributes;
 import loki.server.ServerOperations;
+import loki.server.util.ServerUtils;
+import odin.request.ServerStatus;
 import odin.server.stats.StatsService;
+import odin.server.stats.StatsWarmUp;
+import odin.server.stats.ingest.HostReportWatcher;
 
 /**
 * The ServerOptions implementation for the ODIN server.
-* Holds a StatsService for retrieving statistics.
+* Holds a StatsService for retrieving statistics, and a HostReportWatcher for parsing new harvest reports in the background.
+* If enabled, the stored statistics are loaded into memory in the background on startup by a StatsWarmUp.
 */
 
 public class OdinServerOperations implements ServerOperations
 {
     private StatsService statsService;
+    private HostReportWatcher hostReportWatcher;
+    private StatsWarmUp statsWarmUp;
 
     public OdinServerOperations() throws Exception
     {
+        Attributes<String> statsProperties = ServerUtils.loadFromFile("config/stats.properties");
+        
         this.statsService = new StatsService();
+        this.hostReportWatcher = new HostReportWatcher(statsService, Long.parseLong(statsProperties.get("stats_ingest_settle_seconds", "30"))*1000L);
+        this.hostReportWatcher.start();
+        
+        if(Boolean.parseBoolean(statsProperties.get("stats_warm_up_enabled", "true")))
+        {
+            this.statsWarmUp = new StatsWarmUp(statsService, Arrays.asList(statsProperties.get("stats_warm_up_resolutions", "month").split("\\s*,\\s*")));
+            this.statsWarmUp.start();
+        }
     }
     
     /**
@@ -27,4 +47,15 @@ public class OdinServerOperations implements ServerOperations
     {
         return statsService;
     }
+    
+    /**
+    * Returns the readiness of the server.
+    * 
+    * @return   The readiness of the server, and the progress of the warm-up if it is enabled.
+    */
+
+    public ServerStatus getServerStatus()
+    {
+        return (statsWarmUp!=null)?(statsWarmUp.getStatus()):(new ServerStatus(ServerStatus.STATE__READY, 0, 0));
+    }
 }
@@ -15,6 +15,7 @@ public class HostInformation implements Storable
     private String ipAddress;
     private String state;
     private String city;
+    private long lookupTime;
     
     /**
     * Creates a new instance with the specified information.
@@ -26,11 +27,27 @@ public class HostInformation implements Storable
     */
     
     public HostInformation(String host, String ipAddress, String state, String city)
+    {
+        this(host, ipAddress, state, city, System.currentTimeMillis());
+    }
+    
+    /**
+    * Creates a new instance with the specified information.
+    * 
+    * @param host       The full host name to which this data relates.
+    * @param ipAddress  The IP address of the host.
+    * @param state      The estimated state in which the address is hosted, or Unknown.
+    * @param city       The estimated city in which the address is hosted, or Unknown.
+    * @param lookupTime The time at which the information was looked up, or 0 if it is not known.
+    */
+    
+    public HostInformation(String host, String ipAddress, String state, String city, long lookupTime)
     {
         this.host = host;
         this.ipAddress = ipAddress;
         this.state = state;
         this.city = city;
+        this.lookupTime = lookupTime;
     }
     
     /**
@@ -68,4 +85,13 @@ public class HostInformation implements Storable
     {
         return city;
     }
+    
+    /**
+     * @return      the time at which this information was looked up, or 0 if it was stored before lookup times were recorded.
+     */
+
+    public long getLookupTime()
+    {
+        return lookupTime;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,19 @@
+package odin.server.host;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Looks up the current information of a host, storing it in a {@link HostInformationStore}.
+ */
+
+public interface HostInformationLookup
+{
+    /**
+     * Looks up the current information of a host. The information is stored if the lookup had a definite result.
+     * 
+     * @param host      The full host name.
+     * @return          a future completed with the looked up information.
+     */
+    
+    public CompletableFuture<HostInformation> lookUp(String host);
+}
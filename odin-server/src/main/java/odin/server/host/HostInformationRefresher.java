@@ -0,0 +1,292 @@
+package odin.server.host;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.concurrent.atomic.LongAdder;
+
+import loki.server.util.ServerUtils;
+
+/**
+ * Keeps stored host information from going stale by looking hosts up again in the background.
+ * 
+ * A low priority thread periodically passes over the store, and looks up again every host whose information is older than the maximum age, 
+ * or older than the (usually shorter) maximum age for hosts whose location was Unknown. Lookups are made in small batches with a pause between them, 
+ * so that the refresher never competes with parsing for DNS capacity, and no more lookups are pending at once than the resolver performs at once. 
+ * Hosts whose lookup fails keep their information until the next pass. The first pass is made one interval after the refresher starts, 
+ * and hosts whose lookup time is not known (such as hosts migrated from previous versions before it was recorded) are treated as looked up 
+ * when the refresher started, so that they are not all looked up again at once.
+ * 
+ * The refresher also counts how often parses found stored information, and how much of it was stale, and logs the counts after each pass.
+ */
+
+public class HostInformationRefresher
+{
+    private static final String UNKNOWN = "Unknown";
+    
+    private HostInformationStore store;
+    private HostInformationLookup lookup;
+    private long maxAgeMillis;
+    private long unknownMaxAgeMillis;
+    private int batchSize;
+    private long batchPauseMillis;
+    private long passIntervalMillis;
+    private Semaphore pendingLookups;
+    private long startTime = System.currentTimeMillis();
+    
+    private LongAdder hitCount = new LongAdder();
+    private LongAdder staleHitCount = new LongAdder();
+    private LongAdder missCount = new LongAdder();
+    private LongAdder refreshCount = new LongAdder();
+    private LongAdder refreshFailureCount = new LongAdder();
+    
+    private volatile Thread thread;
+    
+    /**
+     * @param store                 The store to keep fresh.
+     * @param lookup                Looks up and stores the current information of a host.
+     * @param maxAgeMillis          The age after which the information of a host is stale.
+     * @param unknownMaxAgeMillis   The age after which the information of a host with an Unknown location is stale.
+     * @param batchSize             The number of hosts looked up at once.
+     * @param batchPauseMillis      The pause between batches.
+     * @param passIntervalMillis    The pause between passes over the store.
+     * @param maxPendingLookups     The maximum number of lookups pending at once, usually the concurrency of the resolver.
+     */
+    
+    public HostInformationRefresher(HostInformationStore store, HostInformationLookup lookup, long maxAgeMillis, long unknownMaxAgeMillis, 
+            int batchSize, long batchPauseMillis, long passIntervalMillis, int maxPendingLookups)
+    {
+        this.store = store;
+        this.lookup = lookup;
+        this.maxAgeMillis = maxAgeMillis;
+        this.unknownMaxAgeMillis = unknownMaxAgeMillis;
+        this.batchSize = batchSize;
+        this.batchPauseMillis = batchPauseMillis;
+        this.passIntervalMillis = passIntervalMillis;
+        this.pendingLookups = new Semaphore(Math.max(1, maxPendingLookups));
+    }
+    
+    /**
+     * Starts refreshing in the background.
+     */
+    
+    public synchronized void start()
+    {
+        if(thread!=null)
+        {
+            return;
+        }
+        
+        thread = new Thread(new Runnable(){
+            public void run()
+            {
+                while(thread==Thread.currentThread())
+                {
+                    try
+                    {
+                        // Waits before every pass, including the first, so that a pass that failed is not retried straight away
+                        
+                        Thread.sleep(passIntervalMillis);
+                        refresh();
+                    }
+                    catch(InterruptedException e)
+                    {
+                        return;
+                    }
+                    catch(Exception e)
+                    {
+                        ServerUtils.log("Failed to refresh host information: "+e);
+                    }
+                }
+            }
+        }, "host-information-refresher");
+        
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+    
+    /**
+     * Stops refreshing. Lookups already in progress are not cancelled.
+     */
+    
+    public synchronized void stop()
+    {
+        if(thread!=null)
+        {
+            Thread stoppedThread = thread;
+            thread = null;
+            stoppedThread.interrupt();
+        }
+    }
+    
+    /**
+     * Records a parse finding stored information for a host.
+     * 
+     * @param information   The stored information.
+     */
+    
+    public void recordHit(HostInformation information)
+    {
+        hitCount.increment();
+        
+        if(isStale(information, System.currentTimeMillis()))
+        {
+            staleHitCount.increment();
+        }
+    }
+    
+    /**
+     * Records a parse finding no stored information for a host.
+     */
+    
+    public void recordMiss()
+    {
+        missCount.increment();
+    }
+    
+    /**
+     * @return      the number of times a parse found stored information for a host.
+     */
+    
+    public long getHitCount()
+    {
+        return hitCount.sum();
+    }
+    
+    /**
+     * @return      the number of times a parse found stored information for a host that was stale.
+     */
+    
+    public long getStaleHitCount()
+    {
+        return staleHitCount.sum();
+    }
+    
+    /**
+     * @return      the number of times a parse found no stored information for a host.
+     */
+    
+    public long getMissCount()
+    {
+        return missCount.sum();
+    }
+    
+    /**
+     * @return      the number of hosts that have been refreshed.
+     */
+    
+    public long getRefreshCount()
+    {
+        return refreshCount.sum();
+    }
+    
+    /**
+     * @return      the number of hosts whose refresh failed.
+     */
+    
+    public long getRefreshFailureCount()
+    {
+        return refreshFailureCount.sum();
+    }
+    
+    /**
+     * Makes one pass over the store, looking up every stale host again.
+     */
+    
+    public void refresh() throws Exception
+    {
+        long start = System.currentTimeMillis();
+        int staleCount = 0;
+        long refreshed = refreshCount.sum();
+        List<String> batch = new ArrayList<String>(batchSize);
+        
+        for(HostInformation information: store.getAll())
+        {
+            if(!isStale(information, start))
+            {
+                continue;
+            }
+            
+            staleCount++;
+            batch.add(information.getHost());
+            
+            if(batch.size()==batchSize)
+            {
+                refreshBatch(batch);
+                batch.clear();
+                Thread.sleep(batchPauseMillis);
+            }
+        }
+        
+        refreshBatch(batch);
+        store.flush();
+        
+        long elapsed = System.currentTimeMillis()-start;
+        refreshed = refreshCount.sum()-refreshed;
+        
+        ServerUtils.log("Refreshed "+refreshed+" of "+staleCount+" stale hosts (of "+store.size()+") in "+elapsed+"ms"
+                +" ("+(elapsed>0?refreshed*1000/elapsed:refreshed)+" hosts/s). Parses found "+getHitCount()+" stored hosts ("+getStaleHitCount()+" stale) and "
+                +getMissCount()+" new hosts, "+getRefreshFailureCount()+" refreshes failed in total.");
+    }
+    
+    private void refreshBatch(List<String> hosts) throws InterruptedException
+    {
+        List<CompletableFuture<HostInformation>> lookups = new ArrayList<CompletableFuture<HostInformation>>(hosts.size());
+        
+        for(String host: hosts)
+        {
+            // Lookups left pending by an earlier batch that timed out still count towards the limit
+            
+            pendingLookups.acquire();
+            CompletableFuture<HostInformation> result;
+            
+            try
+            {
+                result = lookup.lookUp(host);
+            }
+            catch(RuntimeException e)
+            {
+                pendingLookups.release();
+                refreshFailureCount.increment();
+                continue;
+            }
+            
+            result.whenComplete(new BiConsumer<HostInformation, Throwable>(){
+                public void accept(HostInformation information, Throwable x)
+                {
+                    pendingLookups.release();
+                }
+            });
+            lookups.add(result);
+        }
+        
+        for(CompletableFuture<HostInformation> result: lookups)
+        {
+            try
+            {
+                result.get(1, TimeUnit.MINUTES);
+                refreshCount.increment();
+            }
+            catch(InterruptedException e)
+            {
+                throw e;
+            }
+            catch(Exception e)
+            {
+                refreshFailureCount.increment();
+            }
+        }
+    }
+    
+    private boolean isStale(HostInformation information, long now)
+    {
+        long lookupTime = information.getLookupTime();
+        long age = now-(lookupTime>0?lookupTime:startTime);
+        
+        return age>maxAgeMillis || (UNKNOWN.equals(information.getState()) && age>unknownMaxAgeMillis);
+    }
+}
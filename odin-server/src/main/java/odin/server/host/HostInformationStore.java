@@ -0,0 +1,58 @@
+package odin.server.host;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A store of the cached {@link HostInformation} of every host that has been looked up.
+ * Implementations must be safe to use from multiple threads at once.
+ */
+
+public interface HostInformationStore extends Closeable
+{
+    /**
+     * Retrieves the information stored for a host.
+     * 
+     * @param host      The full host name.
+     * @return          The stored information, or null if none is stored for the host.
+     */
+    
+    public HostInformation load(String host) throws IOException;
+    
+    /**
+     * Stores the information of a host, replacing any information previously stored for it.
+     * Writes may be batched, and are only guaranteed to be persisted once {@link #flush()} is called.
+     * 
+     * @param information   The information to store.
+     */
+    
+    public void store(HostInformation information) throws IOException;
+    
+    /**
+     * Persists any batched writes.
+     */
+    
+    public void flush() throws IOException;
+    
+    /**
+     * @return          the number of hosts with stored information.
+     */
+    
+    public int size();
+    
+    /**
+     * @return          a live view of the stored information of every host. Iterating it while hosts are being stored is safe, 
+     *                  but may or may not reflect the concurrent changes.
+     */
+    
+    public Collection<HostInformation> getAll();
+    
+    /**
+     * @param time      The earliest lookup time.
+     * @return          a live view of the stored information of the hosts looked up at or after the time, in order of lookup time.
+     *                  Iterating it while hosts are being stored is safe, but may or may not reflect the concurrent changes.
+     */
+    
+    public Collection<HostInformation> getLookedUpSince(long time);
+}
@@ -0,0 +1,259 @@
+package odin.server.host;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import loki.server.util.ServerUtils;
+
+/**
+ * A HostInformationStore that keeps the information of every host in memory, backed by a single append-only log file.
+ * 
+ * The whole log is loaded into a hash index when the store is opened, so lookups never touch the disk. Stored information is appended to the log 
+ * through a buffer, and the log is compacted when it is opened if it holds many superseded entries. A partially written entry at the end of the log 
+ * (for example after a crash) is discarded. Each entry records the time the information was looked up.
+ * 
+ * The current entries are also kept ordered by lookup time, so that the hosts looked up since a given time are found without visiting every host.
+ */
+
+public class LogHostInformationStore implements HostInformationStore
+{
+    private static final int MAGIC = 0x4F484931; // OHI1
+    private static final int ENTRY_MARKER = 1;
+    
+    private static final Comparator<HostInformation> LOOKUP_TIME_ORDER = new Comparator<HostInformation>(){
+        public int compare(HostInformation information1, HostInformation information2)
+        {
+            int result = Long.compare(information1.getLookupTime(), information2.getLookupTime());
+            return result!=0?result:information1.getHost().compareTo(information2.getHost());
+        }
+    };
+    
+    private File logFile;
+    private ConcurrentHashMap<String, HostInformation> index;
+    private ConcurrentSkipListSet<HostInformation> lookupTimeIndex;
+    private DataOutputStream out;
+    
+    /**
+     * Opens the store, loading every entry of the log file into memory. The log file is created if it does not exist.
+     * 
+     * @param logFile       The log file.
+     */
+    
+    public LogHostInformationStore(File logFile) throws IOException
+    {
+        this.logFile = logFile;
+        this.index = new ConcurrentHashMap<String, HostInformation>();
+        this.lookupTimeIndex = new ConcurrentSkipListSet<HostInformation>(LOOKUP_TIME_ORDER);
+        
+        if(logFile.getParentFile()!=null)
+        {
+            logFile.getParentFile().mkdirs();
+        }
+        
+        long start = System.currentTimeMillis();
+        int entryCount = logFile.exists()?readLog():0;
+        
+        if(!logFile.exists() || entryCount>index.size()*2+1000)
+        {
+            writeLog();
+        }
+        
+        lookupTimeIndex.addAll(index.values());
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true), 1024*64));
+        ServerUtils.log("Loaded "+index.size()+" hosts from "+logFile+" in "+(System.currentTimeMillis()-start)+"ms");
+    }
+    
+    public HostInformation load(String host)
+    {
+        return index.get(host);
+    }
+    
+    public synchronized void store(HostInformation information) throws IOException
+    {
+        writeEntry(out, information);
+        HostInformation previous = index.put(information.getHost(), information);
+        
+        // Adds the new entry before removing the old one where their order differs, so that concurrent readers of getLookedUpSince do not miss the host
+        
+        if(previous==null || LOOKUP_TIME_ORDER.compare(previous, information)!=0)
+        {
+            lookupTimeIndex.add(information);
+            
+            if(previous!=null)
+            {
+                lookupTimeIndex.remove(previous);
+            }
+        }
+        else
+        {
+            lookupTimeIndex.remove(previous);
+            lookupTimeIndex.add(information);
+        }
+    }
+    
+    public synchronized void flush() throws IOException
+    {
+        out.flush();
+    }
+    
+    public int size()
+    {
+        return index.size();
+    }
+    
+    public Collection<HostInformation> getAll()
+    {
+        return Collections.unmodifiableCollection(index.values());
+    }
+    
+    public Collection<HostInformation> getLookedUpSince(long time)
+    {
+        return Collections.unmodifiableCollection(lookupTimeIndex.tailSet(new HostInformation("", null, null, null, time)));
+    }
+    
+    public synchronized void close() throws IOException
+    {
+        out.close();
+    }
+    
+    private int readLog() throws IOException
+    {
+        // Reads every complete entry, then truncates any partially written entry from the end of the log
+        
+        int entryCount = 0;
+        long validLength = 0;
+        
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), 1024*64)))
+        {
+            if(in.readInt()!=MAGIC)
+            {
+                throw new IOException("Not a host information log: "+logFile);
+            }
+            
+            validLength = 4;
+            
+            while(true)
+            {
+                HostInformation information = readEntry(in);
+                
+                if(information==null)
+                {
+                    break;
+                }
+                
+                index.put(information.getHost(), information);
+                validLength = validLength+entryLength(information);
+                entryCount++;
+            }
+        }
+        catch(EOFException e)
+        {
+            // Partially written entry
+        }
+        
+        if(validLength<logFile.length())
+        {
+            ServerUtils.log("Truncating partially written entry from "+logFile);
+            
+            try(RandomAccessFile file = new RandomAccessFile(logFile, "rw"))
+            {
+                file.setLength(validLength);
+            }
+        }
+        
+        return entryCount;
+    }
+    
+    private void writeLog() throws IOException
+    {
+        // Rewrites the log with only the current entry of each host
+        
+        File tempFile = new File(logFile.getPath()+".tmp");
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1024*64)))
+        {
+            out.writeInt(MAGIC);
+            
+            for(HostInformation information: index.values())
+            {
+                writeEntry(out, information);
+            }
+        }
+        
+        Files.move(tempFile.toPath(), logFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static HostInformation readEntry(DataInputStream in) throws IOException
+    {
+        int marker = in.read();
+        
+        if(marker<0)
+        {
+            return null;
+        }
+        if(marker!=ENTRY_MARKER)
+        {
+            throw new IOException("Unknown host information log entry marker: "+marker);
+        }
+        
+        String host = in.readUTF();
+        String ipAddress = in.readUTF();
+        String state = in.readUTF();
+        String city = in.readUTF();
+        
+        long lookupTime = in.readLong();
+        
+        return new HostInformation(host, ipAddress, state, city, lookupTime);
+    }
+    
+    private static void writeEntry(DataOutputStream out, HostInformation information) throws IOException
+    {
+        out.write(ENTRY_MARKER);
+        out.writeUTF(information.getHost());
+        out.writeUTF(nonNull(information.getIpAddress()));
+        out.writeUTF(nonNull(information.getState()));
+        out.writeUTF(nonNull(information.getCity()));
+        out.writeLong(information.getLookupTime());
+    }
+    
+    private static long entryLength(HostInformation information)
+    {
+        return 1+utfLength(information.getHost())+utfLength(information.getIpAddress())+utfLength(information.getState())+utfLength(information.getCity())+8;
+    }
+    
+    private static int utfLength(String value)
+    {
+        // The length of the modified UTF-8 encoding written by DataOutputStream.writeUTF
+        
+        value = nonNull(value);
+        int length = 2;
+        
+        for(int i=0; i<value.length(); i++)
+        {
+            char c = value.charAt(i);
+            length = length+((c>=0x0001 && c<=0x007F)?1:(c>0x07FF?3:2));
+        }
+        
+        return length;
+    }
+    
+    private static String nonNull(String value)
+    {
+        return value==null?"":value;
+    }
+}
@@ -0,0 +1,162 @@
+package odin.server.host.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * A HostResolver that wraps another resolver, adding:
+ * <ul>
+ * <li>Deduplication: concurrent requests for the same host share a single lookup.</li>
+ * <li>Negative caching: hosts that were not found are reported as not found again, without a lookup, until the negative cache time expires.
+ * The negative cache holds a limited number of hosts, and expired hosts are dropped as new hosts are added, so it does not grow without bound.</li>
+ * </ul>
+ * Timeouts are left to the wrapped resolver, which knows when each lookup actually starts, so a lookup only completes once the wrapped lookup has.
+ */
+
+public class CachingHostResolver implements HostResolver
+{
+    private HostResolver resolver;
+    private long negativeCacheMillis;
+    private ConcurrentHashMap<String, CompletableFuture<InetAddress>> inFlightLookups;
+    private LinkedHashMap<String, Long> notFoundExpiryTimes;
+    
+    /**
+     * Creates a new resolver.
+     * 
+     * @param resolver                  The resolver that performs the lookups.
+     * @param negativeCacheMillis       How long a host that was not found is remembered as not found.
+     * @param maxNegativeCacheEntries   The maximum number of hosts remembered as not found. The hosts that expire soonest are forgotten first.
+     */
+    
+    public CachingHostResolver(HostResolver resolver, long negativeCacheMillis, int maxNegativeCacheEntries)
+    {
+        this.resolver = resolver;
+        this.negativeCacheMillis = negativeCacheMillis;
+        this.inFlightLookups = new ConcurrentHashMap<String, CompletableFuture<InetAddress>>();
+        
+        // Hosts are always added with the same expiry time from now, so insertion order is also expiry order
+        
+        this.notFoundExpiryTimes = new LinkedHashMap<String, Long>(){
+            private static final long serialVersionUID = 1L;
+            
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest)
+            {
+                return size()>maxNegativeCacheEntries;
+            }
+        };
+    }
+    
+    public CompletableFuture<InetAddress> resolve(String host)
+    {
+        if(isCachedAsNotFound(host))
+        {
+            CompletableFuture<InetAddress> future = new CompletableFuture<InetAddress>();
+            future.completeExceptionally(new HostNotFoundException(host));
+            return future;
+        }
+        
+        CompletableFuture<InetAddress> future = new CompletableFuture<InetAddress>();
+        CompletableFuture<InetAddress> existingFuture = inFlightLookups.putIfAbsent(host, future);
+        
+        if(existingFuture!=null)
+        {
+            return existingFuture;
+        }
+        
+        future.whenComplete(new BiConsumer<InetAddress, Throwable>(){
+            public void accept(InetAddress address, Throwable e)
+            {
+                inFlightLookups.remove(host, future);
+                
+                if(e instanceof CompletionException)
+                {
+                    e = e.getCause();
+                }
+                if(e instanceof HostNotFoundException && negativeCacheMillis>0)
+                {
+                    cacheAsNotFound(host);
+                }
+            }
+        });
+        
+        try
+        {
+            resolver.resolve(host).whenComplete(new BiConsumer<InetAddress, Throwable>(){
+                public void accept(InetAddress address, Throwable e)
+                {
+                    if(e!=null)
+                    {
+                        future.completeExceptionally(e instanceof CompletionException?e.getCause():e);
+                    }
+                    else
+                    {
+                        future.complete(address);
+                    }
+                }
+            });
+        }
+        catch(Exception e)
+        {
+            future.completeExceptionally(e);
+        }
+        
+        return future;
+    }
+    
+    public int getConcurrency()
+    {
+        return resolver.getConcurrency();
+    }
+    
+    public void close() throws IOException
+    {
+        resolver.close();
+    }
+    
+    private boolean isCachedAsNotFound(String host)
+    {
+        synchronized(notFoundExpiryTimes)
+        {
+            Long expiryTime = notFoundExpiryTimes.get(host);
+            
+            if(expiryTime==null)
+            {
+                return false;
+            }
+            if(expiryTime>System.currentTimeMillis())
+            {
+                return true;
+            }
+            
+            notFoundExpiryTimes.remove(host);
+            return false;
+        }
+    }
+    
+    private void cacheAsNotFound(String host)
+    {
+        long now = System.currentTimeMillis();
+        
+        synchronized(notFoundExpiryTimes)
+        {
+            // Moved to the end, to keep the hosts in order of expiry, and then the expired hosts at the start are forgotten
+            
+            notFoundExpiryTimes.remove(host);
+            notFoundExpiryTimes.put(host, now+negativeCacheMillis);
+            
+            Iterator<Long> iterator = notFoundExpiryTimes.values().iterator();
+            
+            while(iterator.hasNext() && iterator.next()<=now)
+            {
+                iterator.remove();
+            }
+        }
+    }
+}
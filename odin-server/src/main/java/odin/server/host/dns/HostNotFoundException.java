@@ -0,0 +1,18 @@
+package odin.server.host.dns;
+
+import java.net.UnknownHostException;
+
+/**
+ * Thrown when a host name definitely does not resolve (for example an NXDOMAIN response), as opposed to a lookup that failed or timed out.
+ * Resolvers may cache these results.
+ */
+
+public class HostNotFoundException extends UnknownHostException
+{
+    private static final long serialVersionUID = 1L;
+    
+    public HostNotFoundException(String host)
+    {
+        super(host);
+    }
+}
@@ -0,0 +1,37 @@
+package odin.server.host.dns;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves host names to IP addresses asynchronously, so that many lookups can be in progress at once.
+ * 
+ * Implementations must be safe to use from multiple threads at once. Implementations with a public no-argument constructor
+ * can be selected with the geolocation_dns_resolver property of config/geolocation.properties (for example to use a local stub resolver).
+ */
+
+public interface HostResolver extends Closeable
+{
+    /**
+     * Starts resolving a host name.
+     * 
+     * @param host      The host name.
+     * @return          A future that completes with an IP address of the host. If the host does not exist (or has no address), the future completes 
+     *                  exceptionally with a {@link HostNotFoundException}. Other failures (such as timeouts) complete it with other exceptions.
+     */
+    
+    public CompletableFuture<InetAddress> resolve(String host);
+    
+    /**
+     * Gets the number of lookups the resolver actually performs at once. Lookups requested beyond this are queued until a lookup finishes, 
+     * so callers should keep no more than this many lookups pending. Implementations should override this to report their real limit.
+     * 
+     * @return          The number of lookups performed at once.
+     */
+    
+    public default int getConcurrency()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
@@ -0,0 +1,97 @@
+package odin.server.host.dns;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A HostResolver that uses the system resolver (InetAddress.getByName), running the blocking lookups on a fixed pool of threads.
+ * The system resolver does not distinguish missing hosts from failed lookups, so every failure is reported as a {@link HostNotFoundException}.
+ * 
+ * The optional timeout starts when a thread starts the lookup, not when the lookup is requested, so lookups waiting for a free thread do not time out.
+ */
+
+public class SystemHostResolver implements HostResolver
+{
+    private ExecutorService executorService;
+    private int threadCount;
+    private long timeoutMillis;
+    
+    /**
+     * Creates a resolver with a single lookup thread per available processor, and no timeout.
+     */
+    
+    public SystemHostResolver()
+    {
+        this(Runtime.getRuntime().availableProcessors(), 0);
+    }
+    
+    /**
+     * Creates a resolver.
+     * 
+     * @param threadCount       The number of lookups that can be in progress at once.
+     * @param timeoutMillis     How long a lookup may take once started before it fails with a TimeoutException, or 0 to wait as long as the system resolver does.
+     *                          The thread of a lookup that times out remains busy until the system resolver returns.
+     */
+    
+    public SystemHostResolver(int threadCount, long timeoutMillis)
+    {
+        AtomicInteger threadIndex = new AtomicInteger();
+        
+        this.threadCount = threadCount;
+        this.timeoutMillis = timeoutMillis;
+        this.executorService = Executors.newFixedThreadPool(threadCount, new ThreadFactory(){
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "system-host-resolver-"+threadIndex.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    public CompletableFuture<InetAddress> resolve(String host)
+    {
+        CompletableFuture<InetAddress> future = new CompletableFuture<InetAddress>();
+        
+        executorService.execute(new Runnable(){
+            public void run()
+            {
+                if(timeoutMillis>0)
+                {
+                    future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+                }
+                
+                try
+                {
+                    future.complete(InetAddress.getByName(host));
+                }
+                catch(UnknownHostException e)
+                {
+                    future.completeExceptionally(new HostNotFoundException(host));
+                }
+                catch(Exception e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        
+        return future;
+    }
+    
+    public int getConcurrency()
+    {
+        return threadCount;
+    }
+    
+    public void close()
+    {
+        executorService.shutdown();
+    }
+}
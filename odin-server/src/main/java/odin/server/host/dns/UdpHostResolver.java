@@ -0,0 +1,431 @@
+package odin.server.host.dns;
+
+import java.io.IOException;
+import java.net.IDN;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import loki.server.util.ServerUtils;
+
+/**
+ * A non-blocking HostResolver that sends DNS queries for A records over UDP to a single DNS server (usually a local caching resolver), 
+ * with many queries in flight at once on a single thread.
+ * 
+ * Queries beyond the maximum in flight are queued, and only start timing out once they are sent, so a backlog of queries does not fail 
+ * queries that were never sent. Hosts whose responses are truncated (and so would need TCP), or that exist but have no IPv4 address 
+ * (such as hosts with only IPv6 addresses), are looked up with a fallback resolver instead. Only hosts that do not exist (NXDOMAIN) are reported as not found.
+ */
+
+public class UdpHostResolver implements HostResolver
+{
+    private static final int TYPE_A = 1;
+    private static final int CLASS_IN = 1;
+    private static final int RCODE_NXDOMAIN = 3;
+    
+    private InetSocketAddress serverAddress;
+    private int maxInFlight;
+    private long timeoutMillis;
+    private HostResolver fallbackResolver;
+    
+    private DatagramChannel channel;
+    private Selector selector;
+    private Thread thread;
+    private volatile boolean running;
+    private Random random;
+    
+    private ConcurrentLinkedQueue<Query> queuedQueries;
+    private ConcurrentHashMap<Integer, Query> inFlightQueries;
+    
+    /**
+     * Creates a resolver and starts its thread.
+     * 
+     * @param serverAddress     The address of the DNS server to send queries to.
+     * @param maxInFlight       The maximum number of queries awaiting a response at once. Further queries are queued.
+     * @param timeoutMillis     How long to wait for a response to a query, from when the query is sent.
+     * @param fallbackResolver  The resolver to use for hosts whose responses are truncated, or that have no IPv4 address.
+     */
+    
+    public UdpHostResolver(InetSocketAddress serverAddress, int maxInFlight, long timeoutMillis, HostResolver fallbackResolver) throws IOException
+    {
+        this.serverAddress = serverAddress;
+        this.maxInFlight = Math.min(maxInFlight, 60000);
+        this.timeoutMillis = timeoutMillis;
+        this.fallbackResolver = fallbackResolver;
+        this.random = new Random();
+        this.queuedQueries = new ConcurrentLinkedQueue<Query>();
+        this.inFlightQueries = new ConcurrentHashMap<Integer, Query>();
+        
+        selector = Selector.open();
+        channel = DatagramChannel.open();
+        channel.configureBlocking(false);
+        channel.connect(serverAddress);
+        channel.register(selector, SelectionKey.OP_READ);
+        
+        running = true;
+        thread = new Thread(new Runnable(){
+            public void run()
+            {
+                runLoop();
+            }
+        }, "udp-host-resolver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    public CompletableFuture<InetAddress> resolve(String host)
+    {
+        Query query = new Query(host);
+        
+        try
+        {
+            query.name = IDN.toASCII(host);
+            
+            if(query.name.endsWith("."))
+            {
+                query.name = query.name.substring(0, query.name.length()-1);
+            }
+            if(query.name.isEmpty() || query.name.length()>253)
+            {
+                throw new IllegalArgumentException("Invalid host name length");
+            }
+        }
+        catch(IllegalArgumentException e)
+        {
+            query.future.completeExceptionally(new HostNotFoundException(host));
+            return query.future;
+        }
+        
+        queuedQueries.add(query);
+        selector.wakeup();
+        return query.future;
+    }
+    
+    public int getConcurrency()
+    {
+        return maxInFlight;
+    }
+    
+    public void close() throws IOException
+    {
+        running = false;
+        selector.wakeup();
+        
+        try
+        {
+            thread.join(timeoutMillis);
+        }
+        catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        
+        channel.close();
+        selector.close();
+        fallbackResolver.close();
+    }
+    
+    private void runLoop()
+    {
+        ByteBuffer receiveBuffer = ByteBuffer.allocate(512);
+        ByteBuffer sendBuffer = ByteBuffer.allocate(512);
+        
+        while(running)
+        {
+            try
+            {
+                selector.select(Math.max(10, Math.min(100, timeoutMillis/4)));
+                selector.selectedKeys().clear();
+                
+                // Read every response that has arrived
+                
+                while(true)
+                {
+                    receiveBuffer.clear();
+                    
+                    if(channel.receive(receiveBuffer)==null)
+                    {
+                        break;
+                    }
+                    
+                    receiveBuffer.flip();
+                    onResponse(receiveBuffer);
+                }
+                
+                // Send queued queries while there is room
+                
+                while(inFlightQueries.size()<maxInFlight && !queuedQueries.isEmpty())
+                {
+                    Query query = queuedQueries.peek();
+                    int id = nextId();
+                    
+                    sendBuffer.clear();
+                    
+                    if(!writeQuery(sendBuffer, id, query.name))
+                    {
+                        queuedQueries.poll();
+                        query.future.completeExceptionally(new HostNotFoundException(query.host));
+                        continue;
+                    }
+                    
+                    sendBuffer.flip();
+                    
+                    if(channel.write(sendBuffer)==0)
+                    {
+                        // The socket's send buffer is full, try again on the next loop
+                        
+                        break;
+                    }
+                    
+                    queuedQueries.poll();
+                    query.id = id;
+                    query.deadline = System.currentTimeMillis()+timeoutMillis;
+                    inFlightQueries.put(id, query);
+                }
+                
+                // Fail any queries that have timed out
+                
+                long now = System.currentTimeMillis();
+                Iterator<Query> iterator = inFlightQueries.values().iterator();
+                
+                while(iterator.hasNext())
+                {
+                    Query query = iterator.next();
+                    
+                    if(query.deadline<=now)
+                    {
+                        iterator.remove();
+                        query.future.completeExceptionally(new TimeoutException("DNS query timed out: "+query.host));
+                    }
+                }
+            }
+            catch(Exception e)
+            {
+                if(running)
+                {
+                    ServerUtils.log(e);
+                }
+            }
+        }
+        
+        // Fail anything left
+        
+        for(Query query: inFlightQueries.values())
+        {
+            query.future.completeExceptionally(new IOException("Resolver closed"));
+        }
+        for(Query query: queuedQueries)
+        {
+            query.future.completeExceptionally(new IOException("Resolver closed"));
+        }
+    }
+    
+    private int nextId()
+    {
+        int id;
+        
+        do
+        {
+            id = random.nextInt(0x10000);
+        }
+        while(inFlightQueries.containsKey(id));
+        
+        return id;
+    }
+    
+    private boolean writeQuery(ByteBuffer buffer, int id, String name)
+    {
+        buffer.putShort((short)id);
+        buffer.putShort((short)0x0100); // Recursion desired
+        buffer.putShort((short)1);
+        buffer.putShort((short)0);
+        buffer.putShort((short)0);
+        buffer.putShort((short)0);
+        
+        for(String label: name.split("\\."))
+        {
+            byte[] bytes = label.getBytes(StandardCharsets.US_ASCII);
+            
+            if(bytes.length==0 || bytes.length>63)
+            {
+                return false;
+            }
+            
+            buffer.put((byte)bytes.length);
+            buffer.put(bytes);
+        }
+        
+        buffer.put((byte)0);
+        buffer.putShort((short)TYPE_A);
+        buffer.putShort((short)CLASS_IN);
+        return true;
+    }
+    
+    private void onResponse(ByteBuffer buffer)
+    {
+        try
+        {
+            int id = buffer.getShort() & 0xFFFF;
+            int flags = buffer.getShort() & 0xFFFF;
+            int questionCount = buffer.getShort() & 0xFFFF;
+            int answerCount = buffer.getShort() & 0xFFFF;
+            buffer.getShort();
+            buffer.getShort();
+            
+            Query query = inFlightQueries.get(id);
+            
+            if(query==null || (flags & 0x8000)==0)
+            {
+                return;
+            }
+            
+            // Check the response is for this query, and not a late response to an earlier query that used the same ID
+            
+            if(questionCount!=1 || !query.name.equalsIgnoreCase(readName(buffer)))
+            {
+                return;
+            }
+            
+            buffer.getShort();
+            buffer.getShort();
+            inFlightQueries.remove(id);
+            
+            if((flags & 0x0200)!=0)
+            {
+                // Truncated
+                
+                resolveWithFallback(query);
+                return;
+            }
+            
+            int rcode = flags & 0x000F;
+            
+            if(rcode==RCODE_NXDOMAIN)
+            {
+                query.future.completeExceptionally(new HostNotFoundException(query.host));
+                return;
+            }
+            if(rcode!=0)
+            {
+                query.future.completeExceptionally(new UnknownHostException("DNS error "+rcode+" for "+query.host));
+                return;
+            }
+            
+            for(int i=0; i<answerCount; i++)
+            {
+                skipName(buffer);
+                int type = buffer.getShort() & 0xFFFF;
+                int recordClass = buffer.getShort() & 0xFFFF;
+                buffer.getInt();
+                int length = buffer.getShort() & 0xFFFF;
+                
+                if(type==TYPE_A && recordClass==CLASS_IN && length==4)
+                {
+                    byte[] address = new byte[4];
+                    buffer.get(address);
+                    query.future.complete(InetAddress.getByAddress(query.host, address));
+                    return;
+                }
+                
+                buffer.position(buffer.position()+length);
+            }
+            
+            // The host exists, but has no IPv4 address, so it may have an IPv6 address
+            
+            resolveWithFallback(query);
+        }
+        catch(Exception e)
+        {
+            // Malformed response, the query will time out
+        }
+    }
+    
+    private void resolveWithFallback(Query query)
+    {
+        fallbackResolver.resolve(query.host).whenComplete(new BiConsumer<InetAddress, Throwable>(){
+            public void accept(InetAddress address, Throwable e)
+            {
+                if(e!=null)
+                {
+                    query.future.completeExceptionally(e);
+                }
+                else
+                {
+                    query.future.complete(address);
+                }
+            }
+        });
+    }
+    
+    private static String readName(ByteBuffer buffer)
+    {
+        // Reads an uncompressed name (as used in the question section)
+        
+        StringBuilder name = new StringBuilder();
+        int length;
+        
+        while((length = buffer.get() & 0xFF)!=0)
+        {
+            if((length & 0xC0)!=0)
+            {
+                buffer.get();
+                return null;
+            }
+            if(name.length()>0)
+            {
+                name.append('.');
+            }
+            
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            name.append(new String(bytes, StandardCharsets.US_ASCII));
+        }
+        
+        return name.toString();
+    }
+    
+    private static void skipName(ByteBuffer buffer)
+    {
+        int length;
+        
+        while((length = buffer.get() & 0xFF)!=0)
+        {
+            if((length & 0xC0)==0xC0)
+            {
+                // Compression pointer, which always ends the name
+                
+                buffer.get();
+                return;
+            }
+            
+            buffer.position(buffer.position()+length);
+        }
+    }
+    
+    private static class Query
+    {
+        private String host;
+        private String name;
+        private int id;
+        private long deadline;
+        private CompletableFuture<InetAddress> future;
+        
+        public Query(String host)
+        {
+            this.host = host;
+            this.future = new CompletableFuture<InetAddress>();
+        }
+    }
+}
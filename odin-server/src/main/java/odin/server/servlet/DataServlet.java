@@ -3,7 +3,10 @@ package odin.server.servlet;
 import loki.server.request.RequestServlet;
 import loki.server.util.ServerUtils;
 import odin.request.DataService;
+import odin.request.ServerStatus;
 import odin.server.OdinServerOperations;
+import odin.stats.DomainStatsChart;
+import odin.stats.DomainStatsColumns;
 import odin.stats.DomainStatsSeries;
 
 /**
@@ -29,4 +32,77 @@ public class DataServlet extends RequestServlet<OdinServerOperations> implements
         ServerUtils.log("Stats requested: "+category);
         return super.getOperations().getStatsService().getDomainStatsSeries(category, earliest, latest);
     }
+    
+    /**
+     * Retrieves a series of statistics for the category provided and over the time frame specified, in columns. 
+     * 
+     * @param category   The category of statistics to retrieve. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param resolution The resolution of the series. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest   The start of the time period from which to retrieve statistics.
+     * @param latest     The end of the time period from which to retrieve statistics.
+     * @return           The columns of statistics for the category provided and over the time frame specified.
+     */
+    
+    public DomainStatsColumns getDomainStatsColumns(String category, String resolution, long earliest, long latest) throws Exception
+    {
+        ServerUtils.log("Stats requested: "+category);
+        return super.getOperations().getStatsService().getDomainStatsColumns(category, resolution, earliest, latest);
+    }
+    
+    /**
+     * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified. 
+     * 
+     * @param category           The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param countType          The count type to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param categoryStructure  How to group categories. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param hiddenCategories   The categories whose values are not needed, as they are hidden.
+     * @param resolution         The resolution of the series to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest           The start of the time period from which to chart statistics.
+     * @param latest             The end of the time period from which to chart statistics.
+     * @return                   The datasets of the chart.
+     */
+    
+    public DomainStatsChart getDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution, long earliest, long latest) throws Exception
+    {
+        ServerUtils.log("Stats chart requested: "+category+" "+countType+" "+categoryStructure);
+        return super.getOperations().getStatsService().getDomainStatsChart(category, countType, categoryStructure, hiddenCategories, resolution, earliest, latest);
+    }
+    
+    /**
+     * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified, without waiting for
+     * every time to be parsed.
+     * 
+     * @param category           The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param countType          The count type to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param categoryStructure  How to group categories. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param hiddenCategories   The categories whose values are not needed, as they are hidden.
+     * @param resolution         The resolution of the series to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest           The start of the time period from which to chart statistics.
+     * @param latest             The end of the time period from which to chart statistics.
+     * @param pendingToken       The token of the previous chart of the same request, or null to request the chart for the first time.
+     * @return                   The datasets of the chart.
+     */
+    
+    public DomainStatsChart getProgressiveDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution,
+            long earliest, long latest, String pendingToken) throws Exception
+    {
+        if(pendingToken==null)
+        {
+            ServerUtils.log("Stats chart requested: "+category+" "+countType+" "+categoryStructure);
+        }
+        
+        return super.getOperations().getStatsService().getProgressiveDomainStatsChart(category, countType, categoryStructure, hiddenCategories, resolution,
+                earliest, latest, pendingToken);
+    }
+    
+    /**
+     * Retrieves the readiness of the server, such as whether it is still warming up after a restart.
+     * 
+     * @return           The readiness of the server.
+     */
+    
+    public ServerStatus getServerStatus() throws Exception
+    {
+        return super.getOperations().getServerStatus();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package odin.server.stats;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import odin.stats.DomainStatsChart;
+import odin.stats.DomainStatsColumns;
+import odin.stats.DomainStatsConstants;
+
+/**
+ * Builds the finished datasets of a statistics chart from the columns of a series: ranks the categories by their total for the count type, 
+ * groups the smallest into an Other category according to the category structure, and sums the values of each shown category at each time.
+ */
+
+public class DomainStatsChartBuilder
+{
+    private static final int TOP_CATEGORY_COUNT = 20;
+    
+    /**
+     * Builds the datasets of a chart.
+     * 
+     * @param columns               The statistics to chart.
+     * @param countType             The count type to chart, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT.
+     * @param categoryStructure     How to group categories, such as DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20.
+     * @param hiddenCategories      The categories whose values are not needed, as they are hidden.
+     * @return                      the datasets.
+     */
+    
+    public static DomainStatsChart build(DomainStatsColumns columns, String countType, String categoryStructure, Set<String> hiddenCategories) throws Exception
+    {
+        int countTypeIndex = DomainStatsConstants.getCountTypeIndex(countType);
+        
+        if(countTypeIndex<0)
+        {
+            throw new Exception("Count type ["+countType+"] not supported.");
+        }
+        
+        String[] categories = columns.getCategories();
+        long[] times = columns.getTimes();
+        long overallCount = 0;
+        List<Integer> categoryIndexes = new ArrayList<Integer>(categories.length);
+        
+        for(int c=0; c<categories.length; c++)
+        {
+            categoryIndexes.add(c);
+            overallCount = overallCount+columns.getTotal(countTypeIndex, c);
+        }
+        
+        // Rank the categories by their total (larger to smaller)
+        
+        Collections.sort(categoryIndexes, new Comparator<Integer>(){
+            public int compare(Integer a, Integer b)
+            {
+                return -Long.compare(columns.getTotal(countTypeIndex, a), columns.getTotal(countTypeIndex, b));
+            }
+        });
+        
+        // Split the categories into those shown and those grouped into Other
+        
+        int shownCount = categoryIndexes.size();
+        double omitPercentage = 0d;
+        
+        if(categoryStructure.equals(DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_1P))
+        {
+            omitPercentage = 0.01d;
+        }
+        if(categoryStructure.equals(DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_10P))
+        {
+            omitPercentage = 0.1d;
+        }
+        if(omitPercentage>0d)
+        {
+            while(shownCount>0 && ((double)columns.getTotal(countTypeIndex, categoryIndexes.get(shownCount-1)))/(double)overallCount<=omitPercentage)
+            {
+                shownCount--;
+            }
+        }
+        if(categoryStructure.equals(DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20))
+        {
+            shownCount = Math.min(shownCount, TOP_CATEGORY_COUNT);
+        }
+        
+        boolean hasOther = shownCount<categoryIndexes.size();
+        String[] chartCategories = new String[shownCount+(hasOther?1:0)];
+        long[][] values = new long[chartCategories.length][];
+        
+        for(int i=0; i<chartCategories.length; i++)
+        {
+            List<Integer> dataCategoryIndexes = (i<shownCount)?(categoryIndexes.subList(i, i+1)):(categoryIndexes.subList(shownCount, categoryIndexes.size()));
+            chartCategories[i] = (i<shownCount)?(categories[categoryIndexes.get(i)]):(DomainStatsConstants.STATS_VIEW_CATEGORY__OTHER);
+            
+            if(hiddenCategories.contains(chartCategories[i]))
+            {
+                continue;
+            }
+            
+            values[i] = new long[times.length];
+            
+            for(int t=0; t<times.length; t++)
+            {
+                for(int c: dataCategoryIndexes)
+                {
+                    values[i][t] = values[i][t]+columns.getCount(countTypeIndex, t, c);
+                }
+            }
+        }
+        
+        return new DomainStatsChart(chartCategories, times, values, columns.getPendingCount());
+    }
+}
@@ -0,0 +1,144 @@
+package odin.server.stats;
+
+import java.io.File;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import odin.stats.DomainStatsConstants;
+
+/**
+ * A snapshot of a harvest's hosts report file (and its associated mime types report file) as it appeared on disk.
+ * Two instances are equal only if they refer to the same report and both files have the same modification time and size, 
+ * so a replaced or removed report file can be detected by comparing snapshots.
+ */
+
+public class HostReportFile
+{
+    public static final String HOST_REPORTS_DIRECTORY = "source_data/harvest_host_reports/";
+    public static final String MIME_REPORTS_DIRECTORY = "source_data/harvest_mime_reports/";
+    
+    private String id;
+    private long time;
+    private File file;
+    private long lastModified;
+    private long length;
+    private long mimeLastModified;
+    private long mimeLength;
+    
+    /**
+     * Creates a snapshot of the specified hosts report file.
+     * 
+     * @param file      The hosts report file. The file name uses a date in the format yyyy_MM.txt
+     * @throws ParseException if the file name is not in the expected format.
+     */
+    
+    public HostReportFile(File file) throws ParseException
+    {
+        this.file = file;
+        this.id = getReportId(file);
+        this.time = new SimpleDateFormat("yyyy_MM").parse(id).getTime();
+        this.lastModified = file.lastModified();
+        this.length = file.length();
+        
+        File mimeFile = getMimeReportFile();
+        this.mimeLastModified = mimeFile.lastModified();
+        this.mimeLength = mimeFile.length();
+    }
+    
+    /**
+     * @return      the report ID (the file name without the extension, in the format yyyy_MM).
+     */
+    
+    public String getId()
+    {
+        return id;
+    }
+    
+    /**
+     * @return      the time of the harvest, as parsed from the report ID.
+     */
+    
+    public long getTime()
+    {
+        return time;
+    }
+    
+    /**
+     * @return      the hosts report file.
+     */
+    
+    public File getFile()
+    {
+        return file;
+    }
+    
+    /**
+     * @return      the mime types report file associated with the hosts report file. The file may not exist.
+     */
+    
+    public File getMimeReportFile()
+    {
+        return new File(MIME_REPORTS_DIRECTORY, file.getName());
+    }
+    
+    /**
+     * @return      a string that identifies this snapshot: two snapshots have the same fingerprint only if they are equal.
+     */
+    
+    public String getFingerprint()
+    {
+        return id+"_"+lastModified+"_"+length+"_"+mimeLastModified+"_"+mimeLength;
+    }
+    
+    /**
+     * Gets a string that identifies the snapshot of the report file the statistics of a category are generated from. Only the mime type statistics 
+     * are generated from the mime types report, so replacing one report file does not make the statistics generated from the other out of date.
+     * 
+     * @param category  The category of statistics.
+     * @return          the fingerprint of the report file of the category.
+     */
+    
+    public String getSourceFingerprint(String category)
+    {
+        if(category.equals(DomainStatsConstants.STATS_VIEW_CATEGORY__BY_MIME_TYPE))
+        {
+            return id+"_mime_"+mimeLastModified+"_"+mimeLength;
+        }
+        
+        return id+"_hosts_"+lastModified+"_"+length;
+    }
+    
+    public boolean equals(Object o)
+    {
+        if(!(o instanceof HostReportFile))
+        {
+            return false;
+        }
+        
+        HostReportFile other = (HostReportFile)o;
+        
+        return id.equals(other.id) && 
+                lastModified==other.lastModified && 
+                length==other.length && 
+                mimeLastModified==other.mimeLastModified && 
+                mimeLength==other.mimeLength;
+    }
+    
+    public int hashCode()
+    {
+        return id.hashCode()*31+Long.hashCode(lastModified^length^mimeLastModified^mimeLength);
+    }
+    
+    /**
+     * Returns the report ID for the specified report file.
+     * 
+     * @param file      The report file.
+     * @return          The file name without the extension.
+     */
+    
+    public static String getReportId(File file)
+    {
+        int index = file.getName().indexOf(".");
+        return index<0?file.getName():file.getName().substring(0, index);
+    }
+}
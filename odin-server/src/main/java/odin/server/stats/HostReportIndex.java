@@ -0,0 +1,201 @@
+package odin.server.stats;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import loki.server.util.ServerUtils;
+
+/**
+ * An in-memory index of the available hosts reports, sorted by time.
+ * 
+ * The index is loaded from the hosts reports directory once, and then kept up to date as reports are ingested or removed, so that
+ * the reports of a time frame can be found with a binary search, without listing the directory or parsing every report file name.
+ * The entries of the index are replaced (rather than changed) on every update, so they can be read without locking.
+ */
+
+public class HostReportIndex
+{
+    private volatile Entries entries;
+    
+    /**
+     * Creates a new, empty index.
+     */
+    
+    public HostReportIndex()
+    {
+        this.entries = new Entries(new HostReportFile[0]);
+    }
+    
+    /**
+     * Replaces the contents of the index with the reports in the directory specified. Files with names that are not in the report format are skipped.
+     * 
+     * @param directory     The hosts reports directory.
+     */
+    
+    public synchronized void load(String directory)
+    {
+        File[] files = new File(directory).listFiles();
+        HostReportFile[] loadedReports = new HostReportFile[(files!=null)?(files.length):(0)];
+        int count = 0;
+        
+        for(int i=0; i<loadedReports.length; i++)
+        {
+            if(!files[i].isFile())
+            {
+                continue;
+            }
+            
+            try
+            {
+                loadedReports[count] = new HostReportFile(files[i]);
+                count++;
+            }
+            catch(Exception e)
+            {
+                ServerUtils.log("Skipping report with unexpected file name: "+files[i]);
+            }
+        }
+        
+        loadedReports = Arrays.copyOf(loadedReports, count);
+        Arrays.sort(loadedReports, new Comparator<HostReportFile>(){
+            public int compare(HostReportFile a, HostReportFile b)
+            {
+                return Long.compare(a.getTime(), b.getTime());
+            }
+        });
+        
+        entries = new Entries(loadedReports);
+    }
+    
+    /**
+     * Adds a report to the index, replacing the report for the same month if there is one.
+     * 
+     * @param report        The current snapshot of the report file.
+     */
+    
+    public synchronized void put(HostReportFile report)
+    {
+        HostReportFile[] reports = entries.reports;
+        int index = Arrays.binarySearch(entries.times, report.getTime());
+        HostReportFile[] updatedReports;
+        
+        if(index>=0)
+        {
+            updatedReports = reports.clone();
+            updatedReports[index] = report;
+        }
+        else
+        {
+            index = -index-1;
+            updatedReports = new HostReportFile[reports.length+1];
+            System.arraycopy(reports, 0, updatedReports, 0, index);
+            System.arraycopy(reports, index, updatedReports, index+1, reports.length-index);
+            updatedReports[index] = report;
+        }
+        
+        entries = new Entries(updatedReports);
+    }
+    
+    /**
+     * Removes a report from the index.
+     * 
+     * @param reportId      The ID of the report.
+     * @return              true if the report was in the index.
+     */
+    
+    public synchronized boolean remove(String reportId)
+    {
+        HostReportFile[] reports = entries.reports;
+        
+        for(int i=0; i<reports.length; i++)
+        {
+            if(reports[i].getId().equals(reportId))
+            {
+                HostReportFile[] updatedReports = new HostReportFile[reports.length-1];
+                System.arraycopy(reports, 0, updatedReports, 0, i);
+                System.arraycopy(reports, i+1, updatedReports, i, reports.length-i-1);
+                entries = new Entries(updatedReports);
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Gets the reports of a time frame.
+     * 
+     * @param earliest      The start of the time frame (inclusive).
+     * @param latest        The end of the time frame (inclusive).
+     * @return              the reports with a time within the time frame, in order of time.
+     */
+    
+    public List<HostReportFile> getReports(long earliest, long latest)
+    {
+        Entries currentEntries = entries;
+        int start = lowerBound(currentEntries.times, earliest);
+        int end = (latest==Long.MAX_VALUE)?(currentEntries.times.length):(lowerBound(currentEntries.times, latest+1));
+        
+        if(start>=end)
+        {
+            return Collections.emptyList();
+        }
+        
+        return Collections.unmodifiableList(Arrays.asList(currentEntries.reports).subList(start, end));
+    }
+    
+    /**
+     * @return      every report, in order of time.
+     */
+    
+    public List<HostReportFile> getAll()
+    {
+        return Collections.unmodifiableList(Arrays.asList(entries.reports));
+    }
+    
+    private static int lowerBound(long[] times, long time)
+    {
+        // The index of the first time that is not before the time specified
+        
+        int low = 0;
+        int high = times.length;
+        
+        while(low<high)
+        {
+            int mid = (low+high)>>>1;
+            
+            if(times[mid]<time)
+            {
+                low = mid+1;
+            }
+            else
+            {
+                high = mid;
+            }
+        }
+        
+        return low;
+    }
+    
+    private static class Entries
+    {
+        // The reports, in order of time, and their times, which are never changed once created
+        
+        private HostReportFile[] reports;
+        private long[] times;
+        
+        private Entries(HostReportFile[] reports)
+        {
+            this.reports = reports;
+            this.times = new long[reports.length];
+            
+            for(int i=0; i<reports.length; i++)
+            {
+                times[i] = reports[i].getTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package odin.server.stats;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks on an executor so that only one task runs at a time for each key. A task requested for a key that already has a task in flight
+ * is not run: the caller instead shares the future of the task in flight. Callers wait on the future (or not) as they choose, so no thread is held
+ * while another thread runs the task.
+ * 
+ * @param <T>   The type of the results of the tasks.
+ */
+
+public class SingleFlight<T>
+{
+    private ConcurrentHashMap<String, CompletableFuture<T>> inFlight;
+    private Executor executor;
+    
+    /**
+     * @param executor      The executor that tasks are run on.
+     */
+    
+    public SingleFlight(Executor executor)
+    {
+        this.inFlight = new ConcurrentHashMap<String, CompletableFuture<T>>();
+        this.executor = executor;
+    }
+    
+    /**
+     * Runs the task provided, unless a task for the same key is already in flight.
+     * 
+     * @param key       The key of the task.
+     * @param task      The task to run.
+     * @return          the future of the task in flight for the key.
+     */
+    
+    public CompletableFuture<T> run(String key, Callable<T> task)
+    {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        CompletableFuture<T> existingFuture = inFlight.putIfAbsent(key, future);
+        
+        if(existingFuture!=null)
+        {
+            return existingFuture;
+        }
+        
+        try
+        {
+            executor.execute(new Runnable(){
+                public void run()
+                {
+                    T result;
+                    
+                    try
+                    {
+                        result = task.call();
+                    }
+                    catch(Throwable e)
+                    {
+                        inFlight.remove(key, future);
+                        future.completeExceptionally(e);
+                        return;
+                    }
+                    
+                    // Removed before completing, so any caller that sees the result can no longer join this task
+                    
+                    inFlight.remove(key, future);
+                    future.complete(result);
+                }
+            });
+        }
+        catch(RejectedExecutionException e)
+        {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        
+        return future;
+    }
+    
+    /**
+     * @return      the number of tasks in flight.
+     */
+    
+    public int size()
+    {
+        return inFlight.size();
+    }
+}
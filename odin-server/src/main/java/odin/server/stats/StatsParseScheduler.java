@@ -0,0 +1,76 @@
+package odin.server.stats;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the loading and parsing of statistics on a bounded pool of threads, so that several months and several categories can be parsed at once.
+ * The pool size is limited so that a cold rebuild of the full history does not starve the HTTP request threads.
+ */
+
+public class StatsParseScheduler
+{
+    private ExecutorService executorService;
+    
+    /**
+     * Creates a new scheduler.
+     * 
+     * @param parallelism   The maximum number of tasks to run at once.
+     */
+    
+    public StatsParseScheduler(int parallelism)
+    {
+        AtomicInteger threadCount = new AtomicInteger();
+        
+        this.executorService = Executors.newFixedThreadPool(parallelism, new ThreadFactory(){
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "stats-parser-"+threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Queues a task to be run by the pool.
+     * 
+     * @param task      The task to run.
+     * @return          A future holding the result of the task, or the exception it failed with.
+     */
+    
+    public <T> CompletableFuture<T> submit(Callable<T> task)
+    {
+        CompletableFuture<T> future = new CompletableFuture<T>();
+        
+        executorService.execute(new Runnable(){
+            public void run()
+            {
+                try
+                {
+                    future.complete(task.call());
+                }
+                catch(Throwable e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+        
+        return future;
+    }
+    
+    /**
+     * @return          the pool, for running tasks that are waited on with a CompletableFuture.
+     */
+    
+    public Executor getExecutor()
+    {
+        return executorService;
+    }
+}
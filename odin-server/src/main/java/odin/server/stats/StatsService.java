@@ -1,16 +1,41 @@
 package odin.server.stats;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import loki.Attributes;
 import loki.StringPair;
 import loki.server.util.ServerUtils;
+import odin.server.stats.cache.StatsCache;
+import odin.server.stats.parser.AggregatingHostReportStatsParser;
+import odin.server.stats.parser.HostReportScanner;
 import odin.server.stats.parser.HostReportStatsParser;
+import odin.server.stats.rollup.MonthlyStatsSource;
+import odin.server.stats.rollup.StatsRollupService;
+import odin.server.stats.storage.DomainStatsCodec;
+import odin.server.stats.storage.DomainStatsSeriesStore;
+import odin.server.stats.storage.DomainStatsStore;
 import odin.stats.DomainStats;
+import odin.stats.DomainStatsChart;
+import odin.stats.DomainStatsColumns;
 import odin.stats.DomainStatsConstants;
 import odin.stats.DomainStatsSeries;
-import thor.storage.StorableNotFoundException;
 import thor.storage.file.FileStorageService;
 import thor.util.LockService;
 import thor.util.LockedTask;
@@ -21,30 +46,88 @@ import thor.util.LockedTask;
 
 public class StatsService
 {
+    private static final long PENDING_CHART_EXPIRY_MILLIS = 10*60*1000L;
+    
     private LockService lockService;
-    private HashMap<String, FileStorageService<DomainStats>> hostsStatsStorageServices;
+    private StatsCache statsCache;
+    private StatsParseScheduler parseScheduler;
+    private HostReportScanner hostReportScanner;
+    private HashMap<String, DomainStatsStore> hostsStatsStorageServices;
+    private HashMap<String, DomainStatsSeriesStore> seriesStores;
     private HashMap<String, HostReportStatsParser> hostsStatsParsers;
+    private List<String> scannedCategories;
+    private Map<DomainStatsSeries, DomainStatsColumns> columnsBySeries;
+    private StatsRollupService rollupService;
+    private HostReportIndex reportIndex;
+    private SingleFlight<DomainStats> inFlightLoads;
+    private long requestWaitMillis;
+    private ConcurrentHashMap<String, PendingChart> pendingCharts;
+    private long progressivePollMillis;
     
     public StatsService() throws Exception
     {
         lockService = new LockService();
+        reportIndex = new HostReportIndex();
+        reportIndex.load(HostReportFile.HOST_REPORTS_DIRECTORY);
+        columnsBySeries = Collections.synchronizedMap(new WeakHashMap<DomainStatsSeries, DomainStatsColumns>());
+        rollupService = new StatsRollupService(new MonthlyStatsSource(){
+            public DomainStats getDomainStats(String category, HostReportFile report) throws Exception
+            {
+                return StatsService.this.getDomainStats(category, report);
+            }
+        }, lockService);
         hostsStatsParsers = new HashMap<String, HostReportStatsParser>();
-        hostsStatsStorageServices = new HashMap<String, FileStorageService<DomainStats>>();
+        scannedCategories = new ArrayList<String>();
+        hostsStatsStorageServices = new HashMap<String, DomainStatsStore>();
+        seriesStores = new HashMap<String, DomainStatsSeriesStore>();
         
         Attributes<String> parserProperties = ServerUtils.loadFromFile("config/host_stats_parsers.properties");
+        Attributes<String> statsProperties = ServerUtils.loadFromFile("config/stats.properties");
+        
+        statsCache = new StatsCache(
+                Integer.parseInt(statsProperties.get("stats_cache_report_entries", "1024")),
+                Integer.parseInt(statsProperties.get("stats_cache_series_entries", "64")));
+        parseScheduler = new StatsParseScheduler(Integer.parseInt(statsProperties.get("stats_parser_thread_pool", 
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        hostReportScanner = new HostReportScanner(Integer.parseInt(statsProperties.get("stats_report_reader_threads", 
+                String.valueOf(Runtime.getRuntime().availableProcessors()))));
+        inFlightLoads = new SingleFlight<DomainStats>(parseScheduler.getExecutor());
+        requestWaitMillis = Long.parseLong(statsProperties.get("stats_request_wait_millis", "10000"));
+        pendingCharts = new ConcurrentHashMap<String, PendingChart>();
+        progressivePollMillis = Long.parseLong(statsProperties.get("stats_progressive_poll_millis", "2000"));
+        boolean compressStats = Boolean.parseBoolean(statsProperties.get("stats_storage_compression", "true"));
         
         for(StringPair category: DomainStatsConstants.STATS_VIEW_CATEGORIES)
         {
-            hostsStatsParsers.put(category.getKey(), (HostReportStatsParser)Class.forName(parserProperties.get(category.getKey())).getDeclaredConstructor().newInstance());
-            hostsStatsParsers.get(category.getKey()).initialise();
-            hostsStatsStorageServices.put(category.getKey(), new FileStorageService<DomainStats>(
-                    "storage/stats/hosts/"+category.getKey()+"/",
-                    "storage/_temp/stats/hosts/"+category.getKey()+"/"));
+            HostReportStatsParser parser = (HostReportStatsParser)Class.forName(parserProperties.get(category.getKey())).getDeclaredConstructor().newInstance();
+            
+            if(parser instanceof AggregatingHostReportStatsParser)
+            {
+                ((AggregatingHostReportStatsParser)parser).setHostReportScanner(hostReportScanner);
+                scannedCategories.add(category.getKey());
+            }
+            
+            parser.initialise();
+            hostsStatsParsers.put(category.getKey(), parser);
+            hostsStatsStorageServices.put(category.getKey(), new DomainStatsStore(
+                    "storage/stats/hosts_encoded/"+category.getKey()+"/",
+                    "storage/_temp/stats/hosts_encoded/"+category.getKey()+"/", 
+                    compressStats, 
+                    new FileStorageService<DomainStats>(
+                            "storage/stats/hosts/"+category.getKey()+"/",
+                            "storage/_temp/stats/hosts/"+category.getKey()+"/")));
+            seriesStores.put(category.getKey(), new DomainStatsSeriesStore(
+                    new File("storage/stats/series/"+category.getKey()+".series"), 
+                    new DomainStatsCodec(compressStats)));
         }
+        
+        // Always lock in the same order, so concurrent scans of the same report cannot deadlock
+        
+        Collections.sort(scannedCategories);
     }
     
     /**
-     * Retrieves a series of statistics for the category provided and over the time frame specified. 
+     * Retrieves a monthly series of statistics for the category provided and over the time frame specified. 
      * 
      * @param category   The category of statistics to retrieve. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
      * @param earliest   The start of the time period from which to retrieve statistics.
@@ -53,48 +136,151 @@ public class StatsService
      */
     
     public DomainStatsSeries getDomainStatsSeries(String category, long earliest, long latest) throws Exception
+    {
+        return getDomainStatsSeries(category, DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH, earliest, latest);
+    }
+    
+    /**
+     * Retrieves a series of statistics for the category provided and over the time frame specified, at the resolution specified. 
+     * Series and statistics that were previously loaded are served from memory, for as long as the report files they were generated from are unchanged.
+     * Months that are not in memory are read together from the category's series file, rather than from a file per month.
+     * Quarterly, yearly and all-time series are served from stored rollups, rather than summed from every month.
+     * Concurrent requests for the same month or period share a single load, run on the parser pool. If the statistics are not all loaded within 
+     * the configured wait, the series holds those that are, and the number that are still being parsed (see {@link DomainStatsSeries#getPendingCount()}).
+     * 
+     * @param category      The category of statistics to retrieve. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param resolution    The resolution of the series. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest      The start of the time period from which to retrieve statistics.
+     * @param latest        The end of the time period from which to retrieve statistics.
+     * @return              A series of statistics for the category provided and over the time frame specified, keyed by the start of each period.
+     */
+    
+    public DomainStatsSeries getDomainStatsSeries(String category, String resolution, long earliest, long latest) throws Exception
+    {
+        return getDomainStatsSeries(category, resolution, earliest, latest, requestWaitMillis, null);
+    }
+    
+    private DomainStatsSeries getDomainStatsSeries(String category, String resolution, long earliest, long latest, long waitMillis, 
+            List<CompletableFuture<DomainStats>> pendingFutures) throws Exception
     {
         try
         {
-            FileStorageService<DomainStats> storageService = hostsStatsStorageServices.get(category);
-            SimpleDateFormat reportFilenameFormat = new SimpleDateFormat("yyyy_MM");
-            DomainStatsSeries series = new DomainStatsSeries();
+            List<HostReportFile> reports = reportIndex.getReports(earliest, latest);
+            DomainStatsSeries series = statsCache.getSeries(category, resolution, reports);
+            
+            if(series!=null)
+            {
+                return series;
+            }
+            
+            // Load (or parse) the months or periods in parallel, sharing any load of the same month or period already in flight
             
-            for(File file: new File("source_data/harvest_host_reports/").listFiles())
+            List<Long> times = new ArrayList<Long>();
+            List<CompletableFuture<DomainStats>> futures = new ArrayList<CompletableFuture<DomainStats>>();
+            
+            if(resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH))
             {
-                String id = file.getName().substring(0, file.getName().indexOf("."));
-                long time = reportFilenameFormat.parse(id).getTime();
+                Map<String, DomainStats> storedStatsMap = loadSeriesStats(category, reports);
                 
-                if(time>=earliest && time<=latest)
+                for(HostReportFile report: reports)
                 {
-                    DomainStats stats = lockService.runLockedTask(category+"__"+id, new LockedTask<DomainStats>(){
-                        public DomainStats execute() throws Exception
-                        {
-                            try
-                            {
-                                return storageService.load(id);
-                            }
-                            catch(StorableNotFoundException e)
+                    DomainStats storedStats = storedStatsMap.get(report.getId());
+                    DomainStats cachedStats = statsCache.getStats(category, report);
+                    times.add(report.getTime());
+                    
+                    if(storedStats!=null)
+                    {
+                        statsCache.putStats(category, report, storedStats);
+                        futures.add(CompletableFuture.completedFuture(storedStats));
+                    }
+                    else if(cachedStats!=null)
+                    {
+                        futures.add(CompletableFuture.completedFuture(cachedStats));
+                    }
+                    else
+                    {
+                        futures.add(inFlightLoads.run(category+"__"+report.getFingerprint(), new Callable<DomainStats>(){
+                            public DomainStats call() throws Exception
                             {
-                                try
-                                {
-                                    DomainStats stats = hostsStatsParsers.get(category).parseStats(file.getAbsolutePath());
-                                    storageService.store(id, stats);
-                                    return stats; 
-                                }
-                                catch(Exception x)
-                                {
-                                    ServerUtils.log(x);
-                                    throw x;
-                                }
+                                return getDomainStats(category, report);
                             }
+                        }));
+                    }
+                }
+            }
+            else if(!reports.isEmpty())
+            {
+                // The periods at the edges of the time frame may only be partly within it, so every report of those periods is needed to tell
+                
+                long periodsStart = resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL)?
+                        (Long.MIN_VALUE):(StatsRollupService.getPeriodStart(resolution, reports.get(0).getTime()));
+                long periodsEnd = StatsRollupService.getPeriodEnd(resolution, reports.get(reports.size()-1).getTime());
+                LinkedHashMap<String, List<HostReportFile>> allPeriods = StatsRollupService.groupByPeriod(resolution, reportIndex.getReports(periodsStart, periodsEnd));
+                
+                for(Map.Entry<String, List<HostReportFile>> period: StatsRollupService.groupByPeriod(resolution, reports).entrySet())
+                {
+                    List<HostReportFile> periodReports = period.getValue();
+                    times.add(StatsRollupService.getPeriodStart(resolution, periodReports.get(0).getTime()));
+                    futures.add(inFlightLoads.run(category+"__"+resolution+"__"+period.getKey()+"__"+periodReports.get(0).getFingerprint()+"__"+
+                            periodReports.get(periodReports.size()-1).getFingerprint()+"__"+periodReports.size(), new Callable<DomainStats>(){
+                        public DomainStats call() throws Exception
+                        {
+                            return rollupService.getPeriodStats(category, resolution, period.getKey(), periodReports, allPeriods.get(period.getKey()));
                         }
-                    });
+                    }));
+                }
+            }
+            
+            // Wait a limited time, so a long parse does not hold the request thread, and return whatever has been loaded by then
+            
+            try
+            {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()])).get(waitMillis, TimeUnit.MILLISECONDS);
+            }
+            catch(TimeoutException e)
+            {
+                // Still parsing
+            }
+            catch(ExecutionException e)
+            {
+                // Reported below
+            }
+            
+            series = new DomainStatsSeries();
+            int pendingCount = 0;
+            
+            for(int i=0; i<times.size(); i++)
+            {
+                CompletableFuture<DomainStats> future = futures.get(i);
+                
+                if(!future.isDone())
+                {
+                    pendingCount++;
                     
-                    series.getStatsMap().put(time, stats);
+                    if(pendingFutures!=null)
+                    {
+                        pendingFutures.add(future);
+                    }
+                }
+                else if(future.isCompletedExceptionally())
+                {
+                    throw getCause(future);
+                }
+                else
+                {
+                    series.getStatsMap().put(times.get(i), future.join());
                 }
             }
             
+            series.setPendingCount(pendingCount);
+            
+            // A partial series is not cached, so the next request picks up the parsed months
+            
+            if(pendingCount==0)
+            {
+                statsCache.putSeries(category, resolution, reports, series);
+            }
+            
             return series;
         }
         catch(Exception e)
@@ -103,4 +289,494 @@ public class StatsService
             throw e;
         }
     }
-}
\ No newline at end of file
+    
+    /**
+     * Retrieves a series of statistics for the category provided and over the time frame specified, in columns. 
+     * 
+     * @param category      The category of statistics to retrieve. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param resolution    The resolution of the series. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param earliest      The start of the time period from which to retrieve statistics.
+     * @param latest        The end of the time period from which to retrieve statistics.
+     * @return              The columns of statistics for the category provided and over the time frame specified.
+     */
+    
+    public DomainStatsColumns getDomainStatsColumns(String category, String resolution, long earliest, long latest) throws Exception
+    {
+        return getDomainStatsColumns(getDomainStatsSeries(category, resolution, earliest, latest));
+    }
+    
+    private DomainStatsColumns getDomainStatsColumns(DomainStatsSeries series)
+    {
+        // The columns of a series are kept for as long as the series is cached
+        
+        DomainStatsColumns columns = columnsBySeries.get(series);
+        
+        if(columns==null)
+        {
+            columns = new DomainStatsColumns(series);
+            columnsBySeries.put(series, columns);
+        }
+        
+        return columns;
+    }
+    
+    /**
+     * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified.
+     * 
+     * @param category              The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param countType             The count type to chart.
+     * @param categoryStructure     How to group categories.
+     * @param hiddenCategories      The categories whose values are not needed, as they are hidden.
+     * @param resolution            The resolution of the series to chart.
+     * @param earliest              The start of the time period from which to chart statistics.
+     * @param latest                The end of the time period from which to chart statistics.
+     * @return                      The datasets of the chart.
+     */
+    
+    public DomainStatsChart getDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, String resolution, 
+            long earliest, long latest) throws Exception
+    {
+        return DomainStatsChartBuilder.build(getDomainStatsColumns(category, resolution, earliest, latest), countType, categoryStructure, 
+                new HashSet<String>(Arrays.asList(hiddenCategories)));
+    }
+    
+    /**
+     * Builds the datasets of a chart of a series of statistics for the category provided and over the time frame specified, without waiting for 
+     * every time to be parsed. The chart holds the times that are loaded within a short wait, and if any are still being parsed, a token 
+     * (see {@link DomainStatsChart#getPendingToken()}) to request the chart again with. A request with the token waits a short time for at least 
+     * one more of those times to be parsed, so the chart can be filled in as the times are parsed without the server being polled in a tight loop.
+     * 
+     * @param category              The category of statistics to chart. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @param countType             The count type to chart.
+     * @param categoryStructure     How to group categories.
+     * @param hiddenCategories      The categories whose values are not needed, as they are hidden.
+     * @param resolution            The resolution of the series to chart.
+     * @param earliest              The start of the time period from which to chart statistics.
+     * @param latest                The end of the time period from which to chart statistics.
+     * @param pendingToken          The token of the previous chart of the same request, or null to request the chart for the first time.
+     * @return                      The datasets of the chart.
+     */
+    
+    public DomainStatsChart getProgressiveDomainStatsChart(String category, String countType, String categoryStructure, String[] hiddenCategories, 
+            String resolution, long earliest, long latest, String pendingToken) throws Exception
+    {
+        PendingChart pendingChart = (pendingToken!=null)?(pendingCharts.remove(pendingToken)):(null);
+        long waitMillis = progressivePollMillis;
+        
+        if(pendingChart!=null)
+        {
+            // Wait for the next time to be parsed, then serve every time parsed by then
+            
+            try
+            {
+                pendingChart.future.get(progressivePollMillis, TimeUnit.MILLISECONDS);
+            }
+            catch(TimeoutException e)
+            {
+                // Still parsing
+            }
+            catch(ExecutionException e)
+            {
+                // Reported below
+            }
+            
+            waitMillis = 0;
+        }
+        
+        List<CompletableFuture<DomainStats>> pendingFutures = new ArrayList<CompletableFuture<DomainStats>>();
+        DomainStatsSeries series = getDomainStatsSeries(category, resolution, earliest, latest, waitMillis, pendingFutures);
+        DomainStatsChart chart = DomainStatsChartBuilder.build(getDomainStatsColumns(series), countType, categoryStructure, 
+                new HashSet<String>(Arrays.asList(hiddenCategories)));
+        
+        if(!pendingFutures.isEmpty())
+        {
+            chart.setPendingToken(addPendingChart(pendingFutures));
+        }
+        
+        return chart;
+    }
+    
+    /**
+     * Queues the parsing and storing of the statistics for the categories and report specified, such as when a report file has been added or replaced.
+     * The categories that are generated purely from the hosts report are parsed together from a single read of the report.
+     * Parses are run in parallel with other months and categories, up to the configured parallelism limit.
+     * Any requests for the same statistics that arrive while the parse is in progress wait for it to complete rather than starting a second parse.
+     * The report is added to the index of available reports straight away.
+     * 
+     * @param report     The report file to parse.
+     * @param categories The categories of statistics to parse.
+     * @param replace    Whether to replace any previously stored statistics for the report. If false, a category is only parsed if no statistics are stored for it.
+     * @return           a future that completes once every category is stored, or fails with the first failure.
+     */
+    
+    public CompletableFuture<Void> ingestReport(HostReportFile report, List<String> categories, boolean replace)
+    {
+        reportIndex.put(report);
+        List<String> categoriesToScan = new ArrayList<String>();
+        List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>();
+        
+        for(String category: categories)
+        {
+            if(hostsStatsParsers.get(category) instanceof AggregatingHostReportStatsParser)
+            {
+                categoriesToScan.add(category);
+            }
+            else
+            {
+                futures.add(parseScheduler.submit(new Callable<DomainStats>(){
+                    public DomainStats call() throws Exception
+                    {
+                        DomainStats stats = loadOrParseStats(category, report, replace);
+                        statsCache.invalidateReport(report.getId());
+                        statsCache.putStats(category, report, stats);
+                        return stats;
+                    }
+                }));
+            }
+        }
+        
+        if(!categoriesToScan.isEmpty())
+        {
+            // Always lock in the same order, so concurrent ingests of the same report cannot deadlock
+            
+            Collections.sort(categoriesToScan);
+            
+            futures.add(parseScheduler.submit(new Callable<Void>(){
+                public Void call() throws Exception
+                {
+                    runLockedTask(report, categoriesToScan, 0, new LockedTask<Void>(){
+                        public Void execute() throws Exception
+                        {
+                            scanReport(report, categoriesToScan, replace);
+                            return null;
+                        }
+                    });
+                    
+                    return null;
+                }
+            }));
+        }
+        
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[futures.size()]));
+    }
+    
+    /**
+     * @return      every report in the index of available reports, in order of time.
+     */
+    
+    public List<HostReportFile> getReports()
+    {
+        return reportIndex.getAll();
+    }
+    
+    /**
+     * Removes a report from the index of available reports, such as when its report file has been deleted, and drops any statistics cached from it.
+     * Stored statistics are kept, in case the report file is restored.
+     * 
+     * @param reportId   The ID of the report.
+     * @return           true if the report was in the index.
+     */
+    
+    public boolean removeReport(String reportId)
+    {
+        if(reportIndex.remove(reportId))
+        {
+            statsCache.invalidateReport(reportId);
+            return true;
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Loads the stored statistics of every report of a category into memory, such as to warm up after a restart. Nothing is parsed: the statistics 
+     * are read from the category's series file, or from the file of each month that is not in it. Months with no statistics stored from their 
+     * current report file are left to be parsed when the report is ingested, or when they are first requested.
+     * 
+     * @param category   The category of statistics to load. The valid options are specified in {@link odin.stats.DomainStatsConstants}.
+     * @return           the number of reports of the category with no statistics stored from their current report file.
+     */
+    
+    public int loadStoredStats(String category)
+    {
+        List<HostReportFile> reports = reportIndex.getAll();
+        Map<String, DomainStats> storedStatsMap = loadSeriesStats(category, reports);
+        int missingCount = 0;
+        
+        for(HostReportFile report: reports)
+        {
+            DomainStats storedStats = storedStatsMap.get(report.getId());
+            
+            if(storedStats==null && statsCache.getStats(category, report)==null)
+            {
+                try
+                {
+                    storedStats = hostsStatsStorageServices.get(category).load(report.getId(), report.getSourceFingerprint(category));
+                    
+                    if(storedStats!=null)
+                    {
+                        storeSeriesStats(category, report, storedStats, false);
+                    }
+                }
+                catch(Exception e)
+                {
+                    ServerUtils.log("Failed to load the stored statistics of "+category+" for "+report.getId()+": "+e);
+                }
+                if(storedStats==null)
+                {
+                    missingCount++;
+                }
+            }
+            if(storedStats!=null)
+            {
+                statsCache.putStats(category, report, storedStats);
+            }
+        }
+        
+        return missingCount;
+    }
+    
+    private String addPendingChart(List<CompletableFuture<DomainStats>> pendingFutures)
+    {
+        // Charts that are not requested again, such as when the statistics screen is left, are expired
+        
+        long time = System.currentTimeMillis();
+        Iterator<PendingChart> iterator = pendingCharts.values().iterator();
+        
+        while(iterator.hasNext())
+        {
+            if(iterator.next().time<time-PENDING_CHART_EXPIRY_MILLIS)
+            {
+                iterator.remove();
+            }
+        }
+        
+        String token = UUID.randomUUID().toString();
+        pendingCharts.put(token, new PendingChart(CompletableFuture.anyOf(pendingFutures.toArray(new CompletableFuture<?>[pendingFutures.size()])), time));
+        return token;
+    }
+    
+    private Exception getCause(CompletableFuture<DomainStats> future)
+    {
+        try
+        {
+            future.join();
+            return null;
+        }
+        catch(CompletionException e)
+        {
+            return (e.getCause() instanceof Exception)?((Exception)e.getCause()):e;
+        }
+    }
+    
+    private Map<String, DomainStats> loadSeriesStats(String category, List<HostReportFile> reports)
+    {
+        // Months that are not cached are read together from the category's series file
+        
+        List<HostReportFile> uncachedReports = new ArrayList<HostReportFile>();
+        
+        for(HostReportFile report: reports)
+        {
+            if(statsCache.getStats(category, report)==null)
+            {
+                uncachedReports.add(report);
+            }
+        }
+        
+        try
+        {
+            return uncachedReports.isEmpty()?(new HashMap<String, DomainStats>()):(seriesStores.get(category).load(uncachedReports));
+        }
+        catch(Exception e)
+        {
+            ServerUtils.log("Failed to read the statistics series of "+category+": "+e);
+            return new HashMap<String, DomainStats>();
+        }
+    }
+    
+    private void storeSeriesStats(String category, HostReportFile report, DomainStats stats, boolean replace)
+    {
+        // The series file is only a faster copy of the monthly statistics, so failing to update it is not an error. Statistics loaded rather than 
+        // parsed are only added if the series file does not hold them already, so loading every month (such as at start up) does not write the file again
+        
+        try
+        {
+            DomainStatsSeriesStore seriesStore = seriesStores.get(category);
+            
+            if(replace || !seriesStore.contains(report))
+            {
+                seriesStore.store(report, stats);
+            }
+        }
+        catch(Exception e)
+        {
+            ServerUtils.log("Failed to update the statistics series of "+category+" with "+report.getId()+": "+e);
+        }
+    }
+    
+    private DomainStats getDomainStats(String category, HostReportFile report) throws Exception
+    {
+        DomainStats cachedStats = statsCache.getStats(category, report);
+        
+        if(cachedStats!=null)
+        {
+            return cachedStats;
+        }
+        
+        if(scannedCategories.contains(category))
+        {
+            // Every category generated purely from the hosts report is scanned at once, rather than reading the report again for each category
+            
+            return runLockedTask(report, scannedCategories, 0, new LockedTask<Map<String, DomainStats>>(){
+                public Map<String, DomainStats> execute() throws Exception
+                {
+                    return scanReport(report, scannedCategories, false);
+                }
+            }).get(category);
+        }
+        
+        DomainStats stats = loadOrParseStats(category, report, false);
+        statsCache.putStats(category, report, stats);
+        return stats;
+    }
+    
+    private DomainStats loadOrParseStats(String category, HostReportFile report, boolean replace) throws Exception
+    {
+        DomainStatsStore storageService = hostsStatsStorageServices.get(category);
+        String id = report.getId();
+        
+        return lockService.runLockedTask(category+"__"+id, new LockedTask<DomainStats>(){
+            public DomainStats execute() throws Exception
+            {
+                if(!replace)
+                {
+                    // Statistics of a report file replaced since they were stored (such as while the server was down) are parsed again
+                    
+                    DomainStats storedStats = storageService.load(id, report.getSourceFingerprint(category));
+                    
+                    if(storedStats!=null)
+                    {
+                        storeSeriesStats(category, report, storedStats, false);
+                        return storedStats;
+                    }
+                }
+                
+                try
+                {
+                    DomainStats stats = hostsStatsParsers.get(category).parseStats(report.getFile().getAbsolutePath());
+                    storeStats(category, report, stats);
+                    storeSeriesStats(category, report, stats, true);
+                    return stats; 
+                }
+                catch(Exception x)
+                {
+                    ServerUtils.log(x);
+                    throw x;
+                }
+            }
+        });
+    }
+    
+    private Map<String, DomainStats> scanReport(HostReportFile report, List<String> categories, boolean replace) throws Exception
+    {
+        // Only parse the categories that have not yet been parsed
+        
+        HashMap<String, DomainStats> statsMap = new HashMap<String, DomainStats>();
+        List<String> parsedCategories = new ArrayList<String>();
+        List<AggregatingHostReportStatsParser> parsers = new ArrayList<AggregatingHostReportStatsParser>();
+        
+        for(String category: categories)
+        {
+            if(!replace)
+            {
+                DomainStats storedStats = hostsStatsStorageServices.get(category).load(report.getId(), report.getSourceFingerprint(category));
+                
+                if(storedStats!=null)
+                {
+                    storeSeriesStats(category, report, storedStats, false);
+                    statsCache.putStats(category, report, storedStats);
+                    statsMap.put(category, storedStats);
+                    continue;
+                }
+            }
+            
+            parsedCategories.add(category);
+            parsers.add((AggregatingHostReportStatsParser)hostsStatsParsers.get(category));
+        }
+        
+        if(parsers.isEmpty())
+        {
+            return statsMap;
+        }
+        
+        try
+        {
+            List<DomainStats> statsList = hostReportScanner.scan(report.getFile().getAbsolutePath(), parsers);
+            statsCache.invalidateReport(report.getId());
+            
+            for(int i=0; i<parsedCategories.size(); i++)
+            {
+                storeStats(parsedCategories.get(i), report, statsList.get(i));
+                storeSeriesStats(parsedCategories.get(i), report, statsList.get(i), true);
+                statsCache.putStats(parsedCategories.get(i), report, statsList.get(i));
+                statsMap.put(parsedCategories.get(i), statsList.get(i));
+            }
+            
+            return statsMap;
+        }
+        catch(Exception x)
+        {
+            ServerUtils.log(x);
+            throw x;
+        }
+    }
+    
+    private void storeStats(String category, HostReportFile report, DomainStats stats) throws Exception
+    {
+        DomainStatsStore storageService = hostsStatsStorageServices.get(category);
+        DomainStatsStore.StoredStats previousStats = storageService.loadStored(report.getId());
+        storageService.store(report.getId(), report.getSourceFingerprint(category), stats);
+        
+        // The month is added to the stored rollups of its periods, rather than summing them again
+        
+        try
+        {
+            rollupService.addMonth(category, report, stats, 
+                    (previousStats==null)?(null):(previousStats.getStats()), 
+                    (previousStats==null)?(null):(previousStats.getFingerprint()));
+        }
+        catch(Exception e)
+        {
+            ServerUtils.log("Failed to update rollups of "+category+" with "+report.getId()+": "+e);
+        }
+    }
+    
+    private <T> T runLockedTask(HostReportFile report, List<String> categories, int index, LockedTask<T> task) throws Exception
+    {
+        // Holds the locks of every category for the report while running the task
+        
+        if(index==categories.size())
+        {
+            return task.execute();
+        }
+        
+        return lockService.runLockedTask(categories.get(index)+"__"+report.getId(), new LockedTask<T>(){
+            public T execute() throws Exception
+            {
+                return runLockedTask(report, categories, index+1, task);
+            }
+        });
+    }
+    
+    private static class PendingChart
+    {
+        private CompletableFuture<Object> future;
+        private long time;
+        
+        private PendingChart(CompletableFuture<Object> future, long time)
+        {
+            this.future = future;
+            this.time = time;
+        }
+    }
+}
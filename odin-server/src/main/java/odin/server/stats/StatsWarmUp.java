@@ -0,0 +1,104 @@
+package odin.server.stats;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import loki.StringPair;
+import loki.server.util.ServerUtils;
+import odin.request.ServerStatus;
+import odin.stats.DomainStatsConstants;
+
+/**
+ * Loads the stored statistics of every category into the stats service's cache on a background thread after a restart,
+ * so the first requests after a deploy are served as fast as later ones, without delaying the startup of the server.
+ * 
+ * Only statistics that are already stored are loaded: months that have not been parsed are left to the ingest of their reports, so the warm-up 
+ * never starts a parse, and the server is reported ready as soon as the stored statistics are in memory. The default chart of each series whose 
+ * months are all stored is also built, so that the code that serves charts is compiled before the first request.
+ */
+
+public class StatsWarmUp
+{
+    private StatsService statsService;
+    private List<String> resolutions;
+    private AtomicInteger warmedCount;
+    private volatile boolean complete;
+    
+    /**
+     * @param statsService      The stats service to warm up.
+     * @param resolutions       The resolutions of the series to load, as specified in {@link odin.stats.DomainStatsConstants}.
+     */
+    
+    public StatsWarmUp(StatsService statsService, List<String> resolutions)
+    {
+        this.statsService = statsService;
+        this.resolutions = resolutions;
+        this.warmedCount = new AtomicInteger();
+    }
+    
+    /**
+     * Starts loading the series on a background thread.
+     */
+    
+    public void start()
+    {
+        Thread thread = new Thread(new Runnable(){
+            public void run()
+            {
+                warmUp();
+            }
+        }, "stats-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * @return  the readiness of the server, and the progress of the warm-up.
+     */
+    
+    public ServerStatus getStatus()
+    {
+        return new ServerStatus(complete?ServerStatus.STATE__READY:ServerStatus.STATE__WARMING_UP,
+                warmedCount.get(), resolutions.size()*DomainStatsConstants.STATS_VIEW_CATEGORIES.length);
+    }
+    
+    private void warmUp()
+    {
+        long start = System.currentTimeMillis();
+        ServerUtils.log("Warming up stats...");
+        
+        for(StringPair category: DomainStatsConstants.STATS_VIEW_CATEGORIES)
+        {
+            int missingCount = statsService.loadStoredStats(category.getKey());
+            
+            if(missingCount>0)
+            {
+                ServerUtils.log(missingCount+" months of "+category.getKey()+" stats are not parsed yet, leaving them to be parsed on ingest");
+            }
+            
+            for(String resolution: resolutions)
+            {
+                // Every month is in memory, so the series is built without parsing. Uses the same time frame as the statistics screen, 
+                // so the series is cached under the same reports
+                
+                if(missingCount==0)
+                {
+                    try
+                    {
+                        statsService.getDomainStatsChart(category.getKey(), DomainStatsConstants.STATS_VIEWS_BY_CATEGORY.get(category.getKey()).get(0),
+                                DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20, new String[0], resolution, 0L, System.currentTimeMillis());
+                    }
+                    catch(Exception e)
+                    {
+                        ServerUtils.log("Failed to warm up "+category.getKey()+" "+resolution+" stats: "+e);
+                    }
+                }
+                
+                warmedCount.incrementAndGet();
+            }
+        }
+        
+        complete = true;
+        ServerUtils.log("Stats warmed up in "+(System.currentTimeMillis()-start)+"ms");
+    }
+}
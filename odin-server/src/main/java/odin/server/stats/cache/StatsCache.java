@@ -0,0 +1,185 @@
+package odin.server.stats.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsSeries;
+
+/**
+ * A bounded, least-recently-used, in-memory cache of decoded statistics.
+ * 
+ * Holds the DomainStats of individual (category, report) pairs, and the DomainStatsSeries assembled from them.
+ * Entries are keyed by the report ID, but are only returned if the report file snapshot they were created from still matches 
+ * the current one, so entries for replaced report files are dropped when they are next requested.
+ */
+
+public class StatsCache
+{
+    private LinkedHashMap<String, CacheEntry<DomainStats>> statsEntries;
+    private LinkedHashMap<String, CacheEntry<DomainStatsSeries>> seriesEntries;
+    
+    /**
+     * Creates a new cache with the specified limits.
+     * 
+     * @param maxStatsEntries   The maximum number of (category, report) statistics to hold.
+     * @param maxSeriesEntries  The maximum number of assembled series to hold.
+     */
+    
+    public StatsCache(int maxStatsEntries, int maxSeriesEntries)
+    {
+        this.statsEntries = createLRUMap(maxStatsEntries);
+        this.seriesEntries = createLRUMap(maxSeriesEntries);
+    }
+    
+    /**
+     * Retrieves the cached statistics for the category and report specified.
+     * 
+     * @param category      The category of statistics.
+     * @param report        The current snapshot of the report file.
+     * @return              The cached statistics, or null if they are not cached or the report file has changed since they were cached.
+     */
+    
+    public synchronized DomainStats getStats(String category, HostReportFile report)
+    {
+        String key = category+"__"+report.getId();
+        CacheEntry<DomainStats> entry = statsEntries.get(key);
+        
+        if(entry==null)
+        {
+            return null;
+        }
+        if(!entry.reports.get(0).equals(report))
+        {
+            statsEntries.remove(key);
+            return null;
+        }
+        
+        return entry.value;
+    }
+    
+    /**
+     * Caches the statistics for the category and report specified.
+     * 
+     * @param category      The category of statistics.
+     * @param report        The snapshot of the report file the statistics were generated from.
+     * @param stats         The statistics.
+     */
+    
+    public synchronized void putStats(String category, HostReportFile report, DomainStats stats)
+    {
+        List<HostReportFile> reports = new ArrayList<HostReportFile>(1);
+        reports.add(report);
+        statsEntries.put(category+"__"+report.getId(), new CacheEntry<DomainStats>(reports, stats));
+    }
+    
+    /**
+     * Retrieves the cached series assembled from the category and reports specified.
+     * 
+     * @param category      The category of statistics.
+     * @param resolution    The resolution of the series.
+     * @param reports       The current snapshots of the report files that make up the series.
+     * @return              The cached series, or null if it is not cached or any of the report files have changed since it was cached.
+     */
+    
+    public synchronized DomainStatsSeries getSeries(String category, String resolution, List<HostReportFile> reports)
+    {
+        String key = getSeriesKey(category, resolution, reports);
+        CacheEntry<DomainStatsSeries> entry = seriesEntries.get(key);
+        
+        if(entry==null)
+        {
+            return null;
+        }
+        if(!entry.reports.equals(reports))
+        {
+            seriesEntries.remove(key);
+            return null;
+        }
+        
+        return entry.value;
+    }
+    
+    /**
+     * Caches the series assembled from the category and reports specified.
+     * 
+     * @param category      The category of statistics.
+     * @param resolution    The resolution of the series.
+     * @param reports       The snapshots of the report files that make up the series.
+     * @param series        The series.
+     */
+    
+    public synchronized void putSeries(String category, String resolution, List<HostReportFile> reports, DomainStatsSeries series)
+    {
+        seriesEntries.put(getSeriesKey(category, resolution, reports), new CacheEntry<DomainStatsSeries>(new ArrayList<HostReportFile>(reports), series));
+    }
+    
+    /**
+     * Drops every entry created from the specified report, in any category.
+     * 
+     * @param reportId      The ID of the report.
+     */
+    
+    public synchronized void invalidateReport(String reportId)
+    {
+        invalidateReport(statsEntries, reportId);
+        invalidateReport(seriesEntries, reportId);
+    }
+    
+    private <T> void invalidateReport(LinkedHashMap<String, CacheEntry<T>> entries, String reportId)
+    {
+        Iterator<CacheEntry<T>> iterator = entries.values().iterator();
+        
+        while(iterator.hasNext())
+        {
+            for(HostReportFile report: iterator.next().reports)
+            {
+                if(report.getId().equals(reportId))
+                {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+    
+    private String getSeriesKey(String category, String resolution, List<HostReportFile> reports)
+    {
+        StringBuilder key = new StringBuilder(category).append("__").append(resolution);
+        
+        for(HostReportFile report: reports)
+        {
+            key.append("__").append(report.getId());
+        }
+        
+        return key.toString();
+    }
+    
+    private static <T> LinkedHashMap<String, CacheEntry<T>> createLRUMap(int maxEntries)
+    {
+        return new LinkedHashMap<String, CacheEntry<T>>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+            
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<T>> eldest)
+            {
+                return size()>maxEntries;
+            }
+        };
+    }
+    
+    private static class CacheEntry<T>
+    {
+        private List<HostReportFile> reports;
+        private T value;
+        
+        public CacheEntry(List<HostReportFile> reports, T value)
+        {
+            this.reports = reports;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package odin.server.stats.ingest;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import loki.StringPair;
+import loki.server.util.ServerUtils;
+import odin.server.stats.HostReportFile;
+import odin.server.stats.StatsService;
+import odin.stats.DomainStatsConstants;
+
+/**
+ * Watches the harvest hosts report and mime types report directories, and parses and stores the statistics of new or replaced reports in the background,
+ * so that the first request for a new harvest does not have to wait for it to be parsed.
+ * 
+ * Report files are usually large and copied into place slowly, so a report is only ingested once its file has not changed for the configured settle time.
+ * On startup, any existing reports that have no stored statistics, or whose statistics were generated from a report file since replaced, are also ingested. Removed reports are dropped from the stats service's index of reports.
+ * If events are lost (such as during a burst of new reports), every report is checked again in the same way once the directories have settled.
+ */
+
+public class HostReportWatcher
+{
+    private StatsService statsService;
+    private long settleMillis;
+    private WatchService watchService;
+    private HashMap<String, PendingReport> pendingReports;
+    private Thread thread;
+    private volatile boolean running;
+    
+    /**
+     * Creates a new watcher.
+     * 
+     * @param statsService      The stats service used to parse and store the statistics.
+     * @param settleMillis      The time a report file must remain unchanged before it is ingested.
+     */
+    
+    public HostReportWatcher(StatsService statsService, long settleMillis)
+    {
+        this.statsService = statsService;
+        this.settleMillis = settleMillis;
+        this.pendingReports = new HashMap<String, PendingReport>();
+    }
+    
+    /**
+     * Starts watching the report directories on a background thread, and queues any existing reports that have not yet been parsed.
+     */
+    
+    public void start() throws Exception
+    {
+        watchService = FileSystems.getDefault().newWatchService();
+        
+        for(String directory: new String[]{HostReportFile.HOST_REPORTS_DIRECTORY, HostReportFile.MIME_REPORTS_DIRECTORY})
+        {
+            File file = new File(directory);
+            
+            if(file.isDirectory())
+            {
+                file.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, 
+                        StandardWatchEventKinds.ENTRY_DELETE);
+            }
+            else
+            {
+                ServerUtils.log("Report directory not found, not watching: "+directory);
+            }
+        }
+        
+        File[] files = new File(HostReportFile.HOST_REPORTS_DIRECTORY).listFiles();
+        
+        if(files!=null)
+        {
+            for(File file: files)
+            {
+                queueIngest(file, false, false);
+            }
+        }
+        
+        running = true;
+        thread = new Thread(new Runnable(){
+            public void run()
+            {
+                watch();
+            }
+        }, "host-report-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+    
+    /**
+     * Stops watching the report directories. Any ingest currently in progress is allowed to complete.
+     */
+    
+    public void stop() throws Exception
+    {
+        running = false;
+        watchService.close();
+    }
+    
+    private void watch()
+    {
+        while(running)
+        {
+            try
+            {
+                WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                
+                if(key!=null)
+                {
+                    Path directory = (Path)key.watchable();
+                    
+                    for(WatchEvent<?> event: key.pollEvents())
+                    {
+                        if(event.kind()==StandardWatchEventKinds.OVERFLOW)
+                        {
+                            rescan();
+                        }
+                        else
+                        {
+                            onEvent(directory.resolve((Path)event.context()).toFile());
+                        }
+                    }
+                    
+                    key.reset();
+                }
+                
+                // Ingest any reports that have settled
+                
+                Iterator<PendingReport> iterator = pendingReports.values().iterator();
+                
+                while(iterator.hasNext())
+                {
+                    PendingReport pendingReport = iterator.next();
+                    
+                    if(System.currentTimeMillis()-pendingReport.eventTime>=settleMillis)
+                    {
+                        iterator.remove();
+                        File hostReport = new File(HostReportFile.HOST_REPORTS_DIRECTORY, pendingReport.fileName);
+                        
+                        if((pendingReport.hostReportChanged || pendingReport.rescanned) && !hostReport.exists())
+                        {
+                            if(statsService.removeReport(HostReportFile.getReportId(hostReport)))
+                            {
+                                ServerUtils.log("Report removed: "+HostReportFile.getReportId(hostReport));
+                            }
+                        }
+                        else if(pendingReport.rescanned)
+                        {
+                            // Only the categories whose report files have changed since their statistics were stored are parsed
+                            
+                            queueIngest(hostReport, false, false);
+                        }
+                        else
+                        {
+                            queueIngest(hostReport, !pendingReport.hostReportChanged, true);
+                        }
+                    }
+                }
+            }
+            catch(Exception e)
+            {
+                if(running)
+                {
+                    ServerUtils.log(e);
+                }
+            }
+        }
+    }
+    
+    private void onEvent(File file)
+    {
+        // The events of both report files of a harvest (such as when a new harvest's hosts and mime types reports are copied in) are combined, 
+        // so the report is ingested once they have both settled
+        
+        boolean mimeReport = file.getParentFile().getAbsoluteFile().equals(new File(HostReportFile.MIME_REPORTS_DIRECTORY).getAbsoluteFile());
+        PendingReport pendingReport = getPendingReport(file.getName());
+        pendingReport.eventTime = System.currentTimeMillis();
+        pendingReport.hostReportChanged = pendingReport.hostReportChanged || !mimeReport;
+    }
+    
+    private void rescan()
+    {
+        // Every report in either directory or in the index is checked again, so reports added, replaced or removed while events were lost are found
+        
+        ServerUtils.log("Report directory events lost, checking every report again.");
+        HashSet<String> fileNames = new HashSet<String>();
+        
+        for(String directory: new String[]{HostReportFile.HOST_REPORTS_DIRECTORY, HostReportFile.MIME_REPORTS_DIRECTORY})
+        {
+            File[] files = new File(directory).listFiles();
+            
+            if(files!=null)
+            {
+                for(File file: files)
+                {
+                    fileNames.add(file.getName());
+                }
+            }
+        }
+        for(HostReportFile report: statsService.getReports())
+        {
+            fileNames.add(report.getFile().getName());
+        }
+        
+        long time = System.currentTimeMillis();
+        
+        for(String fileName: fileNames)
+        {
+            PendingReport pendingReport = getPendingReport(fileName);
+            pendingReport.eventTime = time;
+            pendingReport.rescanned = true;
+        }
+    }
+    
+    private PendingReport getPendingReport(String fileName)
+    {
+        String reportId = HostReportFile.getReportId(new File(fileName));
+        PendingReport pendingReport = pendingReports.get(reportId);
+        
+        if(pendingReport==null)
+        {
+            pendingReport = new PendingReport(fileName);
+            pendingReports.put(reportId, pendingReport);
+        }
+        
+        return pendingReport;
+    }
+    
+    private void queueIngest(File hostReport, boolean mimeReportOnly, boolean replace)
+    {
+        if(!hostReport.isFile())
+        {
+            return;
+        }
+        
+        try
+        {
+            HostReportFile report = new HostReportFile(hostReport);
+            List<String> categories = new ArrayList<String>();
+            
+            for(StringPair category: DomainStatsConstants.STATS_VIEW_CATEGORIES)
+            {
+                // Only the mime type statistics are generated from the mime types report
+                
+                if(!mimeReportOnly || category.getKey().equals(DomainStatsConstants.STATS_VIEW_CATEGORY__BY_MIME_TYPE))
+                {
+                    categories.add(category.getKey());
+                }
+            }
+            if(!report.getMimeReportFile().isFile() && categories.remove(DomainStatsConstants.STATS_VIEW_CATEGORY__BY_MIME_TYPE))
+            {
+                // Such as when only the mime types report has been deleted, which would otherwise fail to parse
+                
+                ServerUtils.log("Mime types report not found, not ingesting its statistics: "+report.getId());
+            }
+            if(categories.isEmpty())
+            {
+                return;
+            }
+            if(replace)
+            {
+                ServerUtils.log("Ingesting report: "+report.getId()+" "+categories);
+            }
+            
+            statsService.ingestReport(report, categories, replace).whenComplete(new BiConsumer<Void, Throwable>(){
+                public void accept(Void result, Throwable e)
+                {
+                    if(e!=null)
+                    {
+                        ServerUtils.log("Failed to ingest report "+report.getId()+": "+((e instanceof CompletionException)?(e.getCause()):(e)));
+                    }
+                }
+            });
+        }
+        catch(Exception e)
+        {
+            ServerUtils.log("Error ingesting report: "+hostReport);
+            ServerUtils.log(e);
+        }
+    }
+    
+    private static class PendingReport
+    {
+        private String fileName;
+        private long eventTime;
+        private boolean hostReportChanged;
+        private boolean rescanned;
+        
+        public PendingReport(String fileName)
+        {
+            this.fileName = fileName;
+        }
+    }
+}
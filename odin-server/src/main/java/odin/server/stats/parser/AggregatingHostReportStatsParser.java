@@ -0,0 +1,41 @@
+package odin.server.stats.parser;
+
+/**
+ * A HostReportStatsParser that generates its statistics purely from the entries of the hosts report. 
+ * The statistics of several such parsers can be generated from a single read of the hosts report, by passing them to a {@link HostReportScanner}.
+ */
+
+public interface AggregatingHostReportStatsParser extends HostReportStatsParser
+{
+    /**
+     * Sets the scanner that {@link #parseStats(String)} reads hosts reports with. A single scanner is shared by every parser, 
+     * so the number of threads reading reports stays within the configured limit however many parses run at once.
+     * 
+     * @param hostReportScanner     The scanner.
+     */
+    
+    public void setHostReportScanner(HostReportScanner hostReportScanner);
+    
+    /**
+     * Creates an aggregator to accumulate the statistics of part of a parse of a hosts report. 
+     * Several aggregators may be created for the same parse, and their statistics are merged.
+     * 
+     * @param reportPath        The path to the hosts reports file for a given harvest. The file name uses a date in the format yyyy-MM.txt
+     * @return                  The aggregator.
+     */
+    
+    public HostReportAggregator createAggregator(String reportPath) throws Exception;
+    
+    /**
+     * Called once a parse has finished, after every aggregator created for it has completed.
+     * Implementations that hold state for the duration of a parse should override this to release it.
+     * 
+     * @param reportPath        The path to the hosts reports file for a given harvest.
+     * @param succeeded         Whether the whole report was read and the statistics of every aggregator were merged.
+     */
+    
+    public default void finishParse(String reportPath, boolean succeeded) throws Exception
+    {
+        // Nothing to release
+    }
+}
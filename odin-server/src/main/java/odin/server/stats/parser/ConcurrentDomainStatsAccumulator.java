@@ -0,0 +1,84 @@
+package odin.server.stats.parser;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+
+/**
+ * Accumulates the domain, URL and MB counts of each category from many threads at once, without locking.
+ * Each count is held in a {@link LongAdder}, so threads incrementing the same category do not contend with each other.
+ */
+
+public class ConcurrentDomainStatsAccumulator
+{
+    private ConcurrentHashMap<String, LongAdder[]> categoryToCountersMap;
+    
+    public ConcurrentDomainStatsAccumulator()
+    {
+        this.categoryToCountersMap = new ConcurrentHashMap<String, LongAdder[]>();
+    }
+    
+    /**
+     * Adds the counts of a host to the specified category. May be called from any thread.
+     * 
+     * @param category      The category.
+     * @param domainCount   The number of domains to add.
+     * @param urlCount      The number of URLs to add.
+     * @param byteCount     The number of bytes to add. This is converted to MB (with a minimum of 1) before it is added.
+     */
+    
+    public void add(String category, long domainCount, long urlCount, long byteCount)
+    {
+        LongAdder[] counters = categoryToCountersMap.get(category);
+        
+        if(counters==null)
+        {
+            counters = new LongAdder[DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length];
+            
+            for(int i=0; i<counters.length; i++)
+            {
+                counters[i] = new LongAdder();
+            }
+            
+            LongAdder[] existingCounters = categoryToCountersMap.putIfAbsent(category, counters);
+            
+            if(existingCounters!=null)
+            {
+                counters = existingCounters;
+            }
+        }
+        
+        counters[DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT].add(domainCount);
+        counters[DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT].add(urlCount);
+        counters[DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE].add(Math.max(1, (byteCount/1024)/1024));
+    }
+    
+    /**
+     * Creates statistics from the counts accumulated so far. Should only be called once all threads have finished adding counts.
+     * 
+     * @return      The statistics.
+     */
+    
+    public DomainStats toDomainStats()
+    {
+        DomainStats stats = new DomainStats();
+        
+        for(Map.Entry<String, LongAdder[]> entry: categoryToCountersMap.entrySet())
+        {
+            DomainStatsCounts counts = new DomainStatsCounts();
+            
+            for(int i=0; i<entry.getValue().length; i++)
+            {
+                counts.increment(i, entry.getValue()[i].sum());
+            }
+            
+            stats.getCategoryToCountsMap().put(entry.getKey(), counts);
+        }
+        
+        return stats;
+    }
+}
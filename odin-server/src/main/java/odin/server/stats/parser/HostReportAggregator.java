@@ -0,0 +1,28 @@
+package odin.server.stats.parser;
+
+import odin.stats.DomainStats;
+
+/**
+ * Accumulates the statistics of a single category from the entries of a hosts report.
+ * A {@link HostReportScanner} creates an aggregator for each of its worker threads, feeds each one the entries of the chunks of the report that its thread reads, 
+ * and merges the statistics of the aggregators once the whole report has been read. An aggregator is only ever called from a single thread.
+ */
+
+public interface HostReportAggregator
+{
+    /**
+     * Called for each entry of the hosts report.
+     * 
+     * @param record    The decoded entry. The instance is reused for subsequent entries.
+     */
+    
+    public void onRecord(HostReportRecord record) throws Exception;
+    
+    /**
+     * Called once every entry this aggregator will receive has been passed to {@link #onRecord(HostReportRecord)}.
+     * 
+     * @return          The statistics accumulated from the entries received.
+     */
+    
+    public DomainStats complete() throws Exception;
+}
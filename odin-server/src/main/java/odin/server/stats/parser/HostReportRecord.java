@@ -0,0 +1,118 @@
+package odin.server.stats.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single decoded entry of a hosts report: the host, and the number of URLs and bytes harvested from it.
+ * 
+ * The host is held as a slice of the report's read buffer, and is only decoded into a String if {@link #getHost()} is called, 
+ * so aggregators can inspect it (for example with {@link #hostEndsWith(byte[])}) without creating any objects.
+ * 
+ * The same instance is reused for every line of a report, so aggregators must copy any values they need to keep after {@link HostReportAggregator#onRecord(HostReportRecord)} returns.
+ */
+
+public class HostReportRecord
+{
+    private byte[] buffer;
+    private int hostStart;
+    private int hostLength;
+    private String host;
+    private long urlCount;
+    private long byteCount;
+    
+    void set(byte[] buffer, int hostStart, int hostLength, long urlCount, long byteCount)
+    {
+        this.buffer = buffer;
+        this.hostStart = hostStart;
+        this.hostLength = hostLength;
+        this.host = null;
+        this.urlCount = urlCount;
+        this.byteCount = byteCount;
+    }
+    
+    /**
+     * @return      the host name. The first call for each entry decodes the host into a new String.
+     */
+    
+    public String getHost()
+    {
+        if(host==null)
+        {
+            host = new String(buffer, hostStart, hostLength, StandardCharsets.UTF_8);
+        }
+        
+        return host;
+    }
+    
+    /**
+     * @return      the buffer holding the host name. Only valid until the next entry is read.
+     */
+    
+    public byte[] getHostBuffer()
+    {
+        return buffer;
+    }
+    
+    /**
+     * @return      the offset of the host name in the host buffer.
+     */
+    
+    public int getHostStart()
+    {
+        return hostStart;
+    }
+    
+    /**
+     * @return      the length in bytes of the host name in the host buffer.
+     */
+    
+    public int getHostLength()
+    {
+        return hostLength;
+    }
+    
+    /**
+     * Checks if the host ends with the suffix specified, without decoding the host.
+     * 
+     * @param suffix    The ASCII bytes of the suffix (such as ".au").
+     * @return          true if the host ends with the suffix.
+     */
+    
+    public boolean hostEndsWith(byte[] suffix)
+    {
+        if(suffix.length>hostLength)
+        {
+            return false;
+        }
+        
+        int offset = hostStart+hostLength-suffix.length;
+        
+        for(int i=0; i<suffix.length; i++)
+        {
+            if(buffer[offset+i]!=suffix[i])
+            {
+                return false;
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * @return      the number of URLs harvested from the host.
+     */
+    
+    public long getUrlCount()
+    {
+        return urlCount;
+    }
+    
+    /**
+     * @return      the number of bytes harvested from the host.
+     */
+    
+    public long getByteCount()
+    {
+        return byteCount;
+    }
+}
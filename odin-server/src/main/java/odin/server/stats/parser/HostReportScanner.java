@@ -0,0 +1,326 @@
+package odin.server.stats.parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import odin.stats.DomainStats;
+
+/**
+ * Reads a hosts report once, decoding each entry and passing it to an aggregator of every parser provided.
+ * This allows the statistics of several categories to be generated from a single read of the (often very large) hosts report.
+ * 
+ * The report is memory mapped and split into line aligned chunks by a {@link MappedReportReader}, and the chunks are decoded in parallel 
+ * with a {@link ReportTokenizer}, so no objects are created per entry. Each worker thread feeds its own set of aggregators, 
+ * and the partial statistics of the workers are merged once the whole report has been read.
+ */
+
+public class HostReportScanner
+{
+    private int parallelism;
+    private ExecutorService executorService;
+    
+    /**
+     * Creates a new scanner. The worker threads are shared by every scan, so concurrent scans together use no more than the number of threads specified.
+     * 
+     * @param parallelism   The number of worker threads used to read reports.
+     */
+    
+    public HostReportScanner(int parallelism)
+    {
+        AtomicInteger threadCount = new AtomicInteger();
+        
+        this.parallelism = Math.max(1, parallelism);
+        this.executorService = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory(){
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "host-report-reader-"+threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+    
+    /**
+     * Reads the hosts report, passing every entry to an aggregator of each of the parsers provided, and returns their statistics.
+     * Entries with a host that cannot be parsed are skipped. Every aggregator is completed, and then every parser is told the parse has finished 
+     * (see {@link AggregatingHostReportStatsParser#finishParse(String, boolean)}), even if reading the report fails.
+     * 
+     * @param reportPath        The path to the hosts report file.
+     * @param parsers           The parsers to create aggregators from.
+     * @return                  The statistics accumulated for each parser, in the same order as the parsers.
+     */
+    
+    public List<DomainStats> scan(String reportPath, List<? extends AggregatingHostReportStatsParser> parsers) throws Exception
+    {
+        boolean succeeded = false;
+        
+        try
+        {
+            List<DomainStats> statsList = scanReport(reportPath, parsers);
+            succeeded = true;
+            return statsList;
+        }
+        finally
+        {
+            finishParse(reportPath, parsers, succeeded);
+        }
+    }
+    
+    /**
+     * Reads the hosts report, passing every entry to an aggregator of the parser provided, and returns its statistics.
+     * 
+     * @param reportPath        The path to the hosts report file.
+     * @param parser            The parser to create aggregators from.
+     * @return                  The statistics accumulated for the parser.
+     */
+    
+    public DomainStats scan(String reportPath, AggregatingHostReportStatsParser parser) throws Exception
+    {
+        return scan(reportPath, Arrays.asList(parser)).get(0);
+    }
+    
+    private List<DomainStats> scanReport(String reportPath, List<? extends AggregatingHostReportStatsParser> parsers) throws Exception
+    {
+        try(MappedReportReader reader = new MappedReportReader(reportPath, parallelism*4))
+        {
+            int workerCount = Math.max(1, Math.min(parallelism, reader.getChunkCount()));
+            AtomicInteger nextChunk = new AtomicInteger();
+            AtomicBoolean failed = new AtomicBoolean();
+            List<Future<List<DomainStats>>> futures = new ArrayList<Future<List<DomainStats>>>();
+            
+            for(int i=0; i<workerCount; i++)
+            {
+                futures.add(executorService.submit(new Callable<List<DomainStats>>(){
+                    public List<DomainStats> call() throws Exception
+                    {
+                        return scanChunks(reportPath, reader, nextChunk, failed, parsers);
+                    }
+                }));
+            }
+            
+            // Merge the partial statistics of each worker
+            
+            List<DomainStats> statsList = null;
+            Exception exception = null;
+            
+            for(Future<List<DomainStats>> future: futures)
+            {
+                try
+                {
+                    List<DomainStats> partialStatsList = future.get();
+                    
+                    if(statsList==null)
+                    {
+                        statsList = partialStatsList;
+                    }
+                    else
+                    {
+                        for(int i=0; i<statsList.size(); i++)
+                        {
+                            statsList.get(i).add(partialStatsList.get(i));
+                        }
+                    }
+                }
+                catch(ExecutionException e)
+                {
+                    if(exception==null)
+                    {
+                        exception = (e.getCause() instanceof Exception)?((Exception)e.getCause()):e;
+                    }
+                }
+            }
+            if(exception!=null)
+            {
+                throw exception;
+            }
+            
+            return statsList;
+        }
+    }
+    
+    private void finishParse(String reportPath, List<? extends AggregatingHostReportStatsParser> parsers, boolean succeeded) throws Exception
+    {
+        Exception exception = null;
+        
+        for(AggregatingHostReportStatsParser parser: parsers)
+        {
+            try
+            {
+                parser.finishParse(reportPath, succeeded);
+            }
+            catch(Exception e)
+            {
+                if(exception==null)
+                {
+                    exception = e;
+                }
+            }
+        }
+        
+        // Failures to finish a failed parse are not reported, so they do not hide the cause of the failure
+        
+        if(exception!=null && succeeded)
+        {
+            throw exception;
+        }
+    }
+    
+    private List<DomainStats> scanChunks(String reportPath, MappedReportReader reader, AtomicInteger nextChunk, AtomicBoolean failed, List<? extends AggregatingHostReportStatsParser> parsers) throws Exception
+    {
+        List<HostReportAggregator> aggregators = new ArrayList<HostReportAggregator>(parsers.size());
+        
+        try
+        {
+            for(AggregatingHostReportStatsParser parser: parsers)
+            {
+                aggregators.add(parser.createAggregator(reportPath));
+            }
+            
+            int chunk;
+            
+            while(!failed.get() && (chunk = nextChunk.getAndIncrement())<reader.getChunkCount())
+            {
+                readChunk(reader, chunk, aggregators);
+            }
+        }
+        catch(Exception e)
+        {
+            failed.set(true);
+            
+            for(HostReportAggregator aggregator: aggregators)
+            {
+                try
+                {
+                    aggregator.complete();
+                }
+                catch(Exception x)
+                {
+                    e.addSuppressed(x);
+                }
+            }
+            
+            throw e;
+        }
+        
+        List<DomainStats> statsList = new ArrayList<DomainStats>(aggregators.size());
+        
+        for(HostReportAggregator aggregator: aggregators)
+        {
+            statsList.add(aggregator.complete());
+        }
+        
+        return statsList;
+    }
+    
+    private void readChunk(MappedReportReader reader, int chunk, List<HostReportAggregator> aggregators) throws Exception
+    {
+        HostReportRecord record = new HostReportRecord();
+        boolean firstChunk = reader.isFirstChunk(chunk);
+        
+        try(ReportTokenizer tokenizer = new ReportTokenizer(reader.openChunk(chunk), 3))
+        {
+            while(tokenizer.nextLine())
+            {
+                // Skip the header line, blank lines, and incomplete lines
+                
+                if((firstChunk && tokenizer.getLineIndex()==0) || tokenizer.getFieldCount()<3)
+                {
+                    continue;
+                }
+                if(!decode(tokenizer, record))
+                {
+                    continue;
+                }
+                
+                for(HostReportAggregator aggregator: aggregators)
+                {
+                    aggregator.onRecord(record);
+                }
+            }
+        }
+    }
+    
+    private static boolean decode(ReportTokenizer tokenizer, HostReportRecord record)
+    {
+        // The host field is usually a bare host name, but may be a URL authority (with a scheme, user info or port)
+        
+        byte[] buffer = tokenizer.getBuffer();
+        int start = tokenizer.getFieldStart(2);
+        int end = tokenizer.getFieldEnd(2);
+        
+        for(int i=start; i<end-2; i++)
+        {
+            if(buffer[i]==':' && buffer[i+1]=='/' && buffer[i+2]=='/')
+            {
+                start = i+3;
+                break;
+            }
+        }
+        for(int i=start; i<end; i++)
+        {
+            if(buffer[i]=='/' || buffer[i]=='?' || buffer[i]=='#')
+            {
+                end = i;
+                break;
+            }
+        }
+        for(int i=end-1; i>=start; i--)
+        {
+            if(buffer[i]=='@')
+            {
+                start = i+1;
+                break;
+            }
+        }
+        
+        if(start<end && buffer[start]=='[')
+        {
+            // IPv6 literal
+            
+            for(int i=start; i<end; i++)
+            {
+                if(buffer[i]==']')
+                {
+                    end = i+1;
+                    break;
+                }
+            }
+        }
+        else
+        {
+            for(int i=start; i<end; i++)
+            {
+                if(buffer[i]==':')
+                {
+                    end = i;
+                    break;
+                }
+            }
+        }
+        
+        if(start==end)
+        {
+            return false;
+        }
+        
+        try
+        {
+            record.set(buffer, start, end-start, tokenizer.getLong(0), tokenizer.getLong(1));
+        }
+        catch(NumberFormatException e)
+        {
+            return false;
+        }
+        
+        return true;
+    }
+}
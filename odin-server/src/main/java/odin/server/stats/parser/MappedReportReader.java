@@ -0,0 +1,160 @@
+package odin.server.stats.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads a large report file through memory mapping, split into chunks that each start at the beginning of a line and end at the end of a line.
+ * Each chunk can be read independently (and concurrently) as a stream.
+ */
+
+public class MappedReportReader implements Closeable
+{
+    private static final long MAX_CHUNK_SIZE = 1024L*1024L*256L;
+    private static final long MIN_CHUNK_SIZE = 1024L*1024L;
+    
+    private FileChannel channel;
+    private List<Chunk> chunks;
+    
+    /**
+     * Opens the report file and splits it into chunks.
+     * 
+     * @param reportPath    The path to the report file.
+     * @param targetChunks  The number of chunks to split the file into. Small files are split into fewer chunks, and large files may be split into more.
+     */
+    
+    public MappedReportReader(String reportPath, int targetChunks) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(reportPath), StandardOpenOption.READ);
+        chunks = new ArrayList<Chunk>();
+        
+        long size = channel.size();
+        long chunkSize = Math.min(MAX_CHUNK_SIZE, Math.max(MIN_CHUNK_SIZE, (size+targetChunks-1)/Math.max(1, targetChunks)));
+        long start = 0;
+        
+        while(start<size)
+        {
+            long end = start+chunkSize>=size?size:findLineStart(start+chunkSize);
+            chunks.add(new Chunk(start, end));
+            start = end;
+        }
+    }
+    
+    /**
+     * @return      the number of chunks the file was split into.
+     */
+    
+    public int getChunkCount()
+    {
+        return chunks.size();
+    }
+    
+    /**
+     * @return      true if the specified chunk starts at the beginning of the file (and so begins with the report's header line).
+     */
+    
+    public boolean isFirstChunk(int chunk)
+    {
+        return chunks.get(chunk).start==0;
+    }
+    
+    /**
+     * Maps the specified chunk into memory and opens it as a stream.
+     * 
+     * @param chunk     The index of the chunk.
+     * @return          A stream of the chunk's bytes.
+     */
+    
+    public InputStream openChunk(int chunk) throws IOException
+    {
+        Chunk c = chunks.get(chunk);
+        return new MappedInputStream(channel.map(FileChannel.MapMode.READ_ONLY, c.start, c.end-c.start));
+    }
+    
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+    
+    private long findLineStart(long position) throws IOException
+    {
+        // Returns the position after the first newline at or after the position specified, or the end of the file
+        
+        ByteBuffer buffer = ByteBuffer.allocate(1024*64);
+        long size = channel.size();
+        
+        while(position<size)
+        {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            
+            if(read<=0)
+            {
+                break;
+            }
+            
+            for(int i=0; i<read; i++)
+            {
+                if(buffer.get(i)=='\n')
+                {
+                    return position+i+1;
+                }
+            }
+            
+            position = position+read;
+        }
+        
+        return size;
+    }
+    
+    private static class Chunk
+    {
+        private long start;
+        private long end;
+        
+        public Chunk(long start, long end)
+        {
+            this.start = start;
+            this.end = end;
+        }
+    }
+    
+    private static class MappedInputStream extends InputStream
+    {
+        private MappedByteBuffer buffer;
+        
+        public MappedInputStream(MappedByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+        
+        public int read()
+        {
+            return buffer.hasRemaining()?(buffer.get() & 0xFF):-1;
+        }
+        
+        public int read(byte[] bytes, int offset, int length)
+        {
+            if(length==0)
+            {
+                return 0;
+            }
+            if(!buffer.hasRemaining())
+            {
+                return -1;
+            }
+            
+            length = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, length);
+            return length;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package odin.server.stats.parser;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import loki.server.util.ServerUtils;
+
+/**
+ * Holds a lookup table built from one or more document files (such as the files under documents/), and rebuilds it when any of those files change.
+ * 
+ * The table is built once and then shared by every parse, so implementations of {@link #load(List)} should return an immutable structure.
+ * Checking for changes only compares the modification times of the source files, so {@link #get()} is cheap enough to call at the start of every parse.
+ */
+
+public abstract class ReloadableDocumentTable<T>
+{
+    private volatile T table;
+    private List<File> sourceFiles;
+    private long[] lastModifiedTimes;
+    
+    /**
+     * Builds the table from the document files.
+     * 
+     * @param sourceFiles   Implementations should add every file the table was built from (including optional files that did not exist) to this list, 
+     *                      so that the table is rebuilt when any of them change.
+     * @return              The table.
+     */
+    
+    protected abstract T load(List<File> sourceFiles) throws Exception;
+    
+    /**
+     * Returns the table, building it first if it has not yet been built or if any of its source files have changed since it was built.
+     * If rebuilding a changed table fails, the error is logged and the previous table is returned.
+     * 
+     * @return      The table.
+     */
+    
+    public synchronized T get() throws Exception
+    {
+        if(table==null)
+        {
+            reload();
+        }
+        else if(isModified())
+        {
+            try
+            {
+                reload();
+            }
+            catch(Exception e)
+            {
+                ServerUtils.log("Error reloading document table, using the previously loaded table:");
+                ServerUtils.log(e);
+            }
+        }
+        
+        return table;
+    }
+    
+    private void reload() throws Exception
+    {
+        List<File> files = new ArrayList<File>();
+        T newTable = load(files);
+        long[] times = new long[files.size()];
+        
+        for(int i=0; i<times.length; i++)
+        {
+            times[i] = files.get(i).lastModified();
+        }
+        
+        if(table!=null)
+        {
+            ServerUtils.log("Reloaded document table from: "+files);
+        }
+        
+        sourceFiles = files;
+        lastModifiedTimes = times;
+        table = newTable;
+    }
+    
+    private boolean isModified()
+    {
+        for(int i=0; i<lastModifiedTimes.length; i++)
+        {
+            if(sourceFiles.get(i).lastModified()!=lastModifiedTimes[i])
+            {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+}
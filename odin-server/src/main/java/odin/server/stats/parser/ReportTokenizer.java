@@ -0,0 +1,244 @@
+package odin.server.stats.parser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a whitespace separated Heritrix report (such as the hosts report or the mimetype report) into lines and fields, working directly on the bytes of the report.
+ * 
+ * No objects are created per line: fields are exposed as offsets into a shared buffer, and numeric fields are parsed straight into primitives.
+ * The buffer and offsets are only valid until the next call to {@link #nextLine()}.
+ */
+
+public class ReportTokenizer implements Closeable
+{
+    private static final int DEFAULT_BUFFER_SIZE = 1024*64;
+    
+    private InputStream in;
+    private byte[] buffer;
+    private int position;
+    private int limit;
+    private boolean endOfStream;
+    
+    private int lineIndex;
+    private int fieldCount;
+    private int[] fieldStarts;
+    private int[] fieldEnds;
+    
+    /**
+     * Creates a new tokenizer.
+     * 
+     * @param in            The stream to read the report from.
+     * @param maxFields     The number of leading fields of each line to tokenize. Any fields after these are ignored.
+     */
+    
+    public ReportTokenizer(InputStream in, int maxFields)
+    {
+        this.in = in;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+        this.lineIndex = -1;
+        this.fieldStarts = new int[maxFields];
+        this.fieldEnds = new int[maxFields];
+    }
+    
+    /**
+     * Advances to the next line of the report.
+     * 
+     * @return      true if there was another line, or false if the end of the report has been reached.
+     */
+    
+    public boolean nextLine() throws IOException
+    {
+        int lineEnd = findLineEnd();
+        
+        if(lineEnd<0)
+        {
+            return false;
+        }
+        
+        lineIndex++;
+        fieldCount = 0;
+        
+        int i = position;
+        
+        while(i<lineEnd && fieldCount<fieldStarts.length)
+        {
+            while(i<lineEnd && isWhitespace(buffer[i]))
+            {
+                i++;
+            }
+            if(i==lineEnd)
+            {
+                break;
+            }
+            
+            fieldStarts[fieldCount] = i;
+            
+            while(i<lineEnd && !isWhitespace(buffer[i]))
+            {
+                i++;
+            }
+            
+            fieldEnds[fieldCount] = i;
+            fieldCount++;
+        }
+        
+        position = Math.min(lineEnd+1, limit);
+        return true;
+    }
+    
+    /**
+     * @return      the zero-based index of the current line. The header line of a report has the index 0.
+     */
+    
+    public int getLineIndex()
+    {
+        return lineIndex;
+    }
+    
+    /**
+     * @return      the number of fields tokenized on the current line. Blank lines have no fields.
+     */
+    
+    public int getFieldCount()
+    {
+        return fieldCount;
+    }
+    
+    /**
+     * @return      the buffer holding the current line. Only valid until the next call to {@link #nextLine()}.
+     */
+    
+    public byte[] getBuffer()
+    {
+        return buffer;
+    }
+    
+    /**
+     * @return      the offset in the buffer of the first byte of the specified field.
+     */
+    
+    public int getFieldStart(int field)
+    {
+        return fieldStarts[field];
+    }
+    
+    /**
+     * @return      the offset in the buffer after the last byte of the specified field.
+     */
+    
+    public int getFieldEnd(int field)
+    {
+        return fieldEnds[field];
+    }
+    
+    /**
+     * Parses the specified field as a non-negative decimal number.
+     * 
+     * @param field     The index of the field.
+     * @return          The parsed value.
+     * @throws NumberFormatException if the field is not a decimal number, or is too large for a long (as with Long.parseLong).
+     */
+    
+    public long getLong(int field)
+    {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        long value = 0;
+        
+        for(int i=start; i<end; i++)
+        {
+            int digit = buffer[i]-'0';
+            
+            if(digit<0 || digit>9)
+            {
+                throw new NumberFormatException("Not a number: "+getString(field));
+            }
+            if(value>(Long.MAX_VALUE-digit)/10)
+            {
+                throw new NumberFormatException("Number out of range: "+getString(field));
+            }
+            
+            value = value*10+digit;
+        }
+        
+        return value;
+    }
+    
+    /**
+     * Decodes the specified field as a string. Unlike the other methods, this creates a new object.
+     * 
+     * @param field     The index of the field.
+     * @return          The decoded field.
+     */
+    
+    public String getString(int field)
+    {
+        return new String(buffer, fieldStarts[field], fieldEnds[field]-fieldStarts[field], StandardCharsets.UTF_8);
+    }
+    
+    public void close() throws IOException
+    {
+        in.close();
+    }
+    
+    private int findLineEnd() throws IOException
+    {
+        // Returns the index of the newline ending the line at the current position (or the end of the data for the last line), reading more data if required
+        
+        int searchFrom = position;
+        
+        while(true)
+        {
+            for(int i=searchFrom; i<limit; i++)
+            {
+                if(buffer[i]=='\n')
+                {
+                    return i;
+                }
+            }
+            
+            if(endOfStream)
+            {
+                return position<limit?limit:-1;
+            }
+            
+            // Move the partial line to the start of the buffer, growing the buffer if the line fills it
+            
+            int remaining = limit-position;
+            
+            if(remaining==buffer.length)
+            {
+                byte[] grown = new byte[buffer.length*2];
+                System.arraycopy(buffer, position, grown, 0, remaining);
+                buffer = grown;
+            }
+            else
+            {
+                System.arraycopy(buffer, position, buffer, 0, remaining);
+            }
+            
+            position = 0;
+            limit = remaining;
+            searchFrom = remaining;
+            
+            int read = in.read(buffer, limit, buffer.length-limit);
+            
+            if(read<0)
+            {
+                endOfStream = true;
+            }
+            else
+            {
+                limit = limit+read;
+            }
+        }
+    }
+    
+    private static boolean isWhitespace(byte b)
+    {
+        return b==' ' || b=='\t' || b=='\r' || b=='\f' || b==0x0B;
+    }
+}
@@ -1,14 +1,15 @@
 package odin.server.stats.parser.domain;
 
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.Collections;
-import java.util.Comparator;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
-import loki.server.text.TextFileLineReceiver;
 import loki.server.text.TextFileReaderService;
-import odin.server.stats.parser.HostReportStatsParser;
+import odin.server.stats.parser.AggregatingHostReportStatsParser;
+import odin.server.stats.parser.HostReportAggregator;
+import odin.server.stats.parser.HostReportRecord;
+import odin.server.stats.parser.HostReportScanner;
+import odin.server.stats.parser.ReloadableDocumentTable;
 import odin.stats.DomainStats;
 import odin.stats.DomainStatsConstants;
 import odin.stats.DomainStatsCounts;
@@ -17,116 +18,135 @@ import odin.stats.DomainStatsCounts;
  * Parses stats for the by_tld category.
  * Categories include all the high level domains of interest, as a combination of those in the documents/tld_au.txt file 
  * and /documents/states_au.txt file. Only includes domains that end with '.au'.
+ * 
+ * Additional groupings can be specified in the optional documents/tld_au_groupings.txt file, with a suffix and the category 
+ * it is grouped under on each line (for example '.vic.edu.au .edu.au'). A host is grouped by the longest suffix it ends with.
+ * The documents are loaded once, and reloaded if they change.
  */
 
-public class ByTLDHostReportStatsParser implements HostReportStatsParser
+public class ByTLDHostReportStatsParser implements AggregatingHostReportStatsParser
 {
+    private static final byte[] AU_SUFFIX = ".au".getBytes(StandardCharsets.US_ASCII);
+    private static final String TLD_DOCUMENT = "documents/tld_au.txt";
+    private static final String STATES_DOCUMENT = "documents/states_au.txt";
+    private static final String GROUPINGS_DOCUMENT = "documents/tld_au_groupings.txt";
+    
+    private ReloadableDocumentTable<DomainSuffixClassifier> classifierTable;
+    private HostReportScanner hostReportScanner;
+    
     public void initialise() throws Exception
     {
-        // Nothing to initialise
+        classifierTable = new ReloadableDocumentTable<DomainSuffixClassifier>(){
+            protected DomainSuffixClassifier load(List<File> sourceFiles) throws Exception
+            {
+                sourceFiles.add(new File(TLD_DOCUMENT));
+                sourceFiles.add(new File(STATES_DOCUMENT));
+                sourceFiles.add(new File(GROUPINGS_DOCUMENT));
+                return loadClassifier();
+            }
+        };
+        classifierTable.get();
+    }
+    
+    public void setHostReportScanner(HostReportScanner hostReportScanner)
+    {
+        this.hostReportScanner = hostReportScanner;
     }
     
     public DomainStats parseStats(String reportPath) throws Exception
+    {
+        return hostReportScanner.scan(reportPath, this);
+    }
+    
+    public HostReportAggregator createAggregator(String reportPath) throws Exception
     {
         DomainStats stats = new DomainStats();
-        TextFileReaderService service = new TextFileReaderService();
-        
-        List<String> stateList = service.readAllLines("documents/states_au.txt");
-        List<String> tldList = service.readAllLines("documents/tld_au.txt");
-        Collections.sort(tldList, new Comparator<String>(){
-            public int compare(String a, String b)
-            {
-                return -Integer.compare(a.length(), b.length());
-            }
-        });
+        DomainSuffixClassifier classifier = classifierTable.get();
         
-        service.iterateLines(reportPath, new TextFileLineReceiver(){
-            public void onLine(int index, String line) throws Exception
+        return new HostReportAggregator(){
+            public void onRecord(HostReportRecord record) throws Exception
             {
-                if(index==0)
+                if(!record.hostEndsWith(AU_SUFFIX))
                 {
                     return;
                 }
                 
-                line = line.trim();
+                String domain = classifier.classify(record.getHostBuffer(), record.getHostStart(), record.getHostLength());
                 
-                if(line.isEmpty())
+                if(domain==null)
                 {
-                    return;
-                }
-                
-                String[] hostEntrySplit = line.split("\\s+");
-                String urlString = hostEntrySplit[2];
-                
-                if(!urlString.contains("://"))
-                {
-                    urlString = "http://"+urlString;
-                }
-                
-                URL url;
-                
-                try
-                {
-                    url = new URL(urlString);
-                }
-                catch(MalformedURLException e)
-                {
-                    //System.out.println("[MALFORMED] "+urlString);
-                    return;
+                    domain = record.getHost();
                 }
                 
-                String domain = url.getHost();
-                long urlCount = Long.parseLong(hostEntrySplit[0]);
-                long byteCount = Long.parseLong(hostEntrySplit[1]);
+                DomainStatsCounts counts = stats.getCategoryToCountsMap().get(domain);
                 
-                if(!domain.endsWith(".au"))
+                if(counts==null)
                 {
-                    return;
+                    counts = new DomainStatsCounts();
+                    stats.getCategoryToCountsMap().put(domain, counts);
                 }
                 
-                boolean found = false;
-                                
-                for(String tld: tldList)
+                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT, 1);
+                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, record.getUrlCount());
+                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE, Math.max(1, (record.getByteCount()/1024)/1024));
+            }
+            
+            public DomainStats complete() throws Exception
+            {
+                return stats;
+            }
+        };
+    }
+    
+    private DomainSuffixClassifier loadClassifier() throws Exception
+    {
+        // Each host is classified by the longest suffix it ends with, so a state grouping (such as '.nsw.gov.au') takes precedence over its TLD
+        
+        DomainSuffixClassifier classifier = new DomainSuffixClassifier();
+        TextFileReaderService service = new TextFileReaderService();
+        
+        List<String> stateList = service.readAllLines(STATES_DOCUMENT);
+        List<String> tldList = service.readAllLines(TLD_DOCUMENT);
+        
+        for(String tld: tldList)
+        {
+            tld = tld.trim();
+            
+            if(tld.isEmpty())
+            {
+                continue;
+            }
+            
+            classifier.add(tld, tld);
+            
+            if(tld.startsWith(".gov") || tld.startsWith(".edu") || tld.equals(".au"))
+            {
+                for(String state: stateList)
                 {
-                    if(tld.startsWith(".gov") || tld.startsWith(".edu") || tld.equals(".au"))
-                    {
-                        for(String state: stateList)
-                        {
-                            String d = "."+state+tld;
-                            
-                            if(domain.endsWith(d))
-                            {
-                                domain = d;
-                                found = true;
-                                break;
-                            }
-                        }
-                        if(found)
-                        {
-                            break;
-                        }
-                    }
-                    if(domain.endsWith(tld))
+                    if(!state.trim().isEmpty())
                     {
-                        domain = tld;
-                        break;
+                        String d = "."+state.trim()+tld;
+                        classifier.add(d, d);
                     }
                 }
+            }
+        }
+        
+        // Add any custom groupings
+        
+        if(new File(GROUPINGS_DOCUMENT).isFile())
+        {
+            for(String line: service.readAllLines(GROUPINGS_DOCUMENT))
+            {
+                String[] split = line.trim().split("\\s+");
                 
-                DomainStatsCounts counts = stats.getCategoryToCountsMap().get(domain);
-                
-                if(counts==null)
+                if(!split[0].isEmpty())
                 {
-                    counts = new DomainStatsCounts();
-                    stats.getCategoryToCountsMap().put(domain, counts);
+                    classifier.add(split[0], split.length>1?split[1]:split[0]);
                 }
-                
-                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__DOMAIN_COUNT, 1);
-                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT, urlCount);
-                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__MB_SIZE, Math.max(1, (byteCount/1024)/1024));
             }
-        });
+        }
         
-        return stats;
+        return classifier;
     }
 }
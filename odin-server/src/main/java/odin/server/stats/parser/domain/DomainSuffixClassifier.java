@@ -0,0 +1,142 @@
+package odin.server.stats.parser.domain;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Classifies host names by the longest matching suffix from a table of suffixes (such as '.gov.au' or '.nsw.gov.au').
+ * 
+ * The suffixes are compiled into a trie of their reversed bytes, so a host is classified in a single walk backwards over its bytes,
+ * without creating any objects, however many suffixes the table holds.
+ * Instances are immutable once built, and can be shared between threads.
+ */
+
+public class DomainSuffixClassifier
+{
+    private Node root;
+    private int size;
+    
+    /**
+     * Creates a new, empty classifier. Suffixes are added with {@link #add(String, String)}.
+     */
+    
+    public DomainSuffixClassifier()
+    {
+        this.root = new Node();
+    }
+    
+    /**
+     * Adds a suffix to the table. Should only be called while the classifier is being built.
+     * 
+     * @param suffix        The suffix, such as '.gov.au'. Matched case sensitively, as a plain suffix of the host.
+     * @param category      The category of hosts that end with the suffix.
+     * @return              This instance.
+     */
+    
+    public DomainSuffixClassifier add(String suffix, String category)
+    {
+        byte[] bytes = suffix.getBytes(StandardCharsets.UTF_8);
+        Node node = root;
+        
+        for(int i=bytes.length-1; i>=0; i--)
+        {
+            node = node.getOrCreateChild(bytes[i]);
+        }
+        if(node.category==null)
+        {
+            size++;
+        }
+        
+        node.category = category;
+        return this;
+    }
+    
+    /**
+     * @return      the number of suffixes in the table.
+     */
+    
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Classifies the host held in the specified slice of a buffer.
+     * 
+     * @param buffer    The buffer holding the host.
+     * @param start     The offset of the host in the buffer.
+     * @param length    The length of the host in bytes.
+     * @return          The category of the longest suffix the host ends with, or null if it ends with none of them.
+     */
+    
+    public String classify(byte[] buffer, int start, int length)
+    {
+        String category = null;
+        Node node = root;
+        
+        for(int i=start+length-1; i>=start; i--)
+        {
+            node = node.getChild(buffer[i]);
+            
+            if(node==null)
+            {
+                break;
+            }
+            if(node.category!=null)
+            {
+                category = node.category;
+            }
+        }
+        
+        return category;
+    }
+    
+    /**
+     * Classifies the specified host.
+     * 
+     * @param host      The host.
+     * @return          The category of the longest suffix the host ends with, or null if it ends with none of them.
+     */
+    
+    public String classify(String host)
+    {
+        byte[] bytes = host.getBytes(StandardCharsets.UTF_8);
+        return classify(bytes, 0, bytes.length);
+    }
+    
+    private static class Node
+    {
+        private byte[] keys = new byte[0];
+        private Node[] children = new Node[0];
+        private String category;
+        
+        public Node getChild(byte key)
+        {
+            for(int i=0; i<keys.length; i++)
+            {
+                if(keys[i]==key)
+                {
+                    return children[i];
+                }
+            }
+            
+            return null;
+        }
+        
+        public Node getOrCreateChild(byte key)
+        {
+            Node child = getChild(key);
+            
+            if(child==null)
+            {
+                child = new Node();
+                keys = Arrays.copyOf(keys, keys.length+1);
+                children = Arrays.copyOf(children, children.length+1);
+                keys[keys.length-1] = key;
+                children[children.length-1] = child;
+            }
+            
+            return child;
+        }
+    }
+}
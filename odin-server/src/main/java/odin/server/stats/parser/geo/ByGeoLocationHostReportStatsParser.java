@@ -2,219 +2,487 @@ package odin.server.stats.parser.geo;
 
 import java.io.File;
 import java.net.InetAddress;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.UnknownHostException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
-import com.maxmind.geoip2.DatabaseReader;
-import com.maxmind.geoip2.exception.AddressNotFoundException;
-import com.maxmind.geoip2.model.CityResponse;
-
-import loki.server.text.TextFileLineReceiver;
-import loki.server.text.TextFileReaderService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import loki.Attributes;
 import loki.server.util.ServerUtils;
 import odin.server.host.HostInformation;
-import odin.server.stats.parser.HostReportStatsParser;
+import odin.server.host.HostInformationLookup;
+import odin.server.host.HostInformationRefresher;
+import odin.server.host.HostInformationStore;
+import odin.server.host.LogHostInformationStore;
+import odin.server.host.dns.CachingHostResolver;
+import odin.server.host.dns.HostNotFoundException;
+import odin.server.host.dns.HostResolver;
+import odin.server.host.dns.SystemHostResolver;
+import odin.server.host.dns.UdpHostResolver;
+import odin.server.stats.HostReportFile;
+import odin.server.stats.parser.AggregatingHostReportStatsParser;
+import odin.server.stats.parser.ConcurrentDomainStatsAccumulator;
+import odin.server.stats.parser.HostReportAggregator;
+import odin.server.stats.parser.HostReportRecord;
+import odin.server.stats.parser.HostReportScanner;
 import odin.stats.DomainStats;
-import odin.stats.DomainStatsConstants;
-import odin.stats.DomainStatsCounts;
 import thor.storage.StorableNotFoundException;
 import thor.storage.file.FileStorageService;
 
 /**
  * Parses stats for the by_geolocation category by using the list of domains in the hosts report, looking up their IP address, and 
  * finding the estimated Australian state hosting it from the maxmind database. Anything outside Australia is grouped into 'Offshore'.
+ * 
+ * Hosts with stored host information are counted as they are read. The rest are resolved asynchronously by a {@link HostResolver} (the system resolver, 
+ * or a non-blocking UDP resolver pointed at a local DNS server, as configured in config/geolocation.properties), so many lookups are in progress at once.
+ * No more lookups can be pending at once than the resolver actually performs at once (see {@link HostResolver#getConcurrency()}), and reading the report blocks 
+ * until a lookup completes, so memory use stays flat regardless of the size of the report, and lookups are not left queued inside the resolver.
+ * Stored host information is kept up to date by a {@link HostInformationRefresher}.
+ * 
+ * Parses are incremental: the state of every host of a report is saved in a {@link HostStateIndex}, and the next report's hosts that were in the 
+ * previous report take their state straight from its index, so only hosts new since the previous report go through the host information store.
  */
 
-public class ByGeoLocationHostReportStatsParser implements HostReportStatsParser
+public class ByGeoLocationHostReportStatsParser implements AggregatingHostReportStatsParser
 {
-    private FileStorageService<HostInformation> hostInformationStorageService;
-    private int threadPoolCount;
+    private static final byte[] AU_SUFFIX = ".au".getBytes(StandardCharsets.US_ASCII);
+    
+    private static final String UNKNOWN = "Unknown";
+    private static final String DATABASE_FILE = "source_data/geolite/GeoLite2-City.mmdb";
+    private static final String LEGACY_HOST_INFORMATION_DIRECTORY = "storage/host_information/";
+    private static final String HOST_STATE_INDEX_DIRECTORY = "storage/geolocation_host_index/";
+    private static final String HOST_STATE_INDEX_EXTENSION = ".idx";
+    
+    private HostInformationStore hostInformationStore;
+    private FileStorageService<HostInformation> legacyHostInformationStorageService;
+    private HostResolver hostResolver;
+    private GeoLocationDatabase geoLocationDatabase;
+    private HostInformationRefresher hostInformationRefresher;
+    private ExecutorService locationExecutorService;
+    private HostReportScanner hostReportScanner;
+    private int maxPendingLookups;
+    private Map<String, IncrementalParse> incrementalParses = new HashMap<String, IncrementalParse>();
     
     public void initialise() throws Exception
     {
-        hostInformationStorageService = new FileStorageService<HostInformation>(
-                "storage/host_information/",
-                "storage/_temp/host_information/");
-        threadPoolCount = Integer.parseInt(ServerUtils.loadFromFile("config/geolocation.properties").get("geolocation_host_reporter_thread_pool", "5"));
+        hostInformationStore = new LogHostInformationStore(new File("storage/host_information.log"));
+        
+        // Host information stored by previous versions is migrated into the store as it is used
+        
+        if(new File(LEGACY_HOST_INFORMATION_DIRECTORY).isDirectory())
+        {
+            legacyHostInformationStorageService = new FileStorageService<HostInformation>(
+                    LEGACY_HOST_INFORMATION_DIRECTORY,
+                    "storage/_temp/host_information/");
+        }
+        
+        Attributes<String> properties = ServerUtils.loadFromFile("config/geolocation.properties");
+        geoLocationDatabase = new GeoLocationDatabase(new File(DATABASE_FILE), Integer.parseInt(properties.get("geolocation_database_cache_entries", "65536")));
+        hostResolver = new CachingHostResolver(createHostResolver(properties),
+                Long.parseLong(properties.get("geolocation_dns_negative_cache_seconds", "86400"))*1000L,
+                Integer.parseInt(properties.get("geolocation_dns_negative_cache_entries", "100000")));
+        maxPendingLookups = Math.max(1, Math.min(Integer.parseInt(properties.get("geolocation_max_pending_lookups", "2000")), hostResolver.getConcurrency()));
+        
+        AtomicInteger threadCount = new AtomicInteger();
+        
+        locationExecutorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory(){
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "geolocation-lookup-"+threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        
+        startHostInformationRefresher(properties);
+    }
+    
+    public void setHostReportScanner(HostReportScanner hostReportScanner)
+    {
+        this.hostReportScanner = hostReportScanner;
     }
     
     public DomainStats parseStats(String reportPath) throws Exception
     {
-        ExecutorService executorService = Executors.newFixedThreadPool(threadPoolCount);
+        return hostReportScanner.scan(reportPath, this);
+    }
+    
+    public HostReportAggregator createAggregator(String reportPath) throws Exception
+    {
+        IncrementalParse parse = getIncrementalParse(reportPath);
+        HostStateIndex.Builder hostStates = new HostStateIndex.Builder();
+        ConcurrentDomainStatsAccumulator accumulator = new ConcurrentDomainStatsAccumulator();
+        Semaphore completedLookups = new Semaphore(0);
         
-        DomainStats stats = new DomainStats();
-        ReentrantLock statsLock = new ReentrantLock();
+        return new HostReportAggregator(){
+            private int startedLookups;
+            
+            public void onRecord(HostReportRecord record) throws Exception
+            {
+                if(!record.hostEndsWith(AU_SUFFIX))
+                {
+                    return;
+                }
+                
+                long hash = HostStateIndex.hash(record.getHostBuffer(), record.getHostStart(), record.getHostLength());
+                long urlCount = record.getUrlCount();
+                long byteCount = record.getByteCount();
+                String state = parse.getCarriedOverState(hash);
+                
+                if(state!=null)
+                {
+                    accumulator.add(state, 1, urlCount, byteCount);
+                    hostStates.add(hash, state);
+                    return;
+                }
+                
+                String domain = record.getHost();
+                HostInformation information = loadHostInformation(domain);
+                
+                if(information!=null)
+                {
+                    hostInformationRefresher.recordHit(information);
+                    accumulator.add(information.getState(), 1, urlCount, byteCount);
+                    hostStates.add(hash, information.getState());
+                    return;
+                }
+                
+                hostInformationRefresher.recordMiss();
+                
+                // Blocks until there is room for another pending lookup in the whole parse
+                
+                parse.pendingLookups.acquire();
+                startedLookups++;
+                
+                lookUpHostInformation(domain).whenComplete(new BiConsumer<HostInformation, Throwable>(){
+                    public void accept(HostInformation information, Throwable e)
+                    {
+                        try
+                        {
+                            // Hosts whose lookup failed are counted as Unknown, and looked up again by the next parse
+                            
+                            if(e!=null)
+                            {
+                                accumulator.add(UNKNOWN, 1, urlCount, byteCount);
+                            }
+                            else
+                            {
+                                accumulator.add(information.getState(), 1, urlCount, byteCount);
+                                hostStates.add(hash, information.getState());
+                            }
+                        }
+                        finally
+                        {
+                            parse.pendingLookups.release();
+                            completedLookups.release();
+                        }
+                    }
+                });
+            }
+            
+            public DomainStats complete() throws Exception
+            {
+                // Wait for every lookup started by this aggregator to complete
+                
+                completedLookups.acquireUninterruptibly(startedLookups);
+                hostInformationStore.flush();
+                parse.hostStates.addAll(hostStates);
+                
+                return accumulator.toDomainStats();
+            }
+        };
+    }
+    
+    public void finishParse(String reportPath, boolean succeeded) throws Exception
+    {
+        IncrementalParse parse;
         
-        File database = new File("source_data/geolite/GeoLite2-City.mmdb");
-        TextFileReaderService service = new TextFileReaderService();
+        synchronized(incrementalParses)
+        {
+            parse = incrementalParses.remove(reportPath);
+        }
         
-        try(DatabaseReader reader = new DatabaseReader.Builder(database).build())
+        if(parse!=null && succeeded)
+        {
+            String reportId = HostReportFile.getReportId(new File(reportPath));
+            HostStateIndex index = parse.hostStates.build(parse.startTime);
+            index.write(new File(HOST_STATE_INDEX_DIRECTORY, reportId+HOST_STATE_INDEX_EXTENSION));
+            
+            ServerUtils.log("Indexed "+index.size()+" hosts of "+reportId+", "+parse.carriedOverCount.sum()+" carried over from "
+                    +(parse.previousReportId!=null?parse.previousReportId:"no previous report"));
+        }
+    }
+    
+    /**
+     * Starts an incremental parse of a report, or returns the one already started by another aggregator.
+     * 
+     * The state of hosts also in the most recent earlier report is carried over from its host state index, unless the host has been 
+     * looked up again since that index was built.
+     */
+    
+    private IncrementalParse getIncrementalParse(String reportPath)
+    {
+        synchronized(incrementalParses)
         {
-            service.iterateLines(reportPath, new TextFileLineReceiver(){
-                public void onLine(int index, String line) throws Exception
+            IncrementalParse parse = incrementalParses.get(reportPath);
+            
+            if(parse==null)
+            {
+                parse = new IncrementalParse(System.currentTimeMillis(), maxPendingLookups);
+                String reportId = HostReportFile.getReportId(new File(reportPath));
+                String[] indexFileNames = new File(HOST_STATE_INDEX_DIRECTORY).list();
+                
+                if(indexFileNames!=null)
                 {
-                    if(index==0)
-                    {
-                        return;
-                    }
-                    
-                    line = line.trim();
-                    
-                    if(line.isEmpty())
+                    for(String indexFileName: indexFileNames)
                     {
-                        return;
+                        String indexReportId = HostReportFile.getReportId(new File(indexFileName));
+                        
+                        if(indexFileName.endsWith(HOST_STATE_INDEX_EXTENSION) && indexReportId.compareTo(reportId)<0 
+                                && (parse.previousReportId==null || indexReportId.compareTo(parse.previousReportId)>0))
+                        {
+                            parse.previousReportId = indexReportId;
+                        }
                     }
-                    
-                    String[] hostEntrySplit = line.split("\\s+");
-                    String urlString = hostEntrySplit[2];
-                    
-                    if(!urlString.contains("://"))
-                    {
-                        urlString = "http://"+urlString;
-                    }
-                    
-                    URL url;
-                    
+                }
+                if(parse.previousReportId!=null)
+                {
                     try
                     {
-                        url = new URL(urlString);
+                        parse.previousHostStates = HostStateIndex.read(new File(HOST_STATE_INDEX_DIRECTORY, parse.previousReportId+HOST_STATE_INDEX_EXTENSION));
+                        
+                        for(HostInformation information: hostInformationStore.getLookedUpSince(parse.previousHostStates.getBuildTime()))
+                        {
+                            parse.updatedHostStates.put(HostStateIndex.hash(information.getHost()), information.getState());
+                        }
                     }
-                    catch(MalformedURLException e)
+                    catch(Exception e)
                     {
-                        //System.out.println("[MALFORMED] "+urlString);
-                        return;
+                        ServerUtils.log("Failed to read host state index of "+parse.previousReportId+", looking up every host: "+e);
+                        parse.previousReportId = null;
+                        parse.previousHostStates = null;
+                        parse.updatedHostStates.clear();
                     }
+                }
+                
+                incrementalParses.put(reportPath, parse);
+            }
+            
+            return parse;
+        }
+    }
+    
+    /**
+     * Looks up and locates a host. Hosts that were found, or definitely do not exist, are stored. 
+     * If the lookup failed or timed out the returned future completes exceptionally and nothing is stored.
+     */
+    
+    private CompletableFuture<HostInformation> lookUpHostInformation(String domain)
+    {
+        return hostResolver.resolve(domain).handleAsync(new BiFunction<InetAddress, Throwable, HostInformation>(){
+            public HostInformation apply(InetAddress address, Throwable e)
+            {
+                if(e instanceof CompletionException)
+                {
+                    e = e.getCause();
+                }
+                
+                if(e!=null && !(e instanceof HostNotFoundException))
+                {
+                    throw new CompletionException(e);
+                }
+                
+                HostInformation information = locateHost(domain, address);
+                
+                try
+                {
+                    hostInformationStore.store(information);
+                }
+                catch(Exception x)
+                {
+                    ServerUtils.log("Failed to store host information of "+domain+": "+x);
+                }
+                
+                return information;
+            }
+        }, locationExecutorService);
+    }
+    
+    private HostInformation locateHost(String domain, InetAddress address)
+    {
+        String ipAddress = "";
+        String stateName = UNKNOWN;
+        String cityName = UNKNOWN;
+        
+        if(address!=null)
+        {
+            try
+            {
+                ipAddress = address.getHostAddress();
+                GeoLocationRecord location = geoLocationDatabase.locate(address);
+                
+                if(location!=null)
+                {
+                    cityName = location.getCityName();
                     
-                    final String domain = url.getHost();
-                    long urlCount = Long.parseLong(hostEntrySplit[0]);
-                    long byteCount = Long.parseLong(hostEntrySplit[1]);
-                    
-                    if(!domain.endsWith(".au"))
+                    if(location.getCountryName()!=null)
                     {
-                        return;
+                        if(!location.getCountryName().equals("Australia"))
+                        {
+                            stateName = "Offshore";
+                        }
+                        else if(location.getSubdivisionName()!=null)
+                        {
+                            stateName = location.getSubdivisionName();
+                        }
                     }
-                    
-                    executorService.execute(new Runnable(){
-                       public void run()
-                       {
-                           String storableId = getStorableIdForDomain(domain);
-                           
-                           try
-                           {
-                               HostInformation information;
-                               
-                               try
-                               {
-                                   statsLock.lock();
-                                   
-                                   try
-                                   {
-                                       information = hostInformationStorageService.load(storableId);
-                                   }
-                                   finally
-                                   {
-                                       statsLock.unlock();
-                                   }
-                               }
-                               catch(StorableNotFoundException e)
-                               {
-                                   String ipAddress = "";
-                                   String stateName = "Unknown";
-                                   String cityName = "Unknown";
-                                   
-                                   try
-                                   {
-                                       InetAddress address = InetAddress.getByName(domain);
-                                       ipAddress = address.getHostAddress();
-                                       //System.out.println("Address is "+address);
-                                       CityResponse city = reader.city(address);
-                                       //System.out.println("City is "+city.getCity().getName());
-                                       
-                                       if(city!=null)
-                                       {
-                                           cityName = city.getCity().getName();
-                                           
-                                           if(city.getCountry()!=null && city.getCountry().getName()!=null)
-                                           {
-                                               if(!city.getCountry().getName().equals("Australia"))
-                                               {
-                                                   stateName = "Offshore";
-                                               }
-                                               else
-                                               {
-                                                   if(!city.getSubdivisions().isEmpty())
-                                                   {
-                                                       stateName = city.getSubdivisions().get(0).getName();
-                                                       //System.out.println("Location is "+stateName);
-                                                   }
-                                               }
-                                           }
-                                       }
-                                   }
-                                   catch(UnknownHostException x){}
-                                   catch(AddressNotFoundException x){}
-                                   
-                                   information = new HostInformation(domain, ipAddress, stateName, cityName);
-                                   statsLock.lock();
-                                   
-                                   try
-                                   {
-                                       hostInformationStorageService.store(storableId, information);
-                                   }
-                                   catch(Exception x)
-                                   {
-                                       System.out.println("BAD ID: "+storableId);
-                                       x.printStackTrace();
-                                   }
-                                   finally
-                                   {
-                                       statsLock.unlock();
-                                   }
-                               }
-                               
-                               statsLock.lock();
-                               
-                               try
-                               {
-                                   DomainStatsCounts counts = stats.getCategoryToCountsMap().get(information.getState());
-                                   
-                                   if(counts==null)
-                                   {
-                                       counts = new DomainStatsCounts();
-                                       stats.getCategoryToCountsMap().put(information.getState(), counts);
-                                   }
-                                   
-                                   counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__DOMAIN_COUNT, 1);
-                                   counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT, urlCount);
-                                   counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__MB_SIZE, Math.max(1, (byteCount/1024)/1024));
-                               }
-                               finally
-                               {
-                                   statsLock.unlock();
-                               }
-                           }
-                           catch(Exception e)
-                           {
-                               e.printStackTrace();
-                           }
-                       }
-                    });
                 }
-            });
+            }
+            catch(Exception x)
+            {
+                ServerUtils.log("Failed to locate "+domain+" ("+ipAddress+"): "+x);
+            }
+        }
+        
+        return new HostInformation(domain, ipAddress, stateName, cityName);
+    }
+    
+    private void startHostInformationRefresher(Attributes<String> properties) throws Exception
+    {
+        long day = 24L*60*60*1000;
+        
+        hostInformationRefresher = new HostInformationRefresher(hostInformationStore, new HostInformationLookup(){
+            public CompletableFuture<HostInformation> lookUp(String host)
+            {
+                return lookUpHostInformation(host);
+            }
+        },
+                Long.parseLong(properties.get("geolocation_refresh_max_age_days", "90"))*day,
+                Long.parseLong(properties.get("geolocation_refresh_unknown_max_age_days", "7"))*day,
+                Integer.parseInt(properties.get("geolocation_refresh_batch_size", "50")),
+                Long.parseLong(properties.get("geolocation_refresh_batch_pause_millis", "1000")),
+                Long.parseLong(properties.get("geolocation_refresh_interval_minutes", "60"))*60*1000,
+                hostResolver.getConcurrency());
+        
+        if(Boolean.parseBoolean(properties.get("geolocation_refresh_enabled", "true")))
+        {
+            hostInformationRefresher.start();
+        }
+    }
+    
+    private HostResolver createHostResolver(Attributes<String> properties) throws Exception
+    {
+        String resolver = properties.get("geolocation_dns_resolver", "system");
+        SystemHostResolver systemResolver = new SystemHostResolver(
+                Integer.parseInt(properties.get("geolocation_host_reporter_thread_pool", "5")),
+                Long.parseLong(properties.get("geolocation_system_lookup_timeout_millis", "0")));
+        
+        if(resolver.equals("system"))
+        {
+            return systemResolver;
+        }
+        if(resolver.equals("udp"))
+        {
+            String[] server = properties.get("geolocation_dns_server", "127.0.0.1:53").split(":");
             
-            executorService.shutdown();
-            executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            return new UdpHostResolver(
+                    new InetSocketAddress(server[0], server.length>1?Integer.parseInt(server[1]):53),
+                    Integer.parseInt(properties.get("geolocation_dns_concurrency", "500")),
+                    Long.parseLong(properties.get("geolocation_dns_query_timeout_millis", "5000")),
+                    systemResolver);
+        }
+        
+        systemResolver.close();
+        return (HostResolver)Class.forName(resolver).getDeclaredConstructor().newInstance();
+    }
+    
+    private HostInformation loadHostInformation(String domain) throws Exception
+    {
+        HostInformation information = hostInformationStore.load(domain);
+        
+        if(information==null && legacyHostInformationStorageService!=null)
+        {
+            try
+            {
+                information = legacyHostInformationStorageService.load(getStorableIdForDomain(domain));
+                
+                // Previous versions did not record when hosts were looked up, so migrated hosts count as looked up now
+                
+                if(information.getLookupTime()==0)
+                {
+                    information = new HostInformation(information.getHost(), information.getIpAddress(), information.getState(), information.getCity(), 
+                            System.currentTimeMillis());
+                }
+                
+                hostInformationStore.store(information);
+            }
+            catch(StorableNotFoundException e)
+            {
+                // Not looked up before
+            }
         }
         
-        return stats;
+        return information;
     }
     
     private String getStorableIdForDomain(String domain)
     {
         return domain.replace(".", "_");
     }
+    
+    /**
+     * The state of a parse of one report, shared by the aggregators of the parse, including the limit on the lookups pending at once 
+     * across every aggregator of the parse.
+     */
+    
+    private static class IncrementalParse
+    {
+        private String previousReportId;
+        private HostStateIndex previousHostStates;
+        private Map<Long, String> updatedHostStates = new HashMap<Long, String>();
+        private HostStateIndex.Builder hostStates = new HostStateIndex.Builder();
+        private LongAdder carriedOverCount = new LongAdder();
+        private Semaphore pendingLookups;
+        private long startTime;
+        
+        public IncrementalParse(long startTime, int maxPendingLookups)
+        {
+            this.startTime = startTime;
+            this.pendingLookups = new Semaphore(maxPendingLookups);
+        }
+        
+        /**
+         * @return      the state of a host carried over from the previous report, or null if the host must be looked up.
+         */
+        
+        public String getCarriedOverState(long hash)
+        {
+            if(previousHostStates==null)
+            {
+                return null;
+            }
+            
+            String state = updatedHostStates.get(hash);
+            
+            if(state==null)
+            {
+                state = previousHostStates.getState(hash);
+            }
+            if(state!=null)
+            {
+                carriedOverCount.increment();
+            }
+            
+            return state;
+        }
+    }
 }
@@ -0,0 +1,170 @@
+package odin.server.stats.parser.geo;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.maxmind.db.DatabaseRecord;
+import com.maxmind.db.Reader;
+
+import loki.server.util.ServerUtils;
+
+/**
+ * A long-lived, shared reader of the GeoLite2 City database, safe to use from multiple threads at once.
+ * 
+ * The database is memory-mapped, and is reopened when the database file is replaced. Locations are cached by network block (/24 for IPv4, /48 for IPv6) 
+ * when the database has a single location for the whole block, so hosts sharing a hosting block do not repeat the tree walk and decoding.
+ */
+
+public class GeoLocationDatabase
+{
+    private static final long RELOAD_CHECK_INTERVAL = 10*1000;
+    private static final int IPV4_BLOCK_PREFIX = 24;
+    private static final int IPV6_BLOCK_PREFIX = 48;
+    
+    // Cached for blocks that have no location in the database
+    
+    private static final GeoLocationRecord NOT_FOUND = new GeoLocationRecord(null, null, null);
+    
+    private File databaseFile;
+    private LinkedHashMap<Long, GeoLocationRecord> blockCache;
+    
+    private volatile Reader reader;
+    private volatile long lastModified = -1;
+    private volatile long lastReloadCheck;
+    
+    /**
+     * Opens the database. If the database file cannot be opened yet, it is opened once it can be.
+     * 
+     * @param databaseFile      The GeoLite2 City database file.
+     * @param cacheEntries      The maximum number of network blocks to cache the location of.
+     */
+    
+    public GeoLocationDatabase(File databaseFile, int cacheEntries)
+    {
+        this.databaseFile = databaseFile;
+        this.blockCache = new LinkedHashMap<Long, GeoLocationRecord>(16, 0.75f, true){
+            private static final long serialVersionUID = 1L;
+            
+            protected boolean removeEldestEntry(Map.Entry<Long, GeoLocationRecord> eldest)
+            {
+                return size()>cacheEntries;
+            }
+        };
+        
+        checkForReload();
+    }
+    
+    /**
+     * Finds the location of an address.
+     * 
+     * @param address       The address.
+     * @return              the location of the address, or null if the database has no location for it.
+     */
+    
+    public GeoLocationRecord locate(InetAddress address) throws IOException
+    {
+        checkForReload();
+        
+        Reader reader = this.reader;
+        
+        if(reader==null)
+        {
+            throw new IOException("Geolocation database not available: "+databaseFile);
+        }
+        
+        long blockKey = getBlockKey(address);
+        GeoLocationRecord location;
+        
+        synchronized(blockCache)
+        {
+            location = blockCache.get(blockKey);
+        }
+        
+        if(location==null)
+        {
+            DatabaseRecord<GeoLocationRecord> record = reader.getRecord(address, GeoLocationRecord.class);
+            location = record.getData()!=null?record.getData():NOT_FOUND;
+            
+            // Only cache the location if the database has the same location for every address in the block
+            
+            if(record.getNetwork().getPrefixLength()<=(address instanceof Inet4Address?IPV4_BLOCK_PREFIX:IPV6_BLOCK_PREFIX))
+            {
+                synchronized(blockCache)
+                {
+                    blockCache.put(blockKey, location);
+                }
+            }
+        }
+        
+        return location==NOT_FOUND?null:location;
+    }
+    
+    private void checkForReload()
+    {
+        long now = System.currentTimeMillis();
+        
+        if(now-lastReloadCheck<RELOAD_CHECK_INTERVAL)
+        {
+            return;
+        }
+        
+        synchronized(this)
+        {
+            if(now-lastReloadCheck<RELOAD_CHECK_INTERVAL)
+            {
+                return;
+            }
+            
+            lastReloadCheck = now;
+            
+            if(databaseFile.lastModified()!=lastModified)
+            {
+                try
+                {
+                    reload();
+                }
+                catch(IOException e)
+                {
+                    // The file may still be being written, so keep the current database and try again later
+                    
+                    ServerUtils.log("Failed to reload "+databaseFile+": "+e);
+                }
+            }
+        }
+    }
+    
+    private synchronized void reload() throws IOException
+    {
+        long modified = databaseFile.lastModified();
+        
+        // The previous reader is not closed, as lookups may still be using it. Its mapping is released once it is no longer referenced.
+        
+        reader = new Reader(databaseFile, Reader.FileMode.MEMORY_MAPPED);
+        lastModified = modified;
+        
+        synchronized(blockCache)
+        {
+            blockCache.clear();
+        }
+        
+        ServerUtils.log("Loaded "+databaseFile+" built "+reader.getMetadata().getBuildDate());
+    }
+    
+    private static long getBlockKey(InetAddress address)
+    {
+        byte[] bytes = address.getAddress();
+        int blockBytes = address instanceof Inet4Address?IPV4_BLOCK_PREFIX/8:IPV6_BLOCK_PREFIX/8;
+        long key = address instanceof Inet4Address?1:2;
+        
+        for(int i=0; i<blockBytes; i++)
+        {
+            key = (key<<8)|(bytes[i]&0xFF);
+        }
+        
+        return key;
+    }
+}
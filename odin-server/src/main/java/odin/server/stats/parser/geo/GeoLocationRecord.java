@@ -0,0 +1,78 @@
+package odin.server.stats.parser.geo;
+
+import java.util.List;
+import java.util.Map;
+
+import com.maxmind.db.MaxMindDbConstructor;
+import com.maxmind.db.MaxMindDbParameter;
+
+/**
+ * The parts of a GeoLite2 City database record used for geolocation. Only these are decoded, rather than a full CityResponse.
+ */
+
+public class GeoLocationRecord
+{
+    private static final String LOCALE = "en";
+    
+    private String countryName;
+    private String subdivisionName;
+    private String cityName;
+    
+    @MaxMindDbConstructor
+    public GeoLocationRecord(
+            @MaxMindDbParameter(name="country") NamedRecord country,
+            @MaxMindDbParameter(name="subdivisions") List<NamedRecord> subdivisions,
+            @MaxMindDbParameter(name="city") NamedRecord city)
+    {
+        this.countryName = country!=null?country.getName():null;
+        this.subdivisionName = subdivisions!=null && !subdivisions.isEmpty()?subdivisions.get(0).getName():null;
+        this.cityName = city!=null?city.getName():null;
+    }
+    
+    /**
+     * @return      the English name of the country, or null if not known.
+     */
+    
+    public String getCountryName()
+    {
+        return countryName;
+    }
+    
+    /**
+     * @return      the English name of the largest subdivision (the state, in Australia), or null if not known.
+     */
+    
+    public String getSubdivisionName()
+    {
+        return subdivisionName;
+    }
+    
+    /**
+     * @return      the English name of the city, or null if not known.
+     */
+    
+    public String getCityName()
+    {
+        return cityName;
+    }
+    
+    /**
+     * A country, subdivision or city, of which only the name is decoded.
+     */
+    
+    public static class NamedRecord
+    {
+        private String name;
+        
+        @MaxMindDbConstructor
+        public NamedRecord(@MaxMindDbParameter(name="names") Map<String, String> names)
+        {
+            this.name = names!=null?names.get(LOCALE):null;
+        }
+        
+        public String getName()
+        {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package odin.server.stats.parser.geo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The estimated state of every .au host of one hosts report, indexed by a 64 bit hash of the host name.
+ * 
+ * Each host is a single long in a sorted array: the top 56 bits of the hash of its name, and in the low 8 bits the index of its state in a small 
+ * table of state names. Even a report with millions of hosts is indexed in a few tens of megabytes, and can be searched without creating any objects.
+ */
+
+public class HostStateIndex
+{
+    private static final int MAGIC = 0x4F485331; // OHS1
+    
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    
+    private static final long HASH_MASK = ~0xFFL;
+    
+    private long buildTime;
+    private long[] entries;
+    private String[] states;
+    
+    private HostStateIndex(long buildTime, long[] entries, String[] states)
+    {
+        this.buildTime = buildTime;
+        this.entries = entries;
+        this.states = states;
+    }
+    
+    /**
+     * @return      the time at which the host information the index was built from was current.
+     */
+    
+    public long getBuildTime()
+    {
+        return buildTime;
+    }
+    
+    /**
+     * @return      the number of hosts in the index.
+     */
+    
+    public int size()
+    {
+        return entries.length;
+    }
+    
+    /**
+     * @param hash      The hash of the host name, from {@link #hash(byte[], int, int)}.
+     * @return          the state of the host, or null if the host is not in the index.
+     */
+    
+    public String getState(long hash)
+    {
+        long key = hash&HASH_MASK;
+        int index = Arrays.binarySearch(entries, key);
+        
+        if(index<0)
+        {
+            index = -index-1;
+        }
+        
+        return (index<entries.length && (entries[index]&HASH_MASK)==key)?states[(int)(entries[index]&0xFF)]:null;
+    }
+    
+    /**
+     * Writes the index to a file, replacing it atomically.
+     * 
+     * @param file      The file.
+     */
+    
+    public void write(File file) throws IOException
+    {
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getPath()+".tmp");
+        
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1024*64)))
+        {
+            out.writeInt(MAGIC);
+            out.writeLong(buildTime);
+            out.writeInt(states.length);
+            
+            for(String state: states)
+            {
+                out.writeUTF(state);
+            }
+            
+            out.writeInt(entries.length);
+            
+            for(long entry: entries)
+            {
+                out.writeLong(entry);
+            }
+        }
+        
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * Reads an index written by {@link #write(File)}.
+     * 
+     * @param file      The file.
+     * @return          the index.
+     */
+    
+    public static HostStateIndex read(File file) throws IOException
+    {
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1024*64)))
+        {
+            if(in.readInt()!=MAGIC)
+            {
+                throw new IOException("Not a host state index: "+file);
+            }
+            
+            long buildTime = in.readLong();
+            String[] states = new String[in.readInt()];
+            
+            for(int i=0; i<states.length; i++)
+            {
+                states[i] = in.readUTF();
+            }
+            
+            long[] entries = new long[in.readInt()];
+            
+            for(int i=0; i<entries.length; i++)
+            {
+                entries[i] = in.readLong();
+            }
+            
+            return new HostStateIndex(buildTime, entries, states);
+        }
+    }
+    
+    /**
+     * Hashes a host name (64 bit FNV-1a of its UTF-8 encoding).
+     * 
+     * @param buffer    The buffer holding the UTF-8 encoded host name.
+     * @param start     The start of the host name in the buffer.
+     * @param length    The length of the host name in bytes.
+     * @return          the hash.
+     */
+    
+    public static long hash(byte[] buffer, int start, int length)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        
+        for(int i=start; i<start+length; i++)
+        {
+            hash = (hash^(buffer[i]&0xFF))*FNV_PRIME;
+        }
+        
+        return hash;
+    }
+    
+    /**
+     * Hashes a host name, giving the same hash as {@link #hash(byte[], int, int)} of its UTF-8 encoding.
+     * 
+     * @param host      The host name.
+     * @return          the hash.
+     */
+    
+    public static long hash(String host)
+    {
+        byte[] bytes = host.getBytes(StandardCharsets.UTF_8);
+        return hash(bytes, 0, bytes.length);
+    }
+    
+    /**
+     * Collects the states of hosts to build an index. Safe to use from multiple threads at once.
+     */
+    
+    public static class Builder
+    {
+        private long[] hashes = new long[1024];
+        private String[] hostStates = new String[1024];
+        private int size;
+        
+        /**
+         * Adds a host to the index.
+         * 
+         * @param hash      The hash of the host name.
+         * @param state     The state of the host.
+         */
+        
+        public synchronized void add(long hash, String state)
+        {
+            if(size==hashes.length)
+            {
+                hashes = Arrays.copyOf(hashes, size*2);
+                hostStates = Arrays.copyOf(hostStates, size*2);
+            }
+            
+            hashes[size] = hash;
+            hostStates[size] = state==null?"":state;
+            size++;
+        }
+        
+        /**
+         * Adds every host of another builder to the index.
+         * 
+         * @param builder   The other builder.
+         */
+        
+        public void addAll(Builder builder)
+        {
+            synchronized(builder)
+            {
+                for(int i=0; i<builder.size; i++)
+                {
+                    add(builder.hashes[i], builder.hostStates[i]);
+                }
+            }
+        }
+        
+        /**
+         * @param buildTime     The time at which the host information the index is built from was current.
+         * @return              the index of every host added. If a host was added more than once, one of its states is used.
+         */
+        
+        public synchronized HostStateIndex build(long buildTime) throws IOException
+        {
+            Map<String, Integer> stateIndexMap = new HashMap<String, Integer>();
+            List<String> states = new ArrayList<String>();
+            long[] entries = new long[size];
+            
+            for(int i=0; i<size; i++)
+            {
+                Integer stateIndex = stateIndexMap.get(hostStates[i]);
+                
+                if(stateIndex==null)
+                {
+                    if(states.size()==256)
+                    {
+                        throw new IOException("Too many states to index");
+                    }
+                    
+                    stateIndex = states.size();
+                    stateIndexMap.put(hostStates[i], stateIndex);
+                    states.add(hostStates[i]);
+                }
+                
+                entries[i] = (hashes[i]&HASH_MASK)|stateIndex;
+            }
+            
+            Arrays.sort(entries);
+            
+            // Drops hosts added more than once
+            
+            int count = 0;
+            
+            for(int i=0; i<entries.length; i++)
+            {
+                if(count==0 || (entries[count-1]&HASH_MASK)!=(entries[i]&HASH_MASK))
+                {
+                    entries[count++] = entries[i];
+                }
+            }
+            
+            return new HostStateIndex(buildTime, Arrays.copyOf(entries, count), states.toArray(new String[states.size()]));
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package odin.server.stats.parser.mime;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import loki.server.text.TextFileLineReceiver;
 import loki.server.text.TextFileReaderService;
 import odin.server.stats.parser.HostReportStatsParser;
+import odin.server.stats.parser.ReloadableDocumentTable;
+import odin.server.stats.parser.ReportTokenizer;
 import odin.stats.DomainStats;
 import odin.stats.DomainStatsConstants;
 import odin.stats.DomainStatsCounts;
@@ -13,55 +20,64 @@ import odin.stats.DomainStatsCounts;
  * Parses stats for the by_mime_types category.
  * Categories include generic groupings of mime types (such as audio, video, etc as specified in documents/mime_type_groups.txt) 
  * from the harvest mime types report associated with the specified hosts report.
+ * The mime type documents are loaded once, and reloaded if they change.
  */
 
 public class ByMimeTypeHostReportStatsParser implements HostReportStatsParser
 {
-    public void initialise() throws Exception
-    {
-        // Nothing to initialise
-    }
+    private static final String GROUPS_DOCUMENT = "documents/mime_type_groups.txt";
     
-    public DomainStats parseStats(String reportPath) throws Exception
+    private ReloadableDocumentTable<Map<String, String>> mimeTypeToGroupTable;
+    
+    public void initialise() throws Exception
     {
-        reportPath = reportPath.replace("harvest_host_reports", "harvest_mime_reports");
-        DomainStats stats = new DomainStats();
-        TextFileReaderService service = new TextFileReaderService();
-        
-        HashMap<String, String> mimeTypeToGroupMap = new HashMap<String, String>();
-        
-        service.iterateLines("documents/mime_type_groups.txt", new TextFileLineReceiver(){
-            public void onLine(int index, String line) throws Exception
+        mimeTypeToGroupTable = new ReloadableDocumentTable<Map<String, String>>(){
+            protected Map<String, String> load(List<File> sourceFiles) throws Exception
             {
-                String group = line.trim();
+                TextFileReaderService service = new TextFileReaderService();
+                HashMap<String, String> mimeTypeToGroupMap = new HashMap<String, String>();
+                sourceFiles.add(new File(GROUPS_DOCUMENT));
                 
-                service.iterateLines("documents/mime_types__"+group+".txt", new TextFileLineReceiver(){
+                service.iterateLines(GROUPS_DOCUMENT, new TextFileLineReceiver(){
                     public void onLine(int index, String line) throws Exception
                     {
-                        mimeTypeToGroupMap.put(line.trim(), group);
+                        String group = line.trim();
+                        String groupDocument = "documents/mime_types__"+group+".txt";
+                        sourceFiles.add(new File(groupDocument));
+                        
+                        service.iterateLines(groupDocument, new TextFileLineReceiver(){
+                            public void onLine(int index, String line) throws Exception
+                            {
+                                mimeTypeToGroupMap.put(line.trim(), group);
+                            }
+                        });
                     }
                 });
+                
+                return Collections.unmodifiableMap(mimeTypeToGroupMap);
             }
-        });
+        };
+        mimeTypeToGroupTable.get();
+    }
+    
+    public DomainStats parseStats(String reportPath) throws Exception
+    {
+        reportPath = reportPath.replace("harvest_host_reports", "harvest_mime_reports");
+        DomainStats stats = new DomainStats();
+        Map<String, String> mimeTypeToGroupMap = mimeTypeToGroupTable.get();
         
-        service.iterateLines(reportPath, new TextFileLineReceiver(){
-            public void onLine(int index, String line) throws Exception
+        try(ReportTokenizer tokenizer = new ReportTokenizer(new FileInputStream(reportPath), 3))
+        {
+            while(tokenizer.nextLine())
             {
-                if(index==0)
-                {
-                    return;
-                }
+                // Skip the header line, blank lines, and incomplete lines
                 
-                line = line.trim();
-                
-                if(line.isEmpty())
+                if(tokenizer.getLineIndex()==0 || tokenizer.getFieldCount()<3)
                 {
-                    return;
+                    continue;
                 }
                 
-                String[] entrySplit = line.split("\\s+");
-                String mime = entrySplit[2].trim();
-                
+                String mime = tokenizer.getString(2);
                 String group = mimeTypeToGroupMap.get(mime);
                 
                 if(group==null)
@@ -69,8 +85,8 @@ public class ByMimeTypeHostReportStatsParser implements HostReportStatsParser
                     group = "miscellaneous";
                 }
                 
-                long urlCount = Long.parseLong(entrySplit[0]);
-                long byteCount = Long.parseLong(entrySplit[1]);
+                long urlCount = tokenizer.getLong(0);
+                long byteCount = tokenizer.getLong(1);
                 
                 DomainStatsCounts counts = stats.getCategoryToCountsMap().get(group);
                 
@@ -80,11 +96,10 @@ public class ByMimeTypeHostReportStatsParser implements HostReportStatsParser
                     stats.getCategoryToCountsMap().put(group, counts);
                 }
                 
-                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__DOMAIN_COUNT, 0);
-                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT, urlCount);
-                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE__MB_SIZE, Math.max(1, (byteCount/1024)/1024));
+                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, urlCount);
+                counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE, Math.max(1, (byteCount/1024)/1024));
             }
-        });
+        }
         
         return stats;
     }
@@ -0,0 +1,49 @@
+package odin.server.stats.rollup;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import odin.stats.DomainStats;
+import thor.Storable;
+
+/**
+ * The statistics of a category summed over some of the months of a period, along with the source fingerprint of each month summed,
+ * so that a month can be added to or replaced in a rollup, and a rollup can be recognised as incomplete once a report of the period is added, replaced or removed.
+ */
+
+public class DomainStatsRollup implements Storable
+{
+    private static final long serialVersionUID = 2L;
+    
+    private DomainStats stats;
+    private HashMap<String, String> reportFingerprints;
+    
+    /**
+     * @param stats                 The summed statistics.
+     * @param reportFingerprints    The source fingerprint of each month summed, keyed by report ID.
+     */
+    
+    public DomainStatsRollup(DomainStats stats, Map<String, String> reportFingerprints)
+    {
+        this.stats = stats;
+        this.reportFingerprints = new HashMap<String, String>(reportFingerprints);
+    }
+    
+    /**
+     * @return      the summed statistics.
+     */
+    
+    public DomainStats getStats()
+    {
+        return stats;
+    }
+    
+    /**
+     * @return      the source fingerprint of each month summed, keyed by report ID.
+     */
+    
+    public Map<String, String> getReportFingerprints()
+    {
+        return reportFingerprints;
+    }
+}
@@ -0,0 +1,19 @@
+package odin.server.stats.rollup;
+
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+
+/**
+ * Provides the monthly statistics that rollups are summed from.
+ */
+
+public interface MonthlyStatsSource
+{
+    /**
+     * @param category      The category of statistics.
+     * @param report        The report file of the month.
+     * @return              the statistics of the category for the month.
+     */
+    
+    public DomainStats getDomainStats(String category, HostReportFile report) throws Exception;
+}
@@ -0,0 +1,338 @@
+package odin.server.stats.rollup;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import loki.StringPair;
+import loki.server.util.ServerUtils;
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import thor.storage.StorableNotFoundException;
+import thor.storage.file.FileStorageService;
+import thor.util.LockService;
+import thor.util.LockedTask;
+
+/**
+ * Maintains quarterly, yearly and all-time rollups of the monthly statistics of each category, stored alongside the monthly statistics.
+ * 
+ * A rollup is summed from the monthly statistics of its period the first time it is requested, and stored along with the source fingerprint of each month summed. 
+ * When a month is parsed its statistics are added to the stored rollups that include it, replacing the statistics it was parsed from before, so a rollup is not 
+ * summed again after each ingest. A stored rollup is used for as long as it holds the months of the current report files of its period; otherwise it is summed 
+ * again, the all-time rollup from the yearly rollups. Rollups are summed outside of their locks, so a month being parsed for a sum does not hold up the ingest of another month.
+ */
+
+public class StatsRollupService
+{
+    private static final String[] ROLLUP_RESOLUTIONS = {DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER, DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL};
+    
+    private MonthlyStatsSource monthlyStatsSource;
+    private LockService lockService;
+    private HashMap<String, FileStorageService<DomainStatsRollup>> rollupStorageServices;
+    
+    /**
+     * @param monthlyStatsSource    Provides the monthly statistics that rollups are summed from.
+     * @param lockService           The lock service used to prevent the same rollup being updated twice at once.
+     */
+    
+    public StatsRollupService(MonthlyStatsSource monthlyStatsSource, LockService lockService)
+    {
+        this(monthlyStatsSource, lockService, "storage/stats/rollups/", "storage/_temp/stats/rollups/");
+    }
+    
+    /**
+     * @param monthlyStatsSource    Provides the monthly statistics that rollups are summed from.
+     * @param lockService           The lock service used to prevent the same rollup being updated twice at once.
+     * @param directory             The directory in which the rollups of each category are stored.
+     * @param tempDirectory         The temporary directory used while storing rollups.
+     */
+    
+    public StatsRollupService(MonthlyStatsSource monthlyStatsSource, LockService lockService, String directory, String tempDirectory)
+    {
+        this.monthlyStatsSource = monthlyStatsSource;
+        this.lockService = lockService;
+        this.rollupStorageServices = new HashMap<String, FileStorageService<DomainStatsRollup>>();
+        
+        for(StringPair category: DomainStatsConstants.STATS_VIEW_CATEGORIES)
+        {
+            rollupStorageServices.put(category.getKey(), new FileStorageService<DomainStatsRollup>(
+                    directory+category.getKey()+"/",
+                    tempDirectory+category.getKey()+"/"));
+        }
+    }
+    
+    /**
+     * Groups report files into the periods of a resolution.
+     * 
+     * @param resolution    The resolution, one of the resolutions specified in {@link odin.stats.DomainStatsConstants} other than months.
+     * @param reports       The report files, in order of time.
+     * @return              the report files of each period, keyed by period ID, in order of time.
+     */
+    
+    public static LinkedHashMap<String, List<HostReportFile>> groupByPeriod(String resolution, List<HostReportFile> reports)
+    {
+        LinkedHashMap<String, List<HostReportFile>> periods = new LinkedHashMap<String, List<HostReportFile>>();
+        
+        for(HostReportFile report: reports)
+        {
+            String periodId = getPeriodId(resolution, report.getTime());
+            List<HostReportFile> periodReports = periods.get(periodId);
+            
+            if(periodReports==null)
+            {
+                periodReports = new ArrayList<HostReportFile>();
+                periods.put(periodId, periodReports);
+            }
+            
+            periodReports.add(report);
+        }
+        
+        return periods;
+    }
+    
+    /**
+     * Gets the statistics of a category for a period. If the report files provided are every report file of the period, the stored rollup 
+     * of the period is used (and summed first if it is missing or incomplete); otherwise the monthly statistics of the report files provided are summed.
+     * 
+     * @param category          The category of statistics.
+     * @param resolution        The resolution of the period.
+     * @param periodId          The ID of the period, from {@link #groupByPeriod(String, List)}.
+     * @param reports           The report files to sum, in order of time.
+     * @param periodReports     Every report file of the period, in order of time.
+     * @return                  the statistics.
+     */
+    
+    public DomainStats getPeriodStats(String category, String resolution, String periodId, List<HostReportFile> reports, List<HostReportFile> periodReports) throws Exception
+    {
+        if(!reports.equals(periodReports))
+        {
+            return sumMonths(category, reports);
+        }
+        
+        String id = resolution+"__"+periodId;
+        HashMap<String, String> fingerprints = new HashMap<String, String>();
+        
+        for(HostReportFile report: periodReports)
+        {
+            fingerprints.put(report.getId(), report.getSourceFingerprint(category));
+        }
+        
+        DomainStatsRollup rollup = loadRollup(category, id);
+        
+        if(rollup!=null && rollup.getReportFingerprints().equals(fingerprints))
+        {
+            return rollup.getStats();
+        }
+        
+        DomainStats stats;
+        
+        if(resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL))
+        {
+            // The all-time rollup is summed from the yearly rollups
+            
+            stats = new DomainStats();
+            
+            for(Map.Entry<String, List<HostReportFile>> year: groupByPeriod(DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, periodReports).entrySet())
+            {
+                stats.add(getPeriodStats(category, DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, year.getKey(), year.getValue(), year.getValue()));
+            }
+        }
+        else
+        {
+            stats = sumMonths(category, periodReports);
+        }
+        
+        DomainStatsRollup summedRollup = new DomainStatsRollup(stats, fingerprints);
+        
+        lockService.runLockedTask(getLockKey(category, id), new LockedTask<Void>(){
+            public Void execute() throws Exception
+            {
+                // Unless the months parsed while summing have brought the stored rollup up to date already
+                
+                DomainStatsRollup storedRollup = loadRollup(category, id);
+                
+                if(storedRollup==null || !storedRollup.getReportFingerprints().equals(fingerprints))
+                {
+                    rollupStorageServices.get(category).store(id, summedRollup);
+                }
+                
+                return null;
+            }
+        });
+        
+        return stats;
+    }
+    
+    /**
+     * Adds the statistics of a month to the stored rollups that include it, such as once the month has been parsed, replacing the statistics of the month 
+     * that were stored before. Rollups that are not stored yet are left to be summed when they are first requested.
+     * 
+     * @param category              The category of statistics.
+     * @param report                The report file of the month.
+     * @param stats                 The statistics of the month.
+     * @param previousStats         The statistics that were stored for the month before, or null if none were stored.
+     * @param previousFingerprint   The source fingerprint of the previous statistics, or null if none were stored or it is not known.
+     */
+    
+    public void addMonth(String category, HostReportFile report, DomainStats stats, DomainStats previousStats, String previousFingerprint) throws Exception
+    {
+        String fingerprint = report.getSourceFingerprint(category);
+        
+        for(String resolution: ROLLUP_RESOLUTIONS)
+        {
+            String id = resolution+"__"+getPeriodId(resolution, report.getTime());
+            
+            lockService.runLockedTask(getLockKey(category, id), new LockedTask<Void>(){
+                public Void execute() throws Exception
+                {
+                    DomainStatsRollup rollup = loadRollup(category, id);
+                    
+                    if(rollup==null)
+                    {
+                        return null;
+                    }
+                    
+                    String summedFingerprint = rollup.getReportFingerprints().get(report.getId());
+                    
+                    if(fingerprint.equals(summedFingerprint))
+                    {
+                        return null;
+                    }
+                    if(summedFingerprint!=null)
+                    {
+                        if(previousStats!=null && summedFingerprint.equals(previousFingerprint))
+                        {
+                            rollup.getStats().subtract(previousStats);
+                        }
+                        else
+                        {
+                            // The month was summed from statistics that are no longer known, so it cannot be taken out; the rollup holds only this 
+                            // month until it is summed again
+                            
+                            rollup = new DomainStatsRollup(new DomainStats(), new HashMap<String, String>());
+                        }
+                    }
+                    
+                    rollup.getStats().add(stats);
+                    rollup.getReportFingerprints().put(report.getId(), fingerprint);
+                    rollupStorageServices.get(category).store(id, rollup);
+                    return null;
+                }
+            });
+        }
+    }
+    
+    private DomainStatsRollup loadRollup(String category, String id)
+    {
+        try
+        {
+            return rollupStorageServices.get(category).load(id);
+        }
+        catch(StorableNotFoundException e)
+        {
+            // Not summed yet
+            
+            return null;
+        }
+        catch(Exception e)
+        {
+            // Such as a rollup stored by an earlier version, which is summed again
+            
+            ServerUtils.log("Error loading rollup "+id+" of "+category+", summing it again: "+e);
+            return null;
+        }
+    }
+    
+    private static String getLockKey(String category, String id)
+    {
+        return "rollup__"+category+"__"+id;
+    }
+    
+    private DomainStats sumMonths(String category, List<HostReportFile> reports) throws Exception
+    {
+        DomainStats stats = new DomainStats();
+        
+        for(HostReportFile report: reports)
+        {
+            stats.add(monthlyStatsSource.getDomainStats(category, report));
+        }
+        
+        return stats;
+    }
+    
+    /**
+     * Gets the start of the period of a resolution that a time falls in.
+     * 
+     * @param resolution    The resolution, one of the resolutions specified in {@link odin.stats.DomainStatsConstants} other than months.
+     * @param time          The time.
+     * @return              the start of the period, or the time itself for the all-time period.
+     */
+    
+    public static long getPeriodStart(String resolution, long time)
+    {
+        if(resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL))
+        {
+            return time;
+        }
+        
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int year = calendar.get(Calendar.YEAR);
+        int month = resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER)?(calendar.get(Calendar.MONTH)/3*3):(Calendar.JANUARY);
+        
+        calendar.clear();
+        calendar.set(year, month, 1);
+        return calendar.getTimeInMillis();
+    }
+    
+    /**
+     * Gets the end of the period of a resolution that a time falls in.
+     * 
+     * @param resolution    The resolution, one of the resolutions specified in {@link odin.stats.DomainStatsConstants} other than months.
+     * @param time          The time.
+     * @return              the last millisecond of the period, or Long.MAX_VALUE for the all-time period.
+     */
+    
+    public static long getPeriodEnd(String resolution, long time)
+    {
+        if(resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL))
+        {
+            return Long.MAX_VALUE;
+        }
+        
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(getPeriodStart(resolution, time));
+        calendar.add(Calendar.MONTH, resolution.equals(DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER)?(3):(12));
+        return calendar.getTimeInMillis()-1;
+    }
+    
+    private static String getPeriodId(String resolution, long time)
+    {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        
+        switch(resolution)
+        {
+            case DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER:
+            {
+                return calendar.get(Calendar.YEAR)+"_Q"+(calendar.get(Calendar.MONTH)/3+1);
+            }
+            case DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR:
+            {
+                return String.valueOf(calendar.get(Calendar.YEAR));
+            }
+            case DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL:
+            {
+                return "all";
+            }
+            default:
+            {
+                throw new IllegalArgumentException("Resolution ["+resolution+"] not supported.");
+            }
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package odin.server.stats.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+
+/**
+ * Encodes and decodes DomainStats in a compact, versioned binary format, which is much faster to read than Java serialization.
+ * 
+ * The format is a header (a magic number, a version, flags and the length of the body), followed by a body that may be compressed with deflate.
+ * The body is a dictionary of the count types and of the category keys, followed by a column of counts for each count type.
+ * Each column holds a varint per category, in dictionary order, and is prefixed with its length in bytes, so the columns of other count types
+ * can be skipped when only one count type is decoded. Count types are recorded by key, so stored statistics remain readable if count types are added or reordered.
+ */
+
+public class DomainStatsCodec
+{
+    private static final int MAGIC = 0x4F445331; // ODS1
+    private static final int VERSION = 1;
+    private static final int FLAG_COMPRESSED = 1;
+    
+    private boolean compress;
+    
+    /**
+     * @param compress      Whether to compress the body of encoded statistics.
+     */
+    
+    public DomainStatsCodec(boolean compress)
+    {
+        this.compress = compress;
+    }
+    
+    /**
+     * Encodes the statistics.
+     * 
+     * @param stats     The statistics.
+     * @return          the encoded statistics.
+     */
+    
+    public byte[] encode(DomainStats stats)
+    {
+        byte[] body = encodeBody(stats);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length+16);
+        out.write(MAGIC>>>24);
+        out.write(MAGIC>>>16);
+        out.write(MAGIC>>>8);
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(compress?FLAG_COMPRESSED:0);
+        writeVarint(out, body.length);
+        
+        if(compress)
+        {
+            // Favour decoding speed over size
+            
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            
+            try
+            {
+                deflater.setInput(body);
+                deflater.finish();
+                byte[] buffer = new byte[1024*64];
+                
+                while(!deflater.finished())
+                {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+        }
+        else
+        {
+            out.write(body, 0, body.length);
+        }
+        
+        return out.toByteArray();
+    }
+    
+    /**
+     * Decodes statistics.
+     * 
+     * @param data      The encoded statistics.
+     * @return          the statistics.
+     */
+    
+    public DomainStats decode(byte[] data) throws IOException
+    {
+        return decode(data, -1);
+    }
+    
+    /**
+     * Decodes statistics, decoding only the counts of a single count type. The counts of the other count types are 0.
+     * 
+     * @param data          The encoded statistics.
+     * @param typeIndex     The index of the count type to decode, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, or -1 to decode every count type.
+     * @return              the statistics.
+     */
+    
+    public DomainStats decode(byte[] data, int typeIndex) throws IOException
+    {
+        return decode(ByteBuffer.wrap(data), typeIndex);
+    }
+    
+    /**
+     * Decodes statistics from the remaining bytes of a buffer, such as a slice of a memory mapped file, decoding only the counts of a single count type. 
+     * The counts of the other count types are 0.
+     * 
+     * @param buffer        The encoded statistics, from the position to the limit of the buffer. The position of the buffer is changed.
+     * @param typeIndex     The index of the count type to decode, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, or -1 to decode every count type.
+     * @return              the statistics.
+     */
+    
+    public DomainStats decode(ByteBuffer buffer, int typeIndex) throws IOException
+    {
+        if(buffer.remaining()<6 || buffer.getInt()!=MAGIC)
+        {
+            throw new IOException("Not encoded statistics.");
+        }
+        
+        Cursor cursor = new Cursor(buffer);
+        int version = cursor.readByte();
+        
+        if(version!=VERSION)
+        {
+            throw new IOException("Encoded statistics version ["+version+"] not supported.");
+        }
+        
+        int flags = cursor.readByte();
+        int bodyLength = (int)cursor.readVarint();
+        
+        if((flags & FLAG_COMPRESSED)!=0)
+        {
+            byte[] body = new byte[bodyLength];
+            Inflater inflater = new Inflater();
+            
+            try
+            {
+                inflater.setInput(buffer);
+                int length = 0;
+                
+                while(length<bodyLength)
+                {
+                    int inflated = inflater.inflate(body, length, bodyLength-length);
+                    
+                    if(inflated==0 && (inflater.finished() || inflater.needsInput()))
+                    {
+                        throw new IOException("Truncated statistics.");
+                    }
+                    
+                    length = length+inflated;
+                }
+            }
+            catch(DataFormatException e)
+            {
+                throw new IOException("Corrupt statistics.", e);
+            }
+            finally
+            {
+                inflater.end();
+            }
+            
+            cursor = new Cursor(ByteBuffer.wrap(body));
+        }
+        
+        return decodeBody(cursor, typeIndex);
+    }
+    
+    private byte[] encodeBody(DomainStats stats)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(stats.getCategoryToCountsMap().size()*24+64);
+        
+        // Dictionary
+        
+        writeVarint(out, DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length);
+        
+        for(int i=0; i<DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length; i++)
+        {
+            writeString(out, DomainStatsConstants.STATS_VIEW_COUNT_TYPES[i].getKey());
+        }
+        
+        List<DomainStatsCounts> countsList = new ArrayList<DomainStatsCounts>(stats.getCategoryToCountsMap().size());
+        writeVarint(out, stats.getCategoryToCountsMap().size());
+        
+        for(Map.Entry<String, DomainStatsCounts> entry: stats.getCategoryToCountsMap().entrySet())
+        {
+            writeString(out, entry.getKey());
+            countsList.add(entry.getValue());
+        }
+        
+        // Columns
+        
+        ByteArrayOutputStream column = new ByteArrayOutputStream(countsList.size()*2+16);
+        
+        for(int i=0; i<DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length; i++)
+        {
+            column.reset();
+            
+            for(DomainStatsCounts counts: countsList)
+            {
+                writeVarint(column, counts.getCount(i));
+            }
+            
+            byte[] columnBytes = column.toByteArray();
+            writeVarint(out, columnBytes.length);
+            out.write(columnBytes, 0, columnBytes.length);
+        }
+        
+        return out.toByteArray();
+    }
+    
+    private DomainStats decodeBody(Cursor cursor, int typeIndex) throws IOException
+    {
+        // Map the stored count types onto the current count types
+        
+        int typeCount = (int)cursor.readVarint();
+        int[] typeIndexes = new int[typeCount];
+        
+        for(int i=0; i<typeCount; i++)
+        {
+            typeIndexes[i] = DomainStatsConstants.getCountTypeIndex(cursor.readString());
+        }
+        
+        int categoryCount = (int)cursor.readVarint();
+        DomainStats stats = new DomainStats();
+        HashMap<String, DomainStatsCounts> categoryToCountsMap = stats.getCategoryToCountsMap();
+        DomainStatsCounts[] countsArray = new DomainStatsCounts[categoryCount];
+        
+        for(int i=0; i<categoryCount; i++)
+        {
+            countsArray[i] = new DomainStatsCounts();
+            categoryToCountsMap.put(cursor.readString(), countsArray[i]);
+        }
+        
+        for(int i=0; i<typeCount; i++)
+        {
+            int columnLength = (int)cursor.readVarint();
+            
+            if(typeIndexes[i]<0 || (typeIndex>=0 && typeIndexes[i]!=typeIndex))
+            {
+                cursor.skip(columnLength);
+                continue;
+            }
+            
+            for(int c=0; c<categoryCount; c++)
+            {
+                countsArray[c].increment(typeIndexes[i], cursor.readVarint());
+            }
+        }
+        
+        return stats;
+    }
+    
+    private static void writeString(ByteArrayOutputStream out, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+    
+    private static void writeVarint(ByteArrayOutputStream out, long value)
+    {
+        // Zigzag encoded, so that any negative counts remain small
+        
+        value = (value<<1)^(value>>63);
+        
+        while((value & ~0x7FL)!=0)
+        {
+            out.write((int)((value & 0x7F) | 0x80));
+            value = value>>>7;
+        }
+        
+        out.write((int)value);
+    }
+    
+    private static class Cursor
+    {
+        private ByteBuffer buffer;
+        
+        private Cursor(ByteBuffer buffer)
+        {
+            this.buffer = buffer;
+        }
+        
+        private int readByte() throws IOException
+        {
+            if(!buffer.hasRemaining())
+            {
+                throw new IOException("Truncated statistics.");
+            }
+            
+            return buffer.get() & 0xFF;
+        }
+        
+        private long readVarint() throws IOException
+        {
+            long value = 0;
+            
+            for(int shift=0; shift<64; shift=shift+7)
+            {
+                int b = readByte();
+                value = value | ((long)(b & 0x7F)<<shift);
+                
+                if((b & 0x80)==0)
+                {
+                    return (value>>>1)^-(value & 1);
+                }
+            }
+            
+            throw new IOException("Corrupt statistics.");
+        }
+        
+        private String readString() throws IOException
+        {
+            int length = (int)readVarint();
+            
+            if(buffer.hasArray())
+            {
+                skip(length);
+                return new String(buffer.array(), buffer.arrayOffset()+buffer.position()-length, length, StandardCharsets.UTF_8);
+            }
+            if(length<0 || length>buffer.remaining())
+            {
+                throw new IOException("Truncated statistics.");
+            }
+            
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        
+        private void skip(int length) throws IOException
+        {
+            if(length<0 || length>buffer.remaining())
+            {
+                throw new IOException("Truncated statistics.");
+            }
+            
+            buffer.position(buffer.position()+length);
+        }
+    }
+}
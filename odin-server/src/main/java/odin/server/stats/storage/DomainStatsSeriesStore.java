@@ -0,0 +1,385 @@
+package odin.server.stats.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import loki.server.util.ServerUtils;
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+
+/**
+ * Stores the statistics of every month of a category in a single file, so a whole series can be loaded by memory mapping
+ * the statistics of each month from one file, rather than by opening a file per month.
+ * 
+ * The file holds the statistics of each month, encoded by a {@link DomainStatsCodec}, followed by an index footer giving the report,
+ * report file fingerprint, offset and length of each month, and a trailer pointing to the footer. Months are appended after the last footer
+ * with a new footer, so existing bytes are never changed and the file can be read while a month is appended. Replaced months leave their
+ * earlier statistics behind, and the file is compacted when more than half of it is no longer referenced.
+ * 
+ * The file is a copy of the monthly statistics held for faster reading. Statistics are only returned for a report if the report file is unchanged
+ * since they were stored, and a file that cannot be read (such as after a crash while appending) is discarded, to be filled again from the monthly statistics.
+ */
+
+public class DomainStatsSeriesStore
+{
+    private static final int MAGIC = 0x4F445353; // ODSS
+    private static final int TRAILER_MAGIC = 0x4F445354; // ODST
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 5;
+    private static final int TRAILER_LENGTH = 12;
+    
+    private File file;
+    private DomainStatsCodec codec;
+    private HashMap<String, Entry> entries;
+    private long length;
+    private boolean opened;
+    
+    /**
+     * @param file      The series file. The file is created when the first month is stored.
+     * @param codec     The codec used to encode the statistics of each month.
+     */
+    
+    public DomainStatsSeriesStore(File file, DomainStatsCodec codec)
+    {
+        this.file = file;
+        this.codec = codec;
+        this.entries = new HashMap<String, Entry>();
+    }
+    
+    /**
+     * Loads the stored statistics of the reports provided.
+     * 
+     * @param reports       The current snapshots of the report files.
+     * @return              the statistics, keyed by report ID, of every report that has statistics stored from an unchanged report file.
+     */
+    
+    public Map<String, DomainStats> load(List<HostReportFile> reports) throws IOException
+    {
+        List<Entry> matchedEntries = new ArrayList<Entry>(reports.size());
+        List<MappedByteBuffer> buffers = new ArrayList<MappedByteBuffer>(reports.size());
+        
+        synchronized(this)
+        {
+            open();
+            
+            for(HostReportFile report: reports)
+            {
+                Entry entry = entries.get(report.getId());
+                
+                if(entry!=null && entry.fingerprint.equals(report.getFingerprint()))
+                {
+                    matchedEntries.add(entry);
+                }
+            }
+            
+            if(matchedEntries.isEmpty())
+            {
+                return Collections.emptyMap();
+            }
+            
+            // Only the statistics of each month are mapped, so the file can grow beyond the 2GB limit of a single mapping. The mappings remain valid 
+            // if the file is compacted (and so replaced) while the statistics are decoded
+            
+            try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+            {
+                for(Entry entry: matchedEntries)
+                {
+                    buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.length));
+                }
+            }
+        }
+        
+        HashMap<String, DomainStats> statsMap = new HashMap<String, DomainStats>();
+        
+        for(int i=0; i<matchedEntries.size(); i++)
+        {
+            statsMap.put(matchedEntries.get(i).reportId, codec.decode(buffers.get(i), -1));
+        }
+        
+        return statsMap;
+    }
+    
+    /**
+     * @param report        The current snapshot of a report file.
+     * @return              true if statistics are stored for the report from the same report file.
+     */
+    
+    public synchronized boolean contains(HostReportFile report)
+    {
+        open();
+        Entry entry = entries.get(report.getId());
+        return entry!=null && entry.fingerprint.equals(report.getFingerprint());
+    }
+    
+    /**
+     * Stores the statistics of a month, replacing any statistics already stored for the same report.
+     * 
+     * @param report        The snapshot of the report file the statistics were generated from.
+     * @param stats         The statistics.
+     */
+    
+    public synchronized void store(HostReportFile report, DomainStats stats) throws IOException
+    {
+        open();
+        
+        byte[] encodedStats = codec.encode(stats);
+        Entry previousEntry = null;
+        createParentDirectory();
+        
+        try
+        {
+            try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+            {
+                if(length==0)
+                {
+                    writeFully(channel, ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).put((byte)VERSION).flip(), 0);
+                    length = HEADER_LENGTH;
+                }
+                
+                previousEntry = entries.put(report.getId(), new Entry(report.getId(), report.getFingerprint(), length, encodedStats.length));
+                writeFully(channel, ByteBuffer.wrap(encodedStats), length);
+                length = length+encodedStats.length;
+                length = writeFooter(channel, length);
+            }
+        }
+        catch(IOException e)
+        {
+            // Discard the file, rather than risk it being read with a partial footer
+            
+            entries.clear();
+            length = 0;
+            file.delete();
+            throw e;
+        }
+        
+        if(previousEntry!=null && getUnreferencedLength()>length/2)
+        {
+            compact();
+        }
+    }
+    
+    private void open()
+    {
+        if(opened)
+        {
+            return;
+        }
+        
+        opened = true;
+        
+        if(!file.exists())
+        {
+            return;
+        }
+        
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            readFooter(channel);
+        }
+        catch(IOException | RuntimeException e)
+        {
+            ServerUtils.log("Discarding unreadable statistics series file "+file+": "+e.getMessage());
+            entries.clear();
+            length = 0;
+            file.delete();
+        }
+    }
+    
+    private void readFooter(FileChannel channel) throws IOException
+    {
+        long fileLength = channel.size();
+        
+        if(fileLength<HEADER_LENGTH+TRAILER_LENGTH)
+        {
+            throw new IOException("Truncated file.");
+        }
+        
+        ByteBuffer header = readFully(channel, 0, HEADER_LENGTH);
+        
+        if(header.getInt()!=MAGIC || header.get()!=VERSION)
+        {
+            throw new IOException("Not a statistics series file.");
+        }
+        
+        ByteBuffer trailer = readFully(channel, fileLength-TRAILER_LENGTH, TRAILER_LENGTH);
+        long footerOffset = trailer.getLong();
+        
+        if(trailer.getInt()!=TRAILER_MAGIC || footerOffset<HEADER_LENGTH || footerOffset>fileLength-TRAILER_LENGTH)
+        {
+            throw new IOException("Missing footer.");
+        }
+        
+        ByteBuffer footer = readFully(channel, footerOffset, (int)(fileLength-TRAILER_LENGTH-footerOffset));
+        int entryCount = footer.getInt();
+        
+        for(int i=0; i<entryCount; i++)
+        {
+            Entry entry = new Entry(readString(footer), readString(footer), footer.getLong(), footer.getInt());
+            
+            if(entry.offset<HEADER_LENGTH || entry.offset+entry.length>footerOffset)
+            {
+                throw new IOException("Corrupt footer.");
+            }
+            
+            entries.put(entry.reportId, entry);
+        }
+        
+        length = fileLength;
+    }
+    
+    private long writeFooter(FileChannel channel, long footerOffset) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size()*64+TRAILER_LENGTH);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(entries.size());
+        
+        for(Entry entry: entries.values())
+        {
+            writeString(out, entry.reportId);
+            writeString(out, entry.fingerprint);
+            out.writeLong(entry.offset);
+            out.writeInt(entry.length);
+        }
+        
+        out.writeLong(footerOffset);
+        out.writeInt(TRAILER_MAGIC);
+        out.flush();
+        
+        writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), footerOffset);
+        return footerOffset+bytes.size();
+    }
+    
+    private void createParentDirectory()
+    {
+        if(file.getParentFile()!=null)
+        {
+            file.getParentFile().mkdirs();
+        }
+    }
+    
+    private void compact() throws IOException
+    {
+        // Copies the statistics that are still referenced into a new file, which replaces the current file
+        
+        File tempFile = new File(file.getParentFile(), file.getName()+".compacting");
+        HashMap<String, Entry> compactedEntries = new HashMap<String, Entry>();
+        long compactedLength = HEADER_LENGTH;
+        createParentDirectory();
+        
+        try
+        {
+            try(FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                FileChannel target = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+            {
+                writeFully(target, ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).put((byte)VERSION).flip(), 0);
+                
+                for(Entry entry: entries.values())
+                {
+                    writeFully(target, readFully(source, entry.offset, entry.length), compactedLength);
+                    compactedEntries.put(entry.reportId, new Entry(entry.reportId, entry.fingerprint, compactedLength, entry.length));
+                    compactedLength = compactedLength+entry.length;
+                }
+                
+                HashMap<String, Entry> currentEntries = entries;
+                entries = compactedEntries;
+                
+                try
+                {
+                    compactedLength = writeFooter(target, compactedLength);
+                }
+                finally
+                {
+                    entries = currentEntries;
+                }
+            }
+            
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            tempFile.delete();
+        }
+        
+        entries = compactedEntries;
+        length = compactedLength;
+    }
+    
+    private long getUnreferencedLength()
+    {
+        long referencedLength = HEADER_LENGTH;
+        
+        for(Entry entry: entries.values())
+        {
+            referencedLength = referencedLength+entry.length;
+        }
+        
+        return length-referencedLength;
+    }
+    
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer, position+buffer.position())<0)
+            {
+                throw new IOException("Truncated file.");
+            }
+        }
+        
+        return buffer.flip();
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while(buffer.hasRemaining())
+        {
+            channel.write(buffer, position+buffer.position());
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private static class Entry
+    {
+        private String reportId;
+        private String fingerprint;
+        private long offset;
+        private int length;
+        
+        private Entry(String reportId, String fingerprint, long offset, int length)
+        {
+            this.reportId = reportId;
+            this.fingerprint = fingerprint;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package odin.server.stats.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+
+import odin.stats.DomainStats;
+import thor.storage.StorableNotFoundException;
+import thor.storage.file.FileStorageService;
+
+/**
+ * Stores the DomainStats of each report of a category as files encoded by a {@link DomainStatsCodec}.
+ * 
+ * Each file also holds the fingerprint of the report file the statistics were generated from, so statistics of a report file that has since been
+ * replaced (such as while the server was down) are not mistaken for the statistics of the current report file.
+ * 
+ * Statistics stored by earlier versions (with Java serialization, through a FileStorageService) are still read, and are stored again in the encoded format
+ * the first time they are loaded. The earlier files are left in place. They hold no fingerprint, so they are assumed to be from the current report file.
+ */
+
+public class DomainStatsStore
+{
+    private static final String FILE_EXTENSION = ".stats";
+    private static final int MAGIC = 0x4F44534D; // ODSM
+    
+    private File directory;
+    private File tempDirectory;
+    private DomainStatsCodec codec;
+    private FileStorageService<DomainStats> legacyStorageService;
+    
+    /**
+     * @param directory                 The directory the encoded statistics are stored in.
+     * @param tempDirectory             The directory encoded statistics are written to before they are moved into place.
+     * @param compress                  Whether to compress the encoded statistics.
+     * @param legacyStorageService      The storage service that statistics were stored with by earlier versions.
+     */
+    
+    public DomainStatsStore(String directory, String tempDirectory, boolean compress, FileStorageService<DomainStats> legacyStorageService)
+    {
+        this.directory = new File(directory);
+        this.tempDirectory = new File(tempDirectory);
+        this.codec = new DomainStatsCodec(compress);
+        this.legacyStorageService = legacyStorageService;
+    }
+    
+    /**
+     * Loads the statistics of a report, if they were generated from the current report file.
+     * 
+     * @param id            The report ID.
+     * @param fingerprint   The fingerprint of the current report file.
+     * @return              the statistics, or null if no statistics are stored for the report, or they were generated from a different report file.
+     */
+    
+    public DomainStats load(String id, String fingerprint) throws Exception
+    {
+        return load(id, fingerprint, -1);
+    }
+    
+    /**
+     * Loads the statistics of a report, if they were generated from the current report file, decoding only the counts of a single count type.
+     * The counts of the other count types may be 0.
+     * 
+     * @param id            The report ID.
+     * @param fingerprint   The fingerprint of the current report file.
+     * @param typeIndex     The index of the count type to decode, such as DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, or -1 to decode every count type.
+     * @return              the statistics, or null if no statistics are stored for the report, or they were generated from a different report file.
+     */
+    
+    public DomainStats load(String id, String fingerprint, int typeIndex) throws Exception
+    {
+        StoredStats storedStats = loadStored(id, typeIndex);
+        
+        if(storedStats==null)
+        {
+            return null;
+        }
+        if(storedStats.getFingerprint()==null)
+        {
+            // Stored by an earlier version
+            
+            store(id, fingerprint, storedStats.getStats());
+            return storedStats.getStats();
+        }
+        
+        return storedStats.getFingerprint().equals(fingerprint)?(storedStats.getStats()):(null);
+    }
+    
+    /**
+     * Stores the statistics of a report, replacing any statistics already stored for it.
+     * 
+     * @param id            The report ID.
+     * @param fingerprint   The fingerprint of the report file the statistics were generated from.
+     * @param stats         The statistics.
+     */
+    
+    public void store(String id, String fingerprint, DomainStats stats) throws IOException
+    {
+        directory.mkdirs();
+        tempDirectory.mkdirs();
+        
+        byte[] encodedFingerprint = fingerprint.getBytes(StandardCharsets.UTF_8);
+        byte[] encodedStats = codec.encode(stats);
+        ByteBuffer buffer = ByteBuffer.allocate(6+encodedFingerprint.length+encodedStats.length);
+        buffer.putInt(MAGIC).putShort((short)encodedFingerprint.length).put(encodedFingerprint).put(encodedStats);
+        
+        File tempFile = File.createTempFile(id+"_", FILE_EXTENSION, tempDirectory);
+        
+        try
+        {
+            Files.write(tempFile.toPath(), buffer.array());
+            Files.move(tempFile.toPath(), getFile(id).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally
+        {
+            tempFile.delete();
+        }
+    }
+    
+    /**
+     * Loads the statistics stored for a report, whichever report file they were generated from, such as to find the statistics that new statistics replace.
+     * 
+     * @param id            The report ID.
+     * @return              the stored statistics, or null if no statistics are stored for the report.
+     */
+    
+    public StoredStats loadStored(String id) throws Exception
+    {
+        return loadStored(id, -1);
+    }
+    
+    private StoredStats loadStored(String id, int typeIndex) throws Exception
+    {
+        ByteBuffer buffer;
+        
+        try
+        {
+            buffer = ByteBuffer.wrap(Files.readAllBytes(getFile(id).toPath()));
+        }
+        catch(NoSuchFileException e)
+        {
+            // Not stored yet, or stored by an earlier version
+            
+            try
+            {
+                return new StoredStats(legacyStorageService.load(id), null);
+            }
+            catch(StorableNotFoundException x)
+            {
+                return null;
+            }
+        }
+        
+        if(buffer.remaining()<6 || buffer.getInt()!=MAGIC)
+        {
+            // Not in this format, so generated again
+            
+            return null;
+        }
+        
+        byte[] encodedFingerprint = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(encodedFingerprint);
+        return new StoredStats(codec.decode(buffer.slice(), typeIndex), new String(encodedFingerprint, StandardCharsets.UTF_8));
+    }
+    
+    private File getFile(String id)
+    {
+        return new File(directory, id+FILE_EXTENSION);
+    }
+    
+    /**
+     * Stored statistics, and the fingerprint of the report file they were generated from.
+     */
+    
+    public static class StoredStats
+    {
+        private DomainStats stats;
+        private String fingerprint;
+        
+        private StoredStats(DomainStats stats, String fingerprint)
+        {
+            this.stats = stats;
+            this.fingerprint = fingerprint;
+        }
+        
+        /**
+         * @return      the statistics.
+         */
+        
+        public DomainStats getStats()
+        {
+            return stats;
+        }
+        
+        /**
+         * @return      the fingerprint of the report file the statistics were generated from, or null if they were stored by an earlier version.
+         */
+        
+        public String getFingerprint()
+        {
+            return fingerprint;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package odin.server.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the choice and pace of the lookups made by a {@link HostInformationRefresher}.
+ */
+
+public class HostInformationRefresherTest
+{
+    private static final long DAY = 24L*60*60*1000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private ExecutorService executor;
+    private LogHostInformationStore store;
+    private List<String> lookedUpHosts;
+    private AtomicInteger pendingLookups;
+    private AtomicInteger maxPendingLookups;
+    
+    @Before
+    public void createStore() throws Exception
+    {
+        executor = Executors.newFixedThreadPool(8);
+        store = new LogHostInformationStore(new File(folder.getRoot(), "host_information.log"));
+        lookedUpHosts = new CopyOnWriteArrayList<String>();
+        pendingLookups = new AtomicInteger();
+        maxPendingLookups = new AtomicInteger();
+    }
+    
+    @After
+    public void closeStore() throws Exception
+    {
+        executor.shutdownNow();
+        store.close();
+    }
+    
+    @Test
+    public void looksUpOnlyStaleHosts() throws Exception
+    {
+        long now = System.currentTimeMillis();
+        store.store(new HostInformation("fresh.gov.au", "1.1.1.1", "Victoria", "Melbourne", now-DAY));
+        store.store(new HostInformation("stale.gov.au", "2.2.2.2", "Victoria", "Melbourne", now-100*DAY));
+        store.store(new HostInformation("unknown.gov.au", "3.3.3.3", "Unknown", "Unknown", now-10*DAY));
+        
+        // Such as a host migrated before lookup times were recorded
+        
+        store.store(new HostInformation("migrated.gov.au", "4.4.4.4", "Victoria", "Melbourne", 0L));
+        
+        createRefresher(50, 50).refresh();
+        assertEquals(2, lookedUpHosts.size());
+        assertTrue(lookedUpHosts.contains("stale.gov.au"));
+        assertTrue(lookedUpHosts.contains("unknown.gov.au"));
+    }
+    
+    @Test
+    public void limitsTheLookupsPendingAtOnce() throws Exception
+    {
+        for(int i=0; i<40; i++)
+        {
+            store.store(new HostInformation("host"+i+".gov.au", "10.0.0."+i, "Victoria", "Melbourne", 1L));
+        }
+        
+        HostInformationRefresher refresher = createRefresher(20, 3);
+        refresher.refresh();
+        assertEquals(40, lookedUpHosts.size());
+        assertEquals(40, refresher.getRefreshCount());
+        assertTrue(String.valueOf(maxPendingLookups.get()), maxPendingLookups.get()<=3);
+    }
+    
+    private HostInformationRefresher createRefresher(int batchSize, int maxPendingLookups)
+    {
+        return new HostInformationRefresher(store, new HostInformationLookup(){
+            public CompletableFuture<HostInformation> lookUp(String host)
+            {
+                lookedUpHosts.add(host);
+                int pending = pendingLookups.incrementAndGet();
+                
+                synchronized(HostInformationRefresherTest.this)
+                {
+                    HostInformationRefresherTest.this.maxPendingLookups.set(Math.max(pending, HostInformationRefresherTest.this.maxPendingLookups.get()));
+                }
+                
+                return CompletableFuture.supplyAsync(new Supplier<HostInformation>(){
+                    public HostInformation get()
+                    {
+                        try
+                        {
+                            Thread.sleep(5);
+                        }
+                        catch(InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        }
+                        
+                        pendingLookups.decrementAndGet();
+                        return new HostInformation(host, "10.0.0.1", "Victoria", "Melbourne");
+                    }
+                }, executor);
+            }
+        }, 90*DAY, 7*DAY, batchSize, 0L, 60000L, maxPendingLookups);
+    }
+}
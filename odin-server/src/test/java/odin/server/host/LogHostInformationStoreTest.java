@@ -0,0 +1,177 @@
+package odin.server.host;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the storage of host information in the log of a {@link LogHostInformationStore}.
+ */
+
+public class LogHostInformationStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File logFile;
+    
+    @Before
+    public void createLogFile()
+    {
+        logFile = new File(folder.getRoot(), "host_information/host_information.log");
+    }
+    
+    @Test
+    public void reopensAfterAPartiallyWrittenEntry() throws Exception
+    {
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            store.store(new HostInformation("www.abs.gov.au", "1.2.3.4", "Australian Capital Territory", "Canberra", 1000L));
+            store.store(new HostInformation("www.nla.gov.au", "5.6.7.8", "Australian Capital Territory", "Canberra", 2000L));
+        }
+        
+        // Such as after a crash while an entry was appended
+        
+        try(DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile, true)))
+        {
+            out.write(1);
+            out.writeUTF("www.partial.gov.au");
+            out.writeShort(20);
+            out.write(new byte[]{'1', '0', '.'});
+        }
+        
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            assertEquals(2, store.size());
+            assertNull(store.load("www.partial.gov.au"));
+            assertHost(store, "www.nla.gov.au", "5.6.7.8", "Australian Capital Territory", "Canberra", 2000L);
+            store.store(new HostInformation("www.sa.gov.au", "9.9.9.9", "South Australia", "Adelaide", 3000L));
+        }
+        
+        // The partial entry is dropped, so entries appended after it are read
+        
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            assertEquals(3, store.size());
+            assertHost(store, "www.abs.gov.au", "1.2.3.4", "Australian Capital Territory", "Canberra", 1000L);
+            assertHost(store, "www.sa.gov.au", "9.9.9.9", "South Australia", "Adelaide", 3000L);
+        }
+    }
+    
+    @Test
+    public void readsTheLatestEntryOfEachHost() throws Exception
+    {
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            store.store(new HostInformation("www.abs.gov.au", "1.2.3.4", "Unknown", "Unknown", 1000L));
+            store.store(new HostInformation("www.nla.gov.au", "5.6.7.8", "Australian Capital Territory", "Canberra", 1500L));
+            store.store(new HostInformation("www.abs.gov.au", "1.2.3.5", "Australian Capital Territory", "Canberra", 2000L));
+            assertHost(store, "www.abs.gov.au", "1.2.3.5", "Australian Capital Territory", "Canberra", 2000L);
+        }
+        
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            assertEquals(2, store.size());
+            assertHost(store, "www.abs.gov.au", "1.2.3.5", "Australian Capital Territory", "Canberra", 2000L);
+            assertHost(store, "www.nla.gov.au", "5.6.7.8", "Australian Capital Territory", "Canberra", 1500L);
+        }
+    }
+    
+    @Test
+    public void compactsWithoutChangingContent() throws Exception
+    {
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            for(int i=0; i<200; i++)
+            {
+                for(int host=0; host<10; host++)
+                {
+                    store.store(new HostInformation("host"+host+".gov.au", "10.0.0."+host, (host%2==0)?("Victoria"):("Unknown"), "City "+i, i*10L+host));
+                }
+            }
+        }
+        
+        long length = logFile.length();
+        
+        // Superseded entries are dropped when the store is opened
+        
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            assertTrue(logFile.length()<length/100);
+            assertCompactedHosts(store);
+        }
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            assertCompactedHosts(store);
+        }
+    }
+    
+    @Test
+    public void findsTheHostsLookedUpSinceATime() throws Exception
+    {
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            store.store(new HostInformation("www.abs.gov.au", "1.2.3.4", "Australian Capital Territory", "Canberra", 1000L));
+            store.store(new HostInformation("www.nla.gov.au", "5.6.7.8", "Australian Capital Territory", "Canberra", 2000L));
+            store.store(new HostInformation("www.sa.gov.au", "9.9.9.9", "South Australia", "Adelaide", 3000L));
+            assertEquals(Arrays.asList("www.nla.gov.au", "www.sa.gov.au"), getHosts(store.getLookedUpSince(2000L)));
+            
+            // A host looked up again is found by its latest lookup only
+            
+            store.store(new HostInformation("www.abs.gov.au", "1.2.3.5", "Australian Capital Territory", "Canberra", 4000L));
+            store.store(new HostInformation("www.sa.gov.au", "9.9.9.8", "South Australia", "Adelaide", 3000L));
+            assertEquals(Arrays.asList("www.sa.gov.au", "www.abs.gov.au"), getHosts(store.getLookedUpSince(2500L)));
+            assertEquals("9.9.9.8", store.getLookedUpSince(2500L).iterator().next().getIpAddress());
+        }
+        
+        try(LogHostInformationStore store = new LogHostInformationStore(logFile))
+        {
+            assertEquals(Arrays.asList("www.nla.gov.au", "www.sa.gov.au", "www.abs.gov.au"), getHosts(store.getLookedUpSince(1500L)));
+            assertEquals(0, store.getLookedUpSince(4001L).size());
+        }
+    }
+    
+    private static List<String> getHosts(Iterable<HostInformation> informations)
+    {
+        List<String> hosts = new ArrayList<String>();
+        
+        for(HostInformation information: informations)
+        {
+            hosts.add(information.getHost());
+        }
+        
+        return hosts;
+    }
+    
+    private static void assertCompactedHosts(LogHostInformationStore store) throws Exception
+    {
+        assertEquals(10, store.size());
+        
+        for(int host=0; host<10; host++)
+        {
+            assertHost(store, "host"+host+".gov.au", "10.0.0."+host, (host%2==0)?("Victoria"):("Unknown"), "City 199", 1990L+host);
+        }
+    }
+    
+    private static void assertHost(HostInformationStore store, String host, String ipAddress, String state, String city, long lookupTime) throws Exception
+    {
+        HostInformation information = store.load(host);
+        assertEquals(host, information.getHost());
+        assertEquals(ipAddress, information.getIpAddress());
+        assertEquals(state, information.getState());
+        assertEquals(city, information.getCity());
+        assertEquals(lookupTime, information.getLookupTime());
+    }
+}
@@ -0,0 +1,163 @@
+package odin.server.host.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Tests the deduplication and negative caching of lookups by a {@link CachingHostResolver}.
+ */
+
+public class CachingHostResolverTest
+{
+    @Test
+    public void sharesConcurrentLookupsOfAHost() throws Exception
+    {
+        StubHostResolver stubResolver = new StubHostResolver();
+        CachingHostResolver resolver = new CachingHostResolver(stubResolver, 60000, 100);
+        
+        CompletableFuture<InetAddress> future = resolver.resolve("www.abs.gov.au");
+        assertSame(future, resolver.resolve("www.abs.gov.au"));
+        resolver.resolve("www.nla.gov.au");
+        assertEquals(2, stubResolver.lookups.size());
+        
+        InetAddress address = InetAddress.getByAddress("www.abs.gov.au", new byte[]{1, 2, 3, 4});
+        stubResolver.lookups.get(0).complete(address);
+        assertSame(address, future.get(10, TimeUnit.SECONDS));
+        
+        // Found hosts are not cached, so they are looked up again
+        
+        resolver.resolve("www.abs.gov.au");
+        assertEquals(3, stubResolver.lookups.size());
+        assertEquals("www.abs.gov.au", stubResolver.hosts.get(2));
+    }
+    
+    @Test
+    public void remembersHostsNotFoundUntilTheyExpire() throws Exception
+    {
+        StubHostResolver stubResolver = new StubHostResolver();
+        CachingHostResolver resolver = new CachingHostResolver(stubResolver, 200, 100);
+        
+        CompletableFuture<InetAddress> future = resolver.resolve("missing.gov.au");
+        stubResolver.lookups.get(0).completeExceptionally(new HostNotFoundException("missing.gov.au"));
+        assertFailure(future, HostNotFoundException.class);
+        
+        assertFailure(resolver.resolve("missing.gov.au"), HostNotFoundException.class);
+        assertEquals(1, stubResolver.lookups.size());
+        
+        Thread.sleep(300);
+        resolver.resolve("missing.gov.au");
+        assertEquals(2, stubResolver.lookups.size());
+    }
+    
+    @Test
+    public void forgetsTheOldestHostsNotFoundBeyondTheLimit() throws Exception
+    {
+        StubHostResolver stubResolver = new StubHostResolver();
+        CachingHostResolver resolver = new CachingHostResolver(stubResolver, 60000, 2);
+        
+        for(String host: new String[]{"a.gov.au", "b.gov.au", "c.gov.au"})
+        {
+            CompletableFuture<InetAddress> future = resolver.resolve(host);
+            stubResolver.lookups.get(stubResolver.lookups.size()-1).completeExceptionally(new HostNotFoundException(host));
+            assertFailure(future, HostNotFoundException.class);
+        }
+        
+        assertFailure(resolver.resolve("b.gov.au"), HostNotFoundException.class);
+        assertFailure(resolver.resolve("c.gov.au"), HostNotFoundException.class);
+        assertEquals(3, stubResolver.lookups.size());
+        
+        resolver.resolve("a.gov.au");
+        assertEquals(4, stubResolver.lookups.size());
+        assertEquals("a.gov.au", stubResolver.hosts.get(3));
+    }
+    
+    @Test
+    public void passesOnOtherFailuresWithoutCachingThem() throws Exception
+    {
+        StubHostResolver stubResolver = new StubHostResolver();
+        CachingHostResolver resolver = new CachingHostResolver(stubResolver, 60000, 100);
+        
+        CompletableFuture<InetAddress> future = resolver.resolve("slow.gov.au");
+        stubResolver.lookups.get(0).completeExceptionally(new IOException("Timed out."));
+        assertFailure(future, IOException.class);
+        
+        // Failed lookups are tried again
+        
+        resolver.resolve("slow.gov.au");
+        assertEquals(2, stubResolver.lookups.size());
+        
+        // Including when the wrapped resolver fails to start a lookup
+        
+        stubResolver.rejectLookups = true;
+        assertFailure(resolver.resolve("rejected.gov.au"), IllegalStateException.class);
+        stubResolver.rejectLookups = false;
+        resolver.resolve("rejected.gov.au");
+        assertEquals(3, stubResolver.lookups.size());
+    }
+    
+    @Test
+    public void reportsTheConcurrencyOfTheWrappedResolver() throws Exception
+    {
+        assertEquals(StubHostResolver.CONCURRENCY, new CachingHostResolver(new StubHostResolver(), 60000, 100).getConcurrency());
+    }
+    
+    private static void assertFailure(CompletableFuture<InetAddress> future, Class<? extends Exception> exceptionClass) throws Exception
+    {
+        try
+        {
+            future.get(10, TimeUnit.SECONDS);
+            fail("The lookup succeeded.");
+        }
+        catch(ExecutionException e)
+        {
+            assertTrue(e.getCause().toString(), exceptionClass.isInstance(e.getCause()));
+        }
+    }
+    
+    /**
+     * Records each lookup, leaving the test to complete it.
+     */
+    
+    private static class StubHostResolver implements HostResolver
+    {
+        private static final int CONCURRENCY = 17;
+        
+        private List<String> hosts = new ArrayList<String>();
+        private List<CompletableFuture<InetAddress>> lookups = new ArrayList<CompletableFuture<InetAddress>>();
+        private boolean rejectLookups;
+        
+        public synchronized CompletableFuture<InetAddress> resolve(String host)
+        {
+            if(rejectLookups)
+            {
+                throw new IllegalStateException("Resolver closed.");
+            }
+            
+            CompletableFuture<InetAddress> future = new CompletableFuture<InetAddress>();
+            hosts.add(host);
+            lookups.add(future);
+            return future;
+        }
+        
+        public int getConcurrency()
+        {
+            return CONCURRENCY;
+        }
+        
+        public void close()
+        {
+        }
+    }
+}
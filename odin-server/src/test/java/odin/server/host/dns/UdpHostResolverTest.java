@@ -0,0 +1,174 @@
+package odin.server.host.dns;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the handling of DNS responses by a {@link UdpHostResolver}, against a DNS server on the loopback address.
+ */
+
+public class UdpHostResolverTest
+{
+    private static final byte[] IPV4_ADDRESS = {1, 2, 3, 4};
+    private static final byte[] IPV6_ADDRESS = {0x20, 0x01, 0x0D, (byte)0xB8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1};
+    
+    private DatagramSocket serverSocket;
+    private Thread serverThread;
+    private List<String> fallbackHosts;
+    private UdpHostResolver resolver;
+    
+    @Before
+    public void startServer() throws Exception
+    {
+        serverSocket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        serverThread = new Thread(new Runnable(){
+            public void run()
+            {
+                serve();
+            }
+        }, "test-dns-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        
+        fallbackHosts = new CopyOnWriteArrayList<String>();
+        resolver = new UdpHostResolver((InetSocketAddress)serverSocket.getLocalSocketAddress(), 10, 5000, new HostResolver(){
+            public CompletableFuture<InetAddress> resolve(String host)
+            {
+                fallbackHosts.add(host);
+                
+                try
+                {
+                    return CompletableFuture.completedFuture(InetAddress.getByAddress(host, IPV6_ADDRESS));
+                }
+                catch(Exception e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+            
+            public void close()
+            {
+            }
+        });
+    }
+    
+    @After
+    public void stopServer() throws Exception
+    {
+        resolver.close();
+        serverSocket.close();
+    }
+    
+    @Test
+    public void resolvesIPv4Addresses() throws Exception
+    {
+        assertArrayEquals(IPV4_ADDRESS, resolver.resolve("www.ipv4.gov.au").get(10, TimeUnit.SECONDS).getAddress());
+        assertTrue(fallbackHosts.isEmpty());
+    }
+    
+    @Test
+    public void resolvesHostsWithoutIPv4AddressesWithTheFallbackResolver() throws Exception
+    {
+        // The host exists but has no A record, such as a host with only IPv6 addresses
+        
+        assertArrayEquals(IPV6_ADDRESS, resolver.resolve("www.ipv6.gov.au").get(10, TimeUnit.SECONDS).getAddress());
+        assertEquals(1, fallbackHosts.size());
+    }
+    
+    @Test
+    public void reportsHostsThatDoNotExistAsNotFound() throws Exception
+    {
+        try
+        {
+            resolver.resolve("www.missing.gov.au").get(10, TimeUnit.SECONDS);
+            fail("Resolved a missing host.");
+        }
+        catch(ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof HostNotFoundException);
+        }
+        
+        assertTrue(fallbackHosts.isEmpty());
+    }
+    
+    private void serve()
+    {
+        byte[] buffer = new byte[512];
+        
+        while(!serverSocket.isClosed())
+        {
+            try
+            {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                serverSocket.receive(packet);
+                byte[] response = createResponse(ByteBuffer.wrap(packet.getData(), 0, packet.getLength()));
+                serverSocket.send(new DatagramPacket(response, response.length, packet.getSocketAddress()));
+            }
+            catch(SocketException e)
+            {
+                return;
+            }
+            catch(Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private static byte[] createResponse(ByteBuffer query)
+    {
+        // Answers A queries for www.ipv4.gov.au, finds no A record for www.ipv6.gov.au, and finds no other host
+        
+        int id = query.getShort() & 0xFFFF;
+        query.position(12);
+        int questionStart = query.position();
+        StringBuilder name = new StringBuilder();
+        int length;
+        
+        while((length = query.get() & 0xFF)!=0)
+        {
+            byte[] label = new byte[length];
+            query.get(label);
+            name.append(name.length()>0?".":"").append(new String(label));
+        }
+        
+        query.position(query.position()+4);
+        byte[] question = new byte[query.position()-questionStart];
+        query.position(questionStart);
+        query.get(question);
+        
+        boolean found = name.toString().equals("www.ipv4.gov.au");
+        boolean exists = found || name.toString().equals("www.ipv6.gov.au");
+        ByteBuffer response = ByteBuffer.allocate(512);
+        response.putShort((short)id).putShort((short)(0x8180 | (exists?0:3))).putShort((short)1).putShort((short)(found?1:0)).putShort((short)0).putShort((short)0);
+        response.put(question);
+        
+        if(found)
+        {
+            response.putShort((short)0xC00C).putShort((short)1).putShort((short)1).putInt(300).putShort((short)4).put(IPV4_ADDRESS);
+        }
+        
+        byte[] bytes = new byte[response.position()];
+        response.flip();
+        response.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,158 @@
+package odin.server.stats;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import odin.server.stats.rollup.StatsRollupService;
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsChart;
+import odin.stats.DomainStatsColumns;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+import odin.stats.DomainStatsSeries;
+
+/**
+ * Tests the datasets of charts built by {@link DomainStatsChartBuilder}.
+ */
+
+public class DomainStatsChartBuilderTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void groupsCategoriesBeyondTheTop20IntoOther() throws Exception
+    {
+        DomainStats stats = new DomainStats();
+        
+        for(int i=1; i<=25; i++)
+        {
+            addUrlCount(stats, "category "+i, i);
+        }
+        
+        DomainStatsSeries series = new DomainStatsSeries();
+        series.getStatsMap().put(1000L, stats);
+        
+        DomainStatsChart chart = build(series, DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20);
+        assertEquals(21, chart.getCategories().length);
+        assertEquals("category 25", chart.getCategories()[0]);
+        assertEquals("category 6", chart.getCategories()[19]);
+        assertEquals(DomainStatsConstants.STATS_VIEW_CATEGORY__OTHER, chart.getCategories()[20]);
+        assertArrayEquals(new long[]{1+2+3+4+5}, chart.getValues(20));
+        
+        chart = build(series, DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__ALL);
+        assertEquals(25, chart.getCategories().length);
+        assertEquals("category 1", chart.getCategories()[24]);
+    }
+    
+    @Test
+    public void groupsTheLowestPercentagesIntoOther() throws Exception
+    {
+        DomainStats stats = new DomainStats();
+        addUrlCount(stats, "a", 900);
+        addUrlCount(stats, "b", 95);
+        addUrlCount(stats, "c", 5);
+        
+        DomainStatsSeries series = new DomainStatsSeries();
+        series.getStatsMap().put(1000L, stats);
+        
+        DomainStatsChart chart = build(series, DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_1P);
+        assertArrayEquals(new String[]{"a", "b", DomainStatsConstants.STATS_VIEW_CATEGORY__OTHER}, chart.getCategories());
+        assertArrayEquals(new long[]{5}, chart.getValues(2));
+        
+        chart = build(series, DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_10P);
+        assertArrayEquals(new String[]{"a", DomainStatsConstants.STATS_VIEW_CATEGORY__OTHER}, chart.getCategories());
+        assertArrayEquals(new long[]{100}, chart.getValues(1));
+    }
+    
+    @Test
+    public void leavesOutTheValuesOfHiddenCategories() throws Exception
+    {
+        DomainStatsSeries series = new DomainStatsSeries();
+        
+        for(long time=1; time<=3; time++)
+        {
+            DomainStats stats = new DomainStats();
+            addUrlCount(stats, "a", 900*time);
+            addUrlCount(stats, "b", 95*time);
+            addUrlCount(stats, "c", 5*time);
+            series.getStatsMap().put(time*1000L, stats);
+        }
+        
+        DomainStatsChart chart = DomainStatsChartBuilder.build(new DomainStatsColumns(series), DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT,
+                DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__OCCLUDE_LOWEST_1P, new HashSet<String>(Arrays.asList("b", DomainStatsConstants.STATS_VIEW_CATEGORY__OTHER)));
+        
+        assertArrayEquals(new String[]{"a", "b", DomainStatsConstants.STATS_VIEW_CATEGORY__OTHER}, chart.getCategories());
+        assertArrayEquals(new long[]{1000L, 2000L, 3000L}, chart.getTimes());
+        assertArrayEquals(new long[]{900, 1800, 2700}, chart.getValues(0));
+        assertNull(chart.getValues(1));
+        assertNull(chart.getValues(2));
+    }
+    
+    @Test
+    public void chartsMonthsBucketedByResolution() throws Exception
+    {
+        // Months are summed into the periods of a resolution, as by the series of StatsService
+        
+        List<HostReportFile> reports = Arrays.asList(createReport("2020_12"), createReport("2021_01"), createReport("2021_02"), createReport("2021_04"));
+        DomainStatsSeries series = new DomainStatsSeries();
+        
+        for(Map.Entry<String, List<HostReportFile>> period: StatsRollupService.groupByPeriod(DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER, reports).entrySet())
+        {
+            DomainStats stats = new DomainStats();
+            
+            for(HostReportFile report: period.getValue())
+            {
+                DomainStats monthStats = new DomainStats();
+                addUrlCount(monthStats, "a", Integer.parseInt(report.getId().substring(5)));
+                stats.add(monthStats);
+            }
+            
+            series.getStatsMap().put(StatsRollupService.getPeriodStart(DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER, period.getValue().get(0).getTime()), stats);
+        }
+        
+        DomainStatsChart chart = build(series, DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__ALL);
+        assertArrayEquals(new long[]{time("2020_10"), time("2021_01"), time("2021_04")}, chart.getTimes());
+        assertArrayEquals(new long[]{12, 1+2, 4}, chart.getValues(0));
+    }
+    
+    private static DomainStatsChart build(DomainStatsSeries series, String categoryStructure) throws Exception
+    {
+        return DomainStatsChartBuilder.build(new DomainStatsColumns(series), DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT,
+                categoryStructure, Collections.<String>emptySet());
+    }
+    
+    private static void addUrlCount(DomainStats stats, String category, long urlCount)
+    {
+        DomainStatsCounts counts = new DomainStatsCounts();
+        counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, urlCount);
+        stats.getCategoryToCountsMap().put(category, counts);
+    }
+    
+    private HostReportFile createReport(String id) throws Exception
+    {
+        File file = new File(folder.getRoot(), id+".txt");
+        Files.write(file.toPath(), id.getBytes(StandardCharsets.UTF_8));
+        return new HostReportFile(file);
+    }
+    
+    private static long time(String id) throws Exception
+    {
+        return new SimpleDateFormat("yyyy_MM").parse(id).getTime();
+    }
+}
@@ -0,0 +1,106 @@
+package odin.server.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the lookup of reports by time in a {@link HostReportIndex}.
+ */
+
+public class HostReportIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void loadsReportsInOrderOfTime() throws Exception
+    {
+        createReport("2021_03");
+        createReport("2020_11");
+        createReport("2021_01");
+        folder.newFile("notes.txt");
+        folder.newFolder("2021_02");
+        
+        HostReportIndex index = new HostReportIndex();
+        index.load(folder.getRoot().getPath());
+        
+        assertEquals(ids("2020_11", "2021_01", "2021_03"), getIds(index.getAll()));
+    }
+    
+    @Test
+    public void findsReportsOfTimeFrames() throws Exception
+    {
+        HostReportIndex index = new HostReportIndex();
+        index.put(createReport("2021_03"));
+        index.put(createReport("2020_11"));
+        index.put(createReport("2021_01"));
+        
+        assertEquals(ids("2020_11", "2021_01", "2021_03"), getIds(index.getReports(0, Long.MAX_VALUE)));
+        assertEquals(ids("2021_01", "2021_03"), getIds(index.getReports(time("2020_12"), time("2021_03"))));
+        assertEquals(ids("2021_01"), getIds(index.getReports(time("2021_01"), time("2021_03")-1)));
+        assertEquals(ids("2020_11"), getIds(index.getReports(time("2020_11"), time("2020_11"))));
+        assertEquals(ids(), getIds(index.getReports(time("2021_04"), Long.MAX_VALUE)));
+        assertEquals(ids(), getIds(index.getReports(time("2021_03"), time("2021_01"))));
+    }
+    
+    @Test
+    public void replacesAndRemovesReports() throws Exception
+    {
+        HostReportIndex index = new HostReportIndex();
+        index.put(createReport("2021_01"));
+        index.put(createReport("2021_02"));
+        
+        File file = new File(folder.getRoot(), "2021_01.txt");
+        Files.write(file.toPath(), "replaced".getBytes(StandardCharsets.UTF_8));
+        HostReportFile replacement = new HostReportFile(file);
+        index.put(replacement);
+        
+        assertEquals(ids("2021_01", "2021_02"), getIds(index.getAll()));
+        assertSame(replacement, index.getAll().get(0));
+        
+        assertTrue(index.remove("2021_01"));
+        assertFalse(index.remove("2021_01"));
+        assertEquals(ids("2021_02"), getIds(index.getAll()));
+    }
+    
+    private HostReportFile createReport(String id) throws Exception
+    {
+        return new HostReportFile(folder.newFile(id+".txt"));
+    }
+    
+    private static long time(String id) throws Exception
+    {
+        return new SimpleDateFormat("yyyy_MM").parse(id).getTime();
+    }
+    
+    private static List<String> ids(String... ids)
+    {
+        return Arrays.asList(ids);
+    }
+    
+    private static List<String> getIds(List<HostReportFile> reports)
+    {
+        List<String> ids = new ArrayList<String>();
+        
+        for(HostReportFile report: reports)
+        {
+            ids.add(report.getId());
+        }
+        
+        return ids;
+    }
+}
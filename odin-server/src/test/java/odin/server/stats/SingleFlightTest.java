@@ -0,0 +1,136 @@
+package odin.server.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the sharing of tasks in flight by {@link SingleFlight}.
+ */
+
+public class SingleFlightTest
+{
+    private ExecutorService executor;
+    
+    @Before
+    public void createExecutor()
+    {
+        executor = Executors.newFixedThreadPool(4);
+    }
+    
+    @After
+    public void shutDownExecutor()
+    {
+        executor.shutdownNow();
+    }
+    
+    @Test
+    public void sharesTheFutureOfTheTaskInFlight() throws Exception
+    {
+        SingleFlight<String> singleFlight = new SingleFlight<String>(executor);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runCount = new AtomicInteger();
+        Callable<String> task = new Callable<String>(){
+            public String call() throws Exception
+            {
+                runCount.incrementAndGet();
+                release.await();
+                return "stats";
+            }
+        };
+        
+        CompletableFuture<String> future = singleFlight.run("by_tld__2021_01", task);
+        assertSame(future, singleFlight.run("by_tld__2021_01", task));
+        CompletableFuture<String> otherFuture = singleFlight.run("by_tld__2021_02", task);
+        assertNotSame(future, otherFuture);
+        
+        release.countDown();
+        assertEquals("stats", future.get(10, TimeUnit.SECONDS));
+        assertEquals("stats", otherFuture.get(10, TimeUnit.SECONDS));
+        assertEquals(2, runCount.get());
+        awaitEmpty(singleFlight);
+        
+        // Once complete, the next request runs the task again
+        
+        assertEquals("stats", singleFlight.run("by_tld__2021_01", task).get(10, TimeUnit.SECONDS));
+        assertEquals(3, runCount.get());
+    }
+    
+    @Test
+    public void retriesTasksAfterAFailure() throws Exception
+    {
+        SingleFlight<String> singleFlight = new SingleFlight<String>(executor);
+        AtomicInteger runCount = new AtomicInteger();
+        Callable<String> task = new Callable<String>(){
+            public String call() throws Exception
+            {
+                if(runCount.incrementAndGet()==1)
+                {
+                    throw new IOException("Failed to parse.");
+                }
+                
+                return "stats";
+            }
+        };
+        
+        try
+        {
+            singleFlight.run("by_tld__2021_01", task).get(10, TimeUnit.SECONDS);
+            fail("The failed task completed.");
+        }
+        catch(ExecutionException e)
+        {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        
+        // The failed task is not shared with later requests, so the month is parsed again
+        
+        assertEquals(0, singleFlight.size());
+        assertEquals("stats", singleFlight.run("by_tld__2021_01", task).get(10, TimeUnit.SECONDS));
+        assertEquals(2, runCount.get());
+    }
+    
+    @Test
+    public void failsTasksRejectedByTheExecutor() throws Exception
+    {
+        executor.shutdown();
+        SingleFlight<String> singleFlight = new SingleFlight<String>(executor);
+        CompletableFuture<String> future = singleFlight.run("by_tld__2021_01", new Callable<String>(){
+            public String call() throws Exception
+            {
+                return "stats";
+            }
+        });
+        
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, singleFlight.size());
+    }
+    
+    private static void awaitEmpty(SingleFlight<String> singleFlight) throws Exception
+    {
+        // Tasks are removed just before their futures complete, on the executor's thread
+        
+        for(int i=0; i<1000 && singleFlight.size()>0; i++)
+        {
+            Thread.sleep(10);
+        }
+        
+        assertEquals(0, singleFlight.size());
+    }
+}
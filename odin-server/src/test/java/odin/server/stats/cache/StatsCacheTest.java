@@ -0,0 +1,102 @@
+package odin.server.stats.cache;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsSeries;
+
+/**
+ * Tests the eviction and invalidation of entries of a {@link StatsCache}.
+ */
+
+public class StatsCacheTest
+{
+    private static final String CATEGORY = DomainStatsConstants.STATS_VIEW_CATEGORY__BY_TLD;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void evictsLeastRecentlyUsedStats() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        HostReportFile march = createReport("2021_03", "march");
+        DomainStats januaryStats = new DomainStats();
+        DomainStats februaryStats = new DomainStats();
+        DomainStats marchStats = new DomainStats();
+        StatsCache cache = new StatsCache(2, 2);
+        
+        cache.putStats(CATEGORY, january, januaryStats);
+        cache.putStats(CATEGORY, february, februaryStats);
+        
+        // Using January makes February the least recently used
+        
+        assertSame(januaryStats, cache.getStats(CATEGORY, january));
+        cache.putStats(CATEGORY, march, marchStats);
+        
+        assertNull(cache.getStats(CATEGORY, february));
+        assertSame(januaryStats, cache.getStats(CATEGORY, january));
+        assertSame(marchStats, cache.getStats(CATEGORY, march));
+    }
+    
+    @Test
+    public void evictsLeastRecentlyUsedSeries() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        DomainStatsSeries monthSeries = new DomainStatsSeries();
+        DomainStatsSeries quarterSeries = new DomainStatsSeries();
+        DomainStatsSeries yearSeries = new DomainStatsSeries();
+        StatsCache cache = new StatsCache(2, 2);
+        
+        cache.putSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH, Arrays.asList(january, february), monthSeries);
+        cache.putSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER, Arrays.asList(january, february), quarterSeries);
+        assertSame(monthSeries, cache.getSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH, Arrays.asList(january, february)));
+        cache.putSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, Arrays.asList(january, february), yearSeries);
+        
+        assertNull(cache.getSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER, Arrays.asList(january, february)));
+        assertSame(monthSeries, cache.getSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH, Arrays.asList(january, february)));
+        assertSame(yearSeries, cache.getSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, Arrays.asList(january, february)));
+    }
+    
+    @Test
+    public void dropsEntriesOfReplacedReports() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        StatsCache cache = new StatsCache(8, 8);
+        
+        cache.putStats(CATEGORY, january, new DomainStats());
+        cache.putStats(CATEGORY, february, new DomainStats());
+        cache.putSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH, Arrays.asList(january, february), new DomainStatsSeries());
+        
+        HostReportFile replacedJanuary = createReport("2021_01", "january, replaced");
+        assertNull(cache.getStats(CATEGORY, replacedJanuary));
+        assertNull(cache.getSeries(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH, Arrays.asList(replacedJanuary, february)));
+        
+        // Invalidated by ID, such as when a report is removed
+        
+        cache.invalidateReport("2021_02");
+        assertNull(cache.getStats(CATEGORY, february));
+    }
+    
+    private HostReportFile createReport(String id, String content) throws Exception
+    {
+        File file = new File(folder.getRoot(), id+".txt");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return new HostReportFile(file);
+    }
+}
@@ -0,0 +1,185 @@
+package odin.server.stats.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+
+/**
+ * Tests the reading of hosts reports by {@link HostReportScanner}, including reports large enough to be split into several chunks.
+ */
+
+public class HostReportScannerTest
+{
+    private static final int HOST_COUNT = 1000;
+    
+    private static HostReportScanner scanner;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @BeforeClass
+    public static void createScanner()
+    {
+        scanner = new HostReportScanner(4);
+    }
+    
+    @Test
+    public void readsEveryLineOfEveryChunk() throws Exception
+    {
+        // About 6MB, so the report is split into several chunks, with lines that straddle the ideal chunk boundaries
+        
+        File report = folder.newFile("2020_01.txt");
+        long lineCount = 0;
+        
+        try(Writer out = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8))
+        {
+            out.write("[#urls] [#bytes] [host] [#robots] [#remaining]\n");
+            
+            while(lineCount<200000)
+            {
+                int host = (int)(lineCount%HOST_COUNT);
+                out.write((host+1)+" "+(1024L*1024L*2L)+" host"+host+".example.com.au 0 0\n");
+                lineCount++;
+            }
+        }
+        
+        CountingParser parser = new CountingParser();
+        DomainStats stats = scanner.scan(report.getPath(), parser);
+        
+        assertEquals(HOST_COUNT, stats.getCategoryToCountsMap().size());
+        
+        for(int host=0; host<HOST_COUNT; host++)
+        {
+            DomainStatsCounts counts = stats.getCategoryToCountsMap().get("host"+host+".example.com.au");
+            long lines = lineCount/HOST_COUNT;
+            
+            assertEquals(lines, counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT));
+            assertEquals(lines*(host+1), counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+            assertEquals(lines*2, counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE));
+        }
+        
+        assertTrue(parser.aggregatorCount>1);
+        assertEquals(Arrays.asList(Boolean.TRUE), parser.finishedParses);
+    }
+    
+    @Test
+    public void skipsHeaderAndMalformedLines() throws Exception
+    {
+        File report = folder.newFile("2020_02.txt");
+        
+        try(Writer out = new OutputStreamWriter(new FileOutputStream(report), StandardCharsets.UTF_8))
+        {
+            // The header is skipped even if it looks like an entry
+            
+            out.write("1 1 header.au\n");
+            out.write("\n");
+            out.write("5 10\n");
+            out.write("x 10 not-a-count.au\n");
+            out.write("5 99999999999999999999 too-large.au\n");
+            out.write("2 20 http://user@www.example.au:8080/path?query\n");
+            out.write("3 30 [::1]:8080\n");
+            out.write("4 40 http:///\n");
+            out.write("   6   60   www.example.au   \r\n");
+            out.write("7 70 last.au");
+        }
+        
+        CountingParser parser = new CountingParser();
+        DomainStats stats = scanner.scan(report.getPath(), parser);
+        
+        assertEquals(3, stats.getCategoryToCountsMap().size());
+        assertNull(stats.getCategoryToCountsMap().get("header.au"));
+        assertEquals(2, stats.getCategoryToCountsMap().get("www.example.au").getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT));
+        assertEquals(8, stats.getCategoryToCountsMap().get("www.example.au").getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+        assertEquals(3, stats.getCategoryToCountsMap().get("[::1]").getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+        assertEquals(7, stats.getCategoryToCountsMap().get("last.au").getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+    }
+    
+    @Test
+    public void finishesFailedParses() throws Exception
+    {
+        CountingParser parser = new CountingParser();
+        
+        try
+        {
+            scanner.scan(new File(folder.getRoot(), "2020_03.txt").getPath(), parser);
+        }
+        catch(Exception e)
+        {
+            // The report does not exist
+        }
+        
+        assertEquals(1, parser.finishedParses.size());
+        assertFalse(parser.finishedParses.get(0));
+    }
+    
+    private static class CountingParser implements AggregatingHostReportStatsParser
+    {
+        private int aggregatorCount;
+        private List<Boolean> finishedParses = new ArrayList<Boolean>();
+        
+        public void initialise()
+        {
+        }
+        
+        public void setHostReportScanner(HostReportScanner hostReportScanner)
+        {
+        }
+        
+        public DomainStats parseStats(String reportPath) throws Exception
+        {
+            return scanner.scan(reportPath, this);
+        }
+        
+        public synchronized HostReportAggregator createAggregator(String reportPath)
+        {
+            DomainStats stats = new DomainStats();
+            aggregatorCount++;
+            
+            return new HostReportAggregator(){
+                public void onRecord(HostReportRecord record)
+                {
+                    DomainStatsCounts counts = stats.getCategoryToCountsMap().get(record.getHost());
+                    
+                    if(counts==null)
+                    {
+                        counts = new DomainStatsCounts();
+                        stats.getCategoryToCountsMap().put(record.getHost(), counts);
+                    }
+                    
+                    counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT, 1);
+                    counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, record.getUrlCount());
+                    counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE, (record.getByteCount()/1024)/1024);
+                }
+                
+                public DomainStats complete()
+                {
+                    return stats;
+                }
+            };
+        }
+        
+        public synchronized void finishParse(String reportPath, boolean succeeded)
+        {
+            finishedParses.add(succeeded);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package odin.server.stats.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Tests the splitting of reports into lines and fields by {@link ReportTokenizer}.
+ */
+
+public class ReportTokenizerTest
+{
+    @Test
+    public void splitsLinesAndFields() throws Exception
+    {
+        try(ReportTokenizer tokenizer = open("#urls #bytes host\n12  3456\twww.example.com.au extra\r\n\n7 8 a.gov.au", 3))
+        {
+            assertTrue(tokenizer.nextLine());
+            assertEquals(0, tokenizer.getLineIndex());
+            assertEquals(3, tokenizer.getFieldCount());
+            assertEquals("#urls", tokenizer.getString(0));
+            
+            assertTrue(tokenizer.nextLine());
+            assertEquals(1, tokenizer.getLineIndex());
+            assertEquals(3, tokenizer.getFieldCount());
+            assertEquals(12, tokenizer.getLong(0));
+            assertEquals(3456, tokenizer.getLong(1));
+            assertEquals("www.example.com.au", tokenizer.getString(2));
+            
+            assertTrue(tokenizer.nextLine());
+            assertEquals(0, tokenizer.getFieldCount());
+            
+            // The last line has no newline
+            
+            assertTrue(tokenizer.nextLine());
+            assertEquals(3, tokenizer.getFieldCount());
+            assertEquals("a.gov.au", tokenizer.getString(2));
+            
+            assertFalse(tokenizer.nextLine());
+        }
+    }
+    
+    @Test
+    public void readsLinesSplitAcrossReads() throws Exception
+    {
+        // Lines longer than the read buffer, delivered a few bytes at a time
+        
+        StringBuilder host = new StringBuilder();
+        
+        while(host.length()<200000)
+        {
+            host.append("abcdefghij.");
+        }
+        
+        String report = "1 2 "+host+"au\n3 4 b.au\n";
+        
+        try(ReportTokenizer tokenizer = new ReportTokenizer(new TrickleInputStream(report.getBytes(StandardCharsets.UTF_8), 7), 3))
+        {
+            assertTrue(tokenizer.nextLine());
+            assertEquals(host+"au", tokenizer.getString(2));
+            assertTrue(tokenizer.nextLine());
+            assertEquals(3, tokenizer.getLong(0));
+            assertEquals("b.au", tokenizer.getString(2));
+            assertFalse(tokenizer.nextLine());
+        }
+    }
+    
+    @Test
+    public void rejectsMalformedNumbers() throws Exception
+    {
+        try(ReportTokenizer tokenizer = open("12a -1 9223372036854775807 9223372036854775808 99999999999999999999", 5))
+        {
+            assertTrue(tokenizer.nextLine());
+            assertNotNumber(tokenizer, 0);
+            assertNotNumber(tokenizer, 1);
+            assertEquals(Long.MAX_VALUE, tokenizer.getLong(2));
+            assertNotNumber(tokenizer, 3);
+            assertNotNumber(tokenizer, 4);
+        }
+    }
+    
+    private static void assertNotNumber(ReportTokenizer tokenizer, int field)
+    {
+        try
+        {
+            tokenizer.getLong(field);
+            fail("Parsed "+tokenizer.getString(field));
+        }
+        catch(NumberFormatException e)
+        {
+            // Rejected, as by Long.parseLong
+        }
+    }
+    
+    private static ReportTokenizer open(String report, int maxFields)
+    {
+        return new ReportTokenizer(new ByteArrayInputStream(report.getBytes(StandardCharsets.UTF_8)), maxFields);
+    }
+    
+    private static class TrickleInputStream extends InputStream
+    {
+        private ByteArrayInputStream in;
+        private int maxRead;
+        
+        private TrickleInputStream(byte[] bytes, int maxRead)
+        {
+            this.in = new ByteArrayInputStream(bytes);
+            this.maxRead = maxRead;
+        }
+        
+        public int read() throws IOException
+        {
+            return in.read();
+        }
+        
+        public int read(byte[] bytes, int offset, int length) throws IOException
+        {
+            return in.read(bytes, offset, Math.min(length, maxRead));
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package odin.server.stats.parser.domain;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests the classification of hosts by {@link DomainSuffixClassifier}.
+ */
+
+public class DomainSuffixClassifierTest
+{
+    @Test
+    public void classifiesByLongestSuffix()
+    {
+        DomainSuffixClassifier classifier = new DomainSuffixClassifier()
+                .add(".au", ".au")
+                .add(".gov.au", ".gov.au")
+                .add(".nsw.gov.au", ".nsw.gov.au")
+                .add(".vic.edu.au", ".edu.au");
+        
+        assertEquals(4, classifier.size());
+        assertEquals(".nsw.gov.au", classifier.classify("www.health.nsw.gov.au"));
+        assertEquals(".gov.au", classifier.classify("www.abs.gov.au"));
+        assertEquals(".gov.au", classifier.classify("nsw.gov.au"));
+        assertEquals(".edu.au", classifier.classify("www.school.vic.edu.au"));
+        assertEquals(".au", classifier.classify("www.edu.au"));
+        assertNull(classifier.classify("www.example.com"));
+        assertNull(classifier.classify("au"));
+        assertNull(classifier.classify(""));
+    }
+    
+    @Test
+    public void classifiesSlicesOfBuffers()
+    {
+        DomainSuffixClassifier classifier = new DomainSuffixClassifier().add(".gov.au", ".gov.au");
+        byte[] buffer = "1 2 www.abs.gov.au 0 0".getBytes(StandardCharsets.US_ASCII);
+        
+        assertEquals(".gov.au", classifier.classify(buffer, 4, 14));
+        assertNull(classifier.classify(buffer, 4, 13));
+    }
+    
+    @Test
+    public void matchesTheTLDDocumentLookup() throws Exception
+    {
+        // The classifier built from the TLD and states documents must group hosts as the lookup of earlier versions did
+        
+        List<String> tldList = readLines("documents/tld_au.txt");
+        List<String> stateList = readLines("documents/states_au.txt");
+        DomainSuffixClassifier classifier = new DomainSuffixClassifier();
+        
+        for(String tld: tldList)
+        {
+            classifier.add(tld, tld);
+            
+            if(tld.startsWith(".gov") || tld.startsWith(".edu") || tld.equals(".au"))
+            {
+                for(String state: stateList)
+                {
+                    classifier.add("."+state+tld, "."+state+tld);
+                }
+            }
+        }
+        
+        List<String> labels = new ArrayList<String>();
+        labels.add("www");
+        labels.add("gov");
+        labels.add("edu");
+        labels.add("com");
+        labels.addAll(stateList);
+        
+        for(String tld: tldList)
+        {
+            for(String label: labels)
+            {
+                for(String host: new String[]{label+tld, "www."+label+tld, "x"+label+tld, label+"."+label+tld})
+                {
+                    String expected = lookUp(host, tldList, stateList);
+                    String category = classifier.classify(host);
+                    assertEquals(host, expected, (category==null)?(host):(category));
+                }
+            }
+        }
+    }
+    
+    private static String lookUp(String domain, List<String> tldList, List<String> stateList)
+    {
+        // The lookup of earlier versions, which tried the TLDs from longest to shortest, and the states of some TLDs before the TLD itself
+        
+        List<String> sortedTldList = new ArrayList<String>(tldList);
+        Collections.sort(sortedTldList, new Comparator<String>(){
+            public int compare(String a, String b)
+            {
+                return -Integer.compare(a.length(), b.length());
+            }
+        });
+        
+        for(String tld: sortedTldList)
+        {
+            if(tld.startsWith(".gov") || tld.startsWith(".edu") || tld.equals(".au"))
+            {
+                for(String state: stateList)
+                {
+                    if(domain.endsWith("."+state+tld))
+                    {
+                        return "."+state+tld;
+                    }
+                }
+            }
+            if(domain.endsWith(tld))
+            {
+                return tld;
+            }
+        }
+        
+        return domain;
+    }
+    
+    private static List<String> readLines(String path) throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        
+        for(String line: Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8))
+        {
+            if(!line.trim().isEmpty())
+            {
+                lines.add(line.trim());
+            }
+        }
+        
+        return lines;
+    }
+}
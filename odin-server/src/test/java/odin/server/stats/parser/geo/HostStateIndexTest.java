@@ -0,0 +1,72 @@
+package odin.server.stats.parser.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests the building, storage and lookup of a {@link HostStateIndex}.
+ */
+
+public class HostStateIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void readsTheIndexThatWasWritten() throws Exception
+    {
+        HostStateIndex.Builder builder = new HostStateIndex.Builder();
+        
+        for(int i=0; i<5000; i++)
+        {
+            builder.add(HostStateIndex.hash("host"+i+".gov.au"), (i%3==0)?("Victoria"):((i%3==1)?("Unknown"):(null)));
+        }
+        
+        File file = new File(folder.getRoot(), "geolocation_host_index/2021_01.idx");
+        builder.build(1234L).write(file);
+        HostStateIndex index = HostStateIndex.read(file);
+        
+        assertEquals(1234L, index.getBuildTime());
+        assertEquals(5000, index.size());
+        
+        for(int i=0; i<5000; i++)
+        {
+            assertEquals((i%3==0)?("Victoria"):((i%3==1)?("Unknown"):("")), index.getState(HostStateIndex.hash("host"+i+".gov.au")));
+        }
+    }
+    
+    @Test
+    public void findsOnlyTheHostsThatWereAdded() throws Exception
+    {
+        HostStateIndex.Builder builder = new HostStateIndex.Builder();
+        builder.add(HostStateIndex.hash("www.abs.gov.au"), "Australian Capital Territory");
+        builder.add(HostStateIndex.hash("www.sa.gov.au"), "South Australia");
+        
+        // A host added more than once is indexed once
+        
+        HostStateIndex.Builder otherBuilder = new HostStateIndex.Builder();
+        otherBuilder.add(HostStateIndex.hash("www.sa.gov.au"), "South Australia");
+        otherBuilder.add(HostStateIndex.hash("www.wa.gov.au"), "Western Australia");
+        builder.addAll(otherBuilder);
+        
+        HostStateIndex index = builder.build(0L);
+        assertEquals(3, index.size());
+        assertEquals("Australian Capital Territory", index.getState(HostStateIndex.hash("www.abs.gov.au")));
+        assertEquals("Western Australia", index.getState(HostStateIndex.hash("www.wa.gov.au")));
+        assertNull(index.getState(HostStateIndex.hash("www.nt.gov.au")));
+        assertNull(new HostStateIndex.Builder().build(0L).getState(HostStateIndex.hash("www.nt.gov.au")));
+        
+        // Hashes of host names read from a report match hashes of the same host names as strings
+        
+        byte[] buffer = "www.sa.gov.au www.abs.gov.au\u00e9.au".getBytes(StandardCharsets.UTF_8);
+        assertEquals(HostStateIndex.hash("www.abs.gov.au"), HostStateIndex.hash(buffer, 14, 14));
+        assertEquals(HostStateIndex.hash("www.abs.gov.au\u00e9.au"), HostStateIndex.hash(buffer, 14, buffer.length-14));
+    }
+}
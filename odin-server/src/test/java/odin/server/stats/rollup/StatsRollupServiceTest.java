@@ -0,0 +1,161 @@
+package odin.server.stats.rollup;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+import thor.util.LockService;
+
+/**
+ * Tests the summing and updating of the rollups stored by a {@link StatsRollupService}.
+ */
+
+public class StatsRollupServiceTest
+{
+    private static final String CATEGORY = DomainStatsConstants.STATS_VIEW_CATEGORY__BY_TLD;
+    private static final String QUARTER = DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private Map<String, Long> monthlyUrlCounts;
+    private int monthsSummed;
+    private StatsRollupService rollupService;
+    
+    @Before
+    public void createRollupService() throws Exception
+    {
+        monthlyUrlCounts = new HashMap<String, Long>();
+        rollupService = new StatsRollupService(new MonthlyStatsSource(){
+            public DomainStats getDomainStats(String category, HostReportFile report) throws Exception
+            {
+                monthsSummed++;
+                return createStats(monthlyUrlCounts.get(report.getId()));
+            }
+        }, new LockService(), folder.getRoot().getPath()+"/rollups/", folder.getRoot().getPath()+"/temp/rollups/");
+    }
+    
+    @Test
+    public void addsParsedMonthsToStoredRollups() throws Exception
+    {
+        List<HostReportFile> reports = Arrays.asList(createReport("2021_01", 1), createReport("2021_02", 2));
+        assertEquals(3, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(2, monthsSummed);
+        
+        // The stored rollup is used until a month is added to it
+        
+        assertEquals(3, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        
+        HostReportFile march = createReport("2021_03", 4);
+        rollupService.addMonth(CATEGORY, march, createStats(4L), null, null);
+        reports = Arrays.asList(reports.get(0), reports.get(1), march);
+        
+        assertEquals(7, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(2, monthsSummed);
+        
+        // Adding a month again changes nothing
+        
+        rollupService.addMonth(CATEGORY, march, createStats(4L), null, null);
+        assertEquals(7, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(2, monthsSummed);
+    }
+    
+    @Test
+    public void replacesTheStatsOfAMonthParsedAgain() throws Exception
+    {
+        HostReportFile february = createReport("2021_02", 2);
+        List<HostReportFile> reports = Arrays.asList(createReport("2021_01", 1), february, createReport("2021_03", 4));
+        assertEquals(7, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(3, monthsSummed);
+        
+        // The previous statistics of the month are subtracted and the new ones added
+        
+        HostReportFile replacedFebruary = createReport("2021_02", 20);
+        rollupService.addMonth(CATEGORY, replacedFebruary, createStats(20L), createStats(2L), february.getSourceFingerprint(CATEGORY));
+        reports = Arrays.asList(reports.get(0), replacedFebruary, reports.get(2));
+        
+        assertEquals(25, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(3, monthsSummed);
+    }
+    
+    @Test
+    public void sumsRollupsAgainWhenTheirMonthsDoNotMatchTheReports() throws Exception
+    {
+        HostReportFile february = createReport("2021_02", 2);
+        List<HostReportFile> reports = Arrays.asList(createReport("2021_01", 1), february, createReport("2021_03", 4));
+        assertEquals(7, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        
+        // A month replaced without its statistics being added to the rollup
+        
+        HostReportFile replacedFebruary = createReport("2021_02", 20);
+        reports = Arrays.asList(reports.get(0), replacedFebruary, reports.get(2));
+        assertEquals(25, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(6, monthsSummed);
+        
+        // A month added with statistics that are not the ones summed, which cannot be taken out of the rollup
+        
+        HostReportFile replacedAgainFebruary = createReport("2021_02", 200);
+        rollupService.addMonth(CATEGORY, replacedAgainFebruary, createStats(200L), createStats(2L), february.getSourceFingerprint(CATEGORY));
+        reports = Arrays.asList(reports.get(0), replacedAgainFebruary, reports.get(2));
+        assertEquals(205, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports, reports)));
+        assertEquals(9, monthsSummed);
+        
+        // Statistics of only some of the months of a period are summed without using the rollup
+        
+        assertEquals(201, getUrlCount(rollupService.getPeriodStats(CATEGORY, QUARTER, "2021_Q1", reports.subList(0, 2), reports)));
+        assertEquals(11, monthsSummed);
+    }
+    
+    @Test
+    public void sumsTheAllTimeRollupFromTheYearlyRollups() throws Exception
+    {
+        List<HostReportFile> reports = Arrays.asList(createReport("2020_12", 1), createReport("2021_01", 2), createReport("2021_02", 4));
+        
+        for(Map.Entry<String, List<HostReportFile>> year: StatsRollupService.groupByPeriod(DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, reports).entrySet())
+        {
+            rollupService.getPeriodStats(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR, year.getKey(), year.getValue(), year.getValue());
+        }
+        
+        assertEquals(3, monthsSummed);
+        assertEquals(7, getUrlCount(rollupService.getPeriodStats(CATEGORY, DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL, "all", reports, reports)));
+        assertEquals(3, monthsSummed);
+    }
+    
+    private HostReportFile createReport(String id, long urlCount) throws Exception
+    {
+        // Each version of a report file has a different length, and so a different fingerprint
+        
+        File file = new File(folder.getRoot(), id+".txt");
+        Files.write(file.toPath(), new byte[(int)urlCount]);
+        monthlyUrlCounts.put(id, urlCount);
+        return new HostReportFile(file);
+    }
+    
+    private static DomainStats createStats(long urlCount)
+    {
+        DomainStatsCounts counts = new DomainStatsCounts();
+        counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, urlCount);
+        DomainStats stats = new DomainStats();
+        stats.getCategoryToCountsMap().put("au", counts);
+        return stats;
+    }
+    
+    private static long getUrlCount(DomainStats stats)
+    {
+        return stats.getCategoryToCountsMap().get("au").getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT);
+    }
+}
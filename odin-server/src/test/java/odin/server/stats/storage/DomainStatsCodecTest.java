@@ -0,0 +1,185 @@
+package odin.server.stats.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+
+/**
+ * Tests the encoding and decoding of statistics by {@link DomainStatsCodec}.
+ */
+
+public class DomainStatsCodecTest
+{
+    @Test
+    public void roundTripsStatistics() throws Exception
+    {
+        DomainStats stats = createStats();
+        
+        for(boolean compress: new boolean[]{false, true})
+        {
+            DomainStatsCodec codec = new DomainStatsCodec(compress);
+            assertStatsEqual(stats, codec.decode(codec.encode(stats)));
+            assertStatsEqual(new DomainStats(), codec.decode(codec.encode(new DomainStats())));
+        }
+    }
+    
+    @Test
+    public void decodesSingleCountTypes() throws Exception
+    {
+        DomainStats stats = createStats();
+        DomainStatsCodec codec = new DomainStatsCodec(true);
+        byte[] data = codec.encode(stats);
+        
+        for(int typeIndex=0; typeIndex<DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length; typeIndex++)
+        {
+            DomainStats decodedStats = codec.decode(data, typeIndex);
+            assertEquals(stats.getCategoryToCountsMap().keySet(), decodedStats.getCategoryToCountsMap().keySet());
+            
+            for(String category: stats.getCategoryToCountsMap().keySet())
+            {
+                for(int i=0; i<DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length; i++)
+                {
+                    long expected = (i==typeIndex)?(stats.getCategoryToCountsMap().get(category).getCount(i)):(0);
+                    assertEquals(expected, decodedStats.getCategoryToCountsMap().get(category).getCount(i));
+                }
+            }
+        }
+    }
+    
+    @Test
+    public void skipsUnknownCountTypes() throws Exception
+    {
+        // Statistics stored with count types in a different order, and with a count type that no longer exists
+        
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeVarint(body, 3);
+        writeString(body, DomainStatsConstants.STATS_VIEW_COUNT_TYPE__URL_COUNT);
+        writeString(body, "removed_count");
+        writeString(body, DomainStatsConstants.STATS_VIEW_COUNT_TYPE__DOMAIN_COUNT);
+        writeVarint(body, 2);
+        writeString(body, ".gov.au");
+        writeString(body, ".edu.au");
+        writeColumn(body, 100, 200);
+        writeColumn(body, 7, 300000);
+        writeColumn(body, 1, 2);
+        
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(new byte[]{'O', 'D', 'S', '1', 1, 0});
+        writeVarint(data, body.size());
+        data.write(body.toByteArray());
+        
+        DomainStats stats = new DomainStatsCodec(false).decode(data.toByteArray());
+        DomainStatsCounts counts = stats.getCategoryToCountsMap().get(".edu.au");
+        
+        assertEquals(2, stats.getCategoryToCountsMap().size());
+        assertEquals(200, counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+        assertEquals(2, counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT));
+        assertEquals(0, counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE));
+        assertEquals(100, stats.getCategoryToCountsMap().get(".gov.au").getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+    }
+    
+    @Test
+    public void rejectsTruncatedAndUnknownData() throws Exception
+    {
+        DomainStatsCodec codec = new DomainStatsCodec(false);
+        byte[] data = codec.encode(createStats());
+        
+        assertNotDecoded(codec, Arrays.copyOf(data, data.length-1));
+        assertNotDecoded(codec, Arrays.copyOf(data, 3));
+        assertNotDecoded(codec, "not statistics".getBytes(StandardCharsets.UTF_8));
+        
+        data[4] = 2;
+        assertNotDecoded(codec, data);
+        
+        DomainStatsCodec compressingCodec = new DomainStatsCodec(true);
+        data = compressingCodec.encode(createStats());
+        assertNotDecoded(compressingCodec, Arrays.copyOf(data, data.length/2));
+    }
+    
+    private static DomainStats createStats()
+    {
+        DomainStats stats = new DomainStats();
+        
+        for(int i=0; i<500; i++)
+        {
+            DomainStatsCounts counts = new DomainStatsCounts();
+            counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT, i);
+            counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, (long)i*i*i*1000L);
+            counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__MB_SIZE, (i%2==0)?(Long.MAX_VALUE-i):(-i));
+            stats.getCategoryToCountsMap().put("category "+i+" \u00e9", counts);
+        }
+        
+        return stats;
+    }
+    
+    private static void assertStatsEqual(DomainStats expected, DomainStats actual)
+    {
+        assertEquals(expected.getCategoryToCountsMap().keySet(), actual.getCategoryToCountsMap().keySet());
+        
+        for(String category: expected.getCategoryToCountsMap().keySet())
+        {
+            for(int i=0; i<DomainStatsConstants.STATS_VIEW_COUNT_TYPES.length; i++)
+            {
+                assertEquals(expected.getCategoryToCountsMap().get(category).getCount(i), actual.getCategoryToCountsMap().get(category).getCount(i));
+            }
+        }
+    }
+    
+    private static void assertNotDecoded(DomainStatsCodec codec, byte[] data)
+    {
+        try
+        {
+            codec.decode(data);
+            fail("Decoded invalid statistics.");
+        }
+        catch(IOException e)
+        {
+            // Rejected
+        }
+    }
+    
+    private static void writeColumn(ByteArrayOutputStream out, long... values)
+    {
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        
+        for(long value: values)
+        {
+            writeVarint(column, value);
+        }
+        
+        writeVarint(out, column.size());
+        out.write(column.toByteArray(), 0, column.size());
+    }
+    
+    private static void writeString(ByteArrayOutputStream out, String value)
+    {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+    
+    private static void writeVarint(ByteArrayOutputStream out, long value)
+    {
+        // Zigzag encoded, as by the codec
+        
+        value = (value<<1)^(value>>63);
+        
+        while((value & ~0x7FL)!=0)
+        {
+            out.write((int)((value & 0x7F) | 0x80));
+            value = value>>>7;
+        }
+        
+        out.write((int)value);
+    }
+}
@@ -0,0 +1,190 @@
+package odin.server.stats.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import odin.server.stats.HostReportFile;
+import odin.stats.DomainStats;
+import odin.stats.DomainStatsConstants;
+import odin.stats.DomainStatsCounts;
+
+/**
+ * Tests the storage of the statistics of a series of months in a {@link DomainStatsSeriesStore}.
+ */
+
+public class DomainStatsSeriesStoreTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    private File seriesFile;
+    private DomainStatsCodec codec;
+    
+    @Before
+    public void createStore()
+    {
+        seriesFile = new File(folder.getRoot(), "by_tld.series");
+        codec = new DomainStatsCodec(false);
+    }
+    
+    @Test
+    public void createsTheDirectoryOfTheFile() throws Exception
+    {
+        // Such as storage/stats/series/ on a new installation
+        
+        File nestedSeriesFile = new File(folder.getRoot(), "stats/series/by_tld.series");
+        HostReportFile january = createReport("2021_01", "january");
+        DomainStatsSeriesStore store = new DomainStatsSeriesStore(nestedSeriesFile, codec);
+        
+        store.store(january, createStats(1));
+        assertTrue(nestedSeriesFile.isFile());
+        
+        Map<String, DomainStats> statsMap = new DomainStatsSeriesStore(nestedSeriesFile, codec).load(Arrays.asList(january));
+        assertEquals(1, statsMap.size());
+        assertUrlCount(statsMap, "2021_01", 1);
+    }
+    
+    @Test
+    public void appendsMonths() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        DomainStatsSeriesStore store = new DomainStatsSeriesStore(seriesFile, codec);
+        
+        store.store(january, createStats(1));
+        store.store(february, createStats(2));
+        
+        Map<String, DomainStats> statsMap = store.load(Arrays.asList(january, february));
+        assertEquals(2, statsMap.size());
+        assertUrlCount(statsMap, "2021_01", 1);
+        assertUrlCount(statsMap, "2021_02", 2);
+        
+        // Read again from the file
+        
+        statsMap = new DomainStatsSeriesStore(seriesFile, codec).load(Arrays.asList(january, february));
+        assertEquals(2, statsMap.size());
+        assertUrlCount(statsMap, "2021_01", 1);
+        assertUrlCount(statsMap, "2021_02", 2);
+    }
+    
+    @Test
+    public void skipsMonthsOfChangedReports() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        DomainStatsSeriesStore store = new DomainStatsSeriesStore(seriesFile, codec);
+        
+        store.store(january, createStats(1));
+        store.store(february, createStats(2));
+        
+        HostReportFile replacedFebruary = createReport("2021_02", "february, replaced");
+        Map<String, DomainStats> statsMap = store.load(Arrays.asList(january, replacedFebruary));
+        
+        assertEquals(1, statsMap.size());
+        assertUrlCount(statsMap, "2021_01", 1);
+        assertTrue(store.contains(january));
+        assertFalse(store.contains(replacedFebruary));
+    }
+    
+    @Test
+    public void replacesAndCompactsMonths() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        DomainStatsSeriesStore store = new DomainStatsSeriesStore(seriesFile, codec);
+        
+        store.store(january, createStats(1));
+        store.store(february, createStats(2));
+        
+        long maxLength = 0;
+        
+        for(int i=3; i<50; i++)
+        {
+            february = createReport("2021_02", new String(new char[i]).replace('\0', 'x'));
+            store.store(february, createStats(i));
+            maxLength = Math.max(maxLength, seriesFile.length());
+            Map<String, DomainStats> statsMap = store.load(Arrays.asList(january, february));
+            assertUrlCount(statsMap, "2021_01", 1);
+            assertUrlCount(statsMap, "2021_02", i);
+        }
+        
+        // Replaced months are dropped once they take up more than half of the file
+        
+        long monthLength = codec.encode(createStats(1)).length;
+        assertTrue(maxLength<monthLength*8);
+        assertFalse(new File(folder.getRoot(), "by_tld.series.compacting").exists());
+        Map<String, DomainStats> statsMap = new DomainStatsSeriesStore(seriesFile, codec).load(Arrays.asList(january, february));
+        assertUrlCount(statsMap, "2021_01", 1);
+        assertUrlCount(statsMap, "2021_02", 49);
+    }
+    
+    @Test
+    public void discardsTruncatedFiles() throws Exception
+    {
+        HostReportFile january = createReport("2021_01", "january");
+        HostReportFile february = createReport("2021_02", "february");
+        DomainStatsSeriesStore store = new DomainStatsSeriesStore(seriesFile, codec);
+        
+        store.store(january, createStats(1));
+        store.store(february, createStats(2));
+        
+        // Such as after a crash while a month was appended
+        
+        try(RandomAccessFile file = new RandomAccessFile(seriesFile, "rw"))
+        {
+            file.setLength(file.length()-5);
+        }
+        
+        DomainStatsSeriesStore reopenedStore = new DomainStatsSeriesStore(seriesFile, codec);
+        assertTrue(reopenedStore.load(Arrays.asList(january, february)).isEmpty());
+        assertFalse(seriesFile.exists());
+        
+        reopenedStore.store(february, createStats(2));
+        Map<String, DomainStats> statsMap = new DomainStatsSeriesStore(seriesFile, codec).load(Arrays.asList(january, february));
+        assertEquals(1, statsMap.size());
+        assertUrlCount(statsMap, "2021_02", 2);
+    }
+    
+    private HostReportFile createReport(String id, String content) throws Exception
+    {
+        File file = new File(folder.getRoot(), id+".txt");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return new HostReportFile(file);
+    }
+    
+    private static DomainStats createStats(long urlCount)
+    {
+        DomainStats stats = new DomainStats();
+        
+        for(int i=0; i<100; i++)
+        {
+            DomainStatsCounts counts = new DomainStatsCounts();
+            counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__DOMAIN_COUNT, 1);
+            counts.increment(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT, urlCount);
+            stats.getCategoryToCountsMap().put("category "+i, counts);
+        }
+        
+        return stats;
+    }
+    
+    private static void assertUrlCount(Map<String, DomainStats> statsMap, String reportId, long urlCount)
+    {
+        for(DomainStatsCounts counts: statsMap.get(reportId).getCategoryToCountsMap().values())
+        {
+            assertEquals(urlCount, counts.getCount(DomainStatsConstants.STATS_VIEW_COUNT_TYPE_INDEX__URL_COUNT));
+        }
+    }
+}
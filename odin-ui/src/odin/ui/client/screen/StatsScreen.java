@@ -9,16 +9,12 @@ import loki.ui.client.elements.chart.BarChartData;
 import loki.ui.client.elements.chart.BarChartDataset;
 import loki.ui.client.elements.chart.ChartLegendClickListener;
 import loki.ui.client.elements.chart.ChartOptions;
-import odin.stats.DomainStats;
+import odin.stats.DomainStatsChart;
 import odin.stats.DomainStatsConstants;
-import odin.stats.DomainStatsCounts;
-import odin.stats.DomainStatsSeries;
 import odin.ui.client.UIClientContext;
 import odin.ui.client.screen.ui.Button;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -39,21 +35,8 @@ public class StatsScreen extends UIScreen
     private static final String ARG_COUNT_TYPE = "count";
     private static final String ARG_CATEGORY_STRUCTURE = "category-list";
     private static final String ARG_HIDDEN_CATEGORIES = "hidden-category";
+    private static final String ARG_RESOLUTION = "resolution";
     
-    // Category groupings
-    
-    private static final StringPair CATEGORY_LIST__SHOW_TOP_20 = new StringPair("show-top-20", "LIST TOP 20");
-    private static final StringPair CATEGORY_LIST__OCCLUDE_LOWEST_1P = new StringPair("occlude-lowest-1p", "GROUP LOWEST 1%");
-    private static final StringPair CATEGORY_LIST__OCCLUDE_LOWEST_10P = new StringPair("occlude-lowest-10p", "GROUP LOWEST 10%");
-    private static final StringPair CATEGORY_LIST__ALL = new StringPair("all", "LIST ALL");
-    private static final StringPair[] CATEGORY_LIST_OPTIONS = new StringPair[]{
-            CATEGORY_LIST__SHOW_TOP_20,
-            CATEGORY_LIST__OCCLUDE_LOWEST_1P,
-            CATEGORY_LIST__OCCLUDE_LOWEST_10P,
-            CATEGORY_LIST__ALL
-    };
-    
-    private static final String CATEGORY_ENTITY__OTHER = "Other";
     private static final String HIDDEN_CATEGORY_DELIM = ";";
     
     /**
@@ -88,13 +71,17 @@ public class StatsScreen extends UIScreen
         private Element dataSelectionPanel;
         private Element countTypePanel;
         private Element categoryPanel;
+        private Element resolutionPanel;
+        private Element pendingPanel;
         
         private String currentCategory;
         private String currentCountType;
         private String currentCategoryStructure;
+        private String currentResolution;
         
-        private DomainStatsSeries currentSeriesData;
+        private DomainStatsChart currentChartData;
         private BarChart currentBarChart;
+        private int chartRequestCount;
         
         private List<String> categoryIdList;
         private HashMap<String, CategoryState> categoryStates;
@@ -138,6 +125,11 @@ public class StatsScreen extends UIScreen
                         currentCategoryStructure = arg.getValue();
                         break;
                     }
+                    case ARG_RESOLUTION:
+                    {
+                        currentResolution = arg.getValue();
+                        break;
+                    }
                     case ARG_HIDDEN_CATEGORIES:
                     {
                         if(arg.getValue()!=null)
@@ -171,7 +163,11 @@ public class StatsScreen extends UIScreen
             }
             if(currentCategoryStructure==null)
             {
-                currentCategoryStructure = CATEGORY_LIST__SHOW_TOP_20.getKey();
+                currentCategoryStructure = DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURE__SHOW_TOP_20;
+            }
+            if(currentResolution==null)
+            {
+                currentResolution = DomainStatsConstants.STATS_VIEW_RESOLUTION__MONTH;
             }
             
             // Load data
@@ -187,6 +183,8 @@ public class StatsScreen extends UIScreen
             dataSelectionPanel = FlexFlow.create().directionDown().alignStretch();
             countTypePanel = FlexFlow.create().directionDown().alignStretch();
             categoryPanel = FlexFlow.create().directionDown().alignStretch();
+            resolutionPanel = FlexFlow.create().directionRight();
+            pendingPanel = FlexFlow.create().directionRight();
             
             Element vFlow = FlexFlow.create().directionDown();
             
@@ -196,18 +194,31 @@ public class StatsScreen extends UIScreen
             hFlow = FlexFlow.create().directionRight().with(countTypePanel, canvasContainer, categoryPanel);
             vFlow.add(hFlow);
             
-            hFlow = FlexFlow.create().directionRight().with(new Button("option right reset", new Label("RESET FILTERS"), new Runnable(){
+            hFlow = FlexFlow.create().directionRight().with(resolutionPanel, pendingPanel, new Button("option right reset", new Label("RESET FILTERS"), new Runnable(){
                 public void run()
                 {
+                    boolean missingValues = false;
+                    
                     for(CategoryState state: categoryStates.values())
                     {
                         state.setVisible(true);
                         currentBarChart.showDataset(state.getIndex());
+                        missingValues = missingValues || currentChartData.getValues(state.getIndex())==null;
                     }
                     
-                    currentBarChart.update();
                     hiddenCategories.clear();
-                    updateNavigationURL();
+                    
+                    // The values of hidden categories were not loaded
+                    
+                    if(missingValues)
+                    {
+                        loadChart();
+                    }
+                    else
+                    {
+                        currentBarChart.update();
+                        updateNavigationURL();
+                    }
                 }
             }));
             vFlow.add(Spacer.tall("1em"), hFlow);
@@ -224,22 +235,49 @@ public class StatsScreen extends UIScreen
                 currentCountType = DomainStatsConstants.STATS_VIEWS_BY_CATEGORY.get(currentCategory).get(0);
             }
             
-            // Load the stats data from the server
+            loadChart();
+        }
+        
+        private void loadChart()
+        {
+            chartRequestCount++;
+            requestChart(chartRequestCount, System.currentTimeMillis(), null);
+        }
+        
+        private void requestChart(int requestNumber, long latest, String pendingToken)
+        {
+            // Load the chart datasets from the server, which ranks and groups the categories. The months that are still being parsed
+            // are requested again with the token of the chart, until the chart is complete
             
-            context.getDataService().getDomainStatsSeries(currentCategory, 0L, System.currentTimeMillis(), new AsyncCallback<DomainStatsSeries>(){
+            context.getDataService().getProgressiveDomainStatsChart(currentCategory, currentCountType, currentCategoryStructure, 
+                    hiddenCategories.toArray(new String[hiddenCategories.size()]), currentResolution, 0L, latest, pendingToken, new AsyncCallback<DomainStatsChart>(){
                 public void onFailure(Throwable e)
                 {
-                    context.getErrorHandler().handleError(new Exception("Error loading stats data.", e));
+                    if(requestNumber==chartRequestCount)
+                    {
+                        context.getErrorHandler().handleError(new Exception("Error loading stats data.", e));
+                    }
                 }
                 
-                public void onSuccess(DomainStatsSeries series)
+                public void onSuccess(DomainStatsChart chart)
                 {
-                    currentSeriesData = series;
-                    categoryStates = new HashMap<String, CategoryState>();
+                    // Ignore the responses of a chart that has since been replaced by another selection
+                    
+                    if(requestNumber!=chartRequestCount)
+                    {
+                        return;
+                    }
+                    
+                    currentChartData = chart;
                     
                     // Render chart
                     
                     renderChart();
+                    
+                    if(chart.getPendingToken()!=null)
+                    {
+                        requestChart(requestNumber, latest, chart.getPendingToken());
+                    }
                 }
             });
         }
@@ -250,127 +288,24 @@ public class StatsScreen extends UIScreen
             renderDataSelectionButtons();
             renderCountTypeButtons();
             renderCategoryStructureButtons();
+            renderResolutionButtons();
+            renderPendingCount();
             
-            categoryIdList = new ArrayList<String>();
-            
-            // Build category ID list and sort by Y index value (larger to smaller)
-            
-            for(DomainStats stats: currentSeriesData.getStatsMap().values())
-            {
-                for(String categoryId: stats.getCategoryToCountsMap().keySet())
-                {
-                    if(!categoryIdList.contains(categoryId))
-                    {
-                        categoryIdList.add(categoryId);
-                    }
-                }
-            }
-            
-            List<String> categoriesInOther = new ArrayList<String>();
-            HashMap<String, Integer> counts = new HashMap<String, Integer>();
-            int overallCount = 0;
-            
-            for(String categoryId: categoryIdList)
-            {
-                int totalCount = 0;
-                
-                for(Long time: currentSeriesData.getStatsMap().keySet())
-                {
-                    DomainStatsCounts count = currentSeriesData.getStatsMap().get(time).getCategoryToCountsMap().get(categoryId);
-                    Long countValue;
-                    
-                    if(count!=null)
-                    {
-                        countValue = count.getCountsMap().get(currentCountType);
-                        
-                        if(countValue==null)
-                        {
-                            countValue = 0L;
-                        }
-                    }
-                    else
-                    {
-                        countValue = 0L;
-                    }
-                    
-                    totalCount = totalCount+countValue.intValue();
-                }
-                
-                counts.put(categoryId, totalCount);
-                overallCount = overallCount+totalCount;
-            }
-            
-            Collections.sort(categoryIdList, new Comparator<String>(){
-                public int compare(String a, String b)
-                {
-                    return -Integer.compare(counts.get(a), counts.get(b));
-                }
-            });
-            
-            // Summarise categories (if selected)
-            
-            double omitPercentage = 0d;
-            
-            if(currentCategoryStructure.equals(CATEGORY_LIST__OCCLUDE_LOWEST_1P.getKey()))
-            {
-                omitPercentage = 0.01d;
-            }
-            if(currentCategoryStructure.equals(CATEGORY_LIST__OCCLUDE_LOWEST_10P.getKey()))
-            {
-                omitPercentage = 0.1d;
-            }
-            
-            if(omitPercentage>0d)
-            {
-                for(int i=categoryIdList.size()-1; i>=0; i--)
-                {
-                    String categoryId = categoryIdList.get(i);
-                    double percentage = ((double)counts.get(categoryId))/(double)overallCount;
-                    
-                    if(percentage<=omitPercentage)
-                    {
-                        categoriesInOther.add(categoryId);
-                    }
-                }
-                if(!categoriesInOther.isEmpty())
-                {
-                    for(String categoryId: categoriesInOther)
-                    {
-                        categoryIdList.remove(categoryId);
-                    }
-                    
-                    categoryIdList.add(CATEGORY_ENTITY__OTHER);
-                }
-            }
-            if(currentCategoryStructure.equals(CATEGORY_LIST__SHOW_TOP_20.getKey()))
-            {
-                while(categoryIdList.size()>20)
-                {
-                    categoriesInOther.add(categoryIdList.remove(categoryIdList.size()-1));
-                }
-                if(!categoriesInOther.isEmpty())
-                {
-                    categoryIdList.add(CATEGORY_ENTITY__OTHER);
-                }
-            }
+            categoryIdList = Arrays.asList(currentChartData.getCategories());
+            categoryStates = new HashMap<String, CategoryState>();
             
             // Add category states (for retaining visibility status)
             
             for(int i=0; i<categoryIdList.size(); i++)
             {
                 String categoryId = categoryIdList.get(i);
-                
-                if(!categoryStates.containsKey(categoryId))
-                {
-                    categoryStates.put(categoryId, new CategoryState(categoryId, i, !hiddenCategories.contains(categoryId)));
-                }
+                categoryStates.put(categoryId, new CategoryState(categoryId, i, !hiddenCategories.contains(categoryId)));
             }
             
             // Build the bar chart datasets
             
-            DateTimeFormat timeFormat = DateTimeFormat.getFormat("MM-yyyy");
-            List<Long> timeList = new ArrayList<Long>(currentSeriesData.getStatsMap().keySet());
-            Collections.sort(timeList);
+            DateTimeFormat timeFormat = getTimeFormat(currentResolution);
+            long[] times = currentChartData.getTimes();
             
             BarChartDataset[] datasets = new BarChartDataset[categoryIdList.size()];
             String[] colors = generateColors(datasets.length, 220, 360);
@@ -379,38 +314,13 @@ public class StatsScreen extends UIScreen
             {
                 String categoryId = categoryIdList.get(i);
                 String color = colors[i];
-                BarChartData[] data = new BarChartData[currentSeriesData.getStatsMap().size()];
+                long[] values = currentChartData.getValues(i);
+                BarChartData[] data = new BarChartData[times.length];
                 
-                for(int t=0; t<timeList.size(); t++)
+                for(int t=0; t<times.length; t++)
                 {
-                    Long time = timeList.get(t);
-                    int categoryCount = 0;
-                    
-                    List<String> dataCategories = categoryId.equals(CATEGORY_ENTITY__OTHER)?(categoriesInOther):(Arrays.asList(categoryId));
-                    
-                    for(String dataCategoryId: dataCategories)
-                    {
-                        DomainStatsCounts count = currentSeriesData.getStatsMap().get(time).getCategoryToCountsMap().get(dataCategoryId);
-                        Long countValue;
-                        
-                        if(count!=null)
-                        {
-                            countValue = count.getCountsMap().get(currentCountType);
-                            
-                            if(countValue==null)
-                            {
-                                countValue = 0L;
-                            }
-                        }
-                        else
-                        {
-                            countValue = 0L;
-                        }
-                        
-                        categoryCount = categoryCount+countValue.intValue();
-                    }
-                    
-                    data[t] = new BarChartData(timeFormat.format(new Date(time)), categoryCount);
+                    String timeLabel = (timeFormat!=null)?(timeFormat.format(new Date(times[t]))):("ALL");
+                    data[t] = new BarChartData(timeLabel, (values!=null)?((int)values[t]):(0));
                 }
                 
                 datasets[i] = new BarChartDataset(categoryId, color, color, "black", data);
@@ -422,7 +332,17 @@ public class StatsScreen extends UIScreen
                 public void onLegendItemClicked(int index)
                 {
                     categoryStates.get(categoryIdList.get(index)).setVisible(currentBarChart.isDatasetVisible(index));
-                    updateNavigationURL();
+                    
+                    // The values of hidden categories were not loaded
+                    
+                    if(currentBarChart.isDatasetVisible(index) && currentChartData.getValues(index)==null)
+                    {
+                        loadChart();
+                    }
+                    else
+                    {
+                        updateNavigationURL();
+                    }
                 }
             };
             
@@ -490,7 +410,7 @@ public class StatsScreen extends UIScreen
                         public void run()
                         {
                             currentCountType = countType.getKey();
-                            renderChart();
+                            loadChart();
                         }
                     });
                     
@@ -503,13 +423,13 @@ public class StatsScreen extends UIScreen
         {
             categoryPanel.clear();
             
-            for(StringPair option: CATEGORY_LIST_OPTIONS)
+            for(StringPair option: DomainStatsConstants.STATS_VIEW_CATEGORY_STRUCTURES)
             {
                 Button button = new Button("option right "+(currentCategoryStructure.equals(option.getKey())?"selected":""), new Label(option.getValue()), new Runnable(){
                     public void run()
                     {
                         currentCategoryStructure = option.getKey();
-                        renderChart();
+                        loadChart();
                     }
                 });
                 
@@ -517,6 +437,59 @@ public class StatsScreen extends UIScreen
             }
         }
         
+        private void renderResolutionButtons()
+        {
+            resolutionPanel.clear();
+            
+            for(StringPair resolution: DomainStatsConstants.STATS_VIEW_RESOLUTIONS)
+            {
+                Button button = new Button("option center "+(resolution.getKey().equals(currentResolution)?"selected":""), new Label(resolution.getValue()), new Runnable(){
+                    public void run()
+                    {
+                        currentResolution = resolution.getKey();
+                        loadChart();
+                    }
+                });
+                
+                resolutionPanel.add(button);
+            }
+        }
+        
+        private void renderPendingCount()
+        {
+            pendingPanel.clear();
+            
+            if(currentChartData.getPendingCount()>0)
+            {
+                pendingPanel.add(new Label("LOADING "+currentChartData.getPendingCount()+" MORE..."));
+            }
+        }
+        
+        private DateTimeFormat getTimeFormat(String resolution)
+        {
+            // The all time series has a single point, which is not labelled with a date
+            
+            switch(resolution)
+            {
+                case DomainStatsConstants.STATS_VIEW_RESOLUTION__QUARTER:
+                {
+                    return DateTimeFormat.getFormat("QQQ yyyy");
+                }
+                case DomainStatsConstants.STATS_VIEW_RESOLUTION__YEAR:
+                {
+                    return DateTimeFormat.getFormat("yyyy");
+                }
+                case DomainStatsConstants.STATS_VIEW_RESOLUTION__ALL:
+                {
+                    return null;
+                }
+                default:
+                {
+                    return DateTimeFormat.getFormat("MM-yyyy");
+                }
+            }
+        }
+        
         private void updateNavigationURL()
         {
             // Updates the navigation URL based on the currently selected filters and category groupings so that the URL can re-used to link to this exact state
@@ -525,6 +498,7 @@ public class StatsScreen extends UIScreen
                     new StringPair(ARG_CATEGORY, currentCategory),
                     new StringPair(ARG_COUNT_TYPE, currentCountType),
                     new StringPair(ARG_CATEGORY_STRUCTURE, currentCategoryStructure),
+                    new StringPair(ARG_RESOLUTION, currentResolution),
                     new StringPair(ARG_HIDDEN_CATEGORIES, CommonUtils.printArray(hiddenCategories, HIDDEN_CATEGORY_DELIM)));
         }
         